@@ -0,0 +1,91 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree;
+
+import org.apenk.carefree.benchmark.SyntheticConfigs;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link CarefreeConfigLoader#load(Map, CarefreeProperties)} 的基准测试，
+ * 每个 key 对应同一临时目录中的一个 .conf 和一个 .properties 文件（均属于 file 层），
+ * 规模由 key 数量、每个 key 的 root 数量和每个 root 的属性数量决定。
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CarefreeConfigLoaderBenchmark {
+
+    @Param({"1", "8", "32"})
+    private int keys;
+
+    @Param({"4", "32"})
+    private int roots;
+
+    @Param({"8", "128"})
+    private int properties;
+
+    @Param({"false", "true"})
+    private boolean parallel;
+
+    private Path directory;
+    private Map<String, List<Resource>> resourceMap;
+    private CarefreeProperties carefreeProperties;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        directory = Files.createTempDirectory("carefree-benchmark");
+        resourceMap = new LinkedHashMap<>();
+        String hocon = SyntheticConfigs.hocon(roots, properties);
+        String properties = SyntheticConfigs.properties(roots, this.properties / 2);
+        for (int i = 0; i < keys; i++) {
+            List<Resource> resources = new ArrayList<>();
+            resources.add(new FileSystemResource(SyntheticConfigs.write(directory, "key" + i + ".conf", hocon)));
+            resources.add(new FileSystemResource(SyntheticConfigs.write(directory, "key" + i + ".properties", properties)));
+            resourceMap.put("key" + i, resources);
+        }
+
+        carefreeProperties = new CarefreeProperties();
+        carefreeProperties.setParallel(parallel);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        SyntheticConfigs.delete(directory);
+    }
+
+    /**
+     * 解析并合并所有 key，并读取每个 key 的最终配置（包含回退链的解析）
+     */
+    @Benchmark
+    public int load() {
+        CarefreeRegistry registry = CarefreeConfigLoader.load(resourceMap, carefreeProperties);
+        int size = 0;
+        for (String key : resourceMap.keySet()) {
+            size += registry.get(key).root().size();
+        }
+        return size;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree.benchmark;
+
+import org.apenk.carefree.helper.CarefreeClassDeclaration;
+
+/**
+ * 基准测试中绑定配置使用的 bean，属性类型覆盖 {@link org.apenk.carefree.helper.CarefreeAssistance#loadBeanProperties} 支持的主要分支，
+ * 与 {@link SyntheticConfigs} 生成的每个 root 对应。
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public class SyntheticBean {
+    private String host;
+    private Integer port;
+    private Integer maxActive;
+    private Boolean testOnBorrow;
+    private Double timeoutRatio;
+    private String name;
+    private Object[] tags;
+    private Long minIdle;
+    private Short retries;
+    private Character separator;
+    private CarefreeClassDeclaration codec;
+
+    public String getHost() {
+        return host;
+    }
+
+    public void setHost(String host) {
+        this.host = host;
+    }
+
+    public Integer getPort() {
+        return port;
+    }
+
+    public void setPort(Integer port) {
+        this.port = port;
+    }
+
+    public Integer getMaxActive() {
+        return maxActive;
+    }
+
+    public void setMaxActive(Integer maxActive) {
+        this.maxActive = maxActive;
+    }
+
+    public Boolean getTestOnBorrow() {
+        return testOnBorrow;
+    }
+
+    public void setTestOnBorrow(Boolean testOnBorrow) {
+        this.testOnBorrow = testOnBorrow;
+    }
+
+    public Double getTimeoutRatio() {
+        return timeoutRatio;
+    }
+
+    public void setTimeoutRatio(Double timeoutRatio) {
+        this.timeoutRatio = timeoutRatio;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public Object[] getTags() {
+        return tags;
+    }
+
+    public void setTags(Object[] tags) {
+        this.tags = tags;
+    }
+
+    public Long getMinIdle() {
+        return minIdle;
+    }
+
+    public void setMinIdle(Long minIdle) {
+        this.minIdle = minIdle;
+    }
+
+    public Short getRetries() {
+        return retries;
+    }
+
+    public void setRetries(Short retries) {
+        this.retries = retries;
+    }
+
+    public Character getSeparator() {
+        return separator;
+    }
+
+    public void setSeparator(Character separator) {
+        this.separator = separator;
+    }
+
+    public CarefreeClassDeclaration getCodec() {
+        return codec;
+    }
+
+    public void setCodec(CarefreeClassDeclaration codec) {
+        this.codec = codec;
+    }
+}
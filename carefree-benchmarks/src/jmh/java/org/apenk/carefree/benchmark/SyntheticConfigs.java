@@ -0,0 +1,93 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree.benchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 生成基准测试使用的合成配置，规模由 root 数量和每个 root 的属性数量决定，
+ * 每个 root 的结构与 druid/redis 的配置相似：若干标量属性、一个嵌套对象和一个列表。
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public class SyntheticConfigs {
+
+    /**
+     * 生成 HOCON 格式的配置文本
+     *
+     * @param roots 根节点数量
+     * @param properties 每个根节点的标量属性数量
+     */
+    public static String hocon(int roots, int properties) {
+        StringBuilder builder = new StringBuilder(roots * properties * 32);
+        for (int r = 0; r < roots; r++) {
+            String root = "root" + r;
+            builder.append(root).append(" {\n");
+            builder.append("  host = \"127.0.0.").append(r % 255).append("\"\n");
+            builder.append("  port = ").append(6379 + r).append("\n");
+            builder.append("  max-active = ").append(8 + r).append("\n");
+            builder.append("  test_on_borrow = ").append(r % 2 == 0).append("\n");
+            builder.append("  timeout-ratio = ").append(0.5 + r).append("\n");
+            builder.append("  name = \"").append(root).append("\"\n");
+            builder.append("  tags = [a, b, c]\n");
+            builder.append("  nested { level = ").append(r).append(", label = \"n").append(r).append("\" }\n");
+            for (int p = 0; p < properties; p++) {
+                builder.append("  extra-property-").append(p).append(" = \"value-").append(r).append("-").append(p).append("\"\n");
+            }
+            builder.append("}\n");
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 生成 properties 格式的配置文本，与 {@link #hocon(int, int)} 描述相同的结构（不含列表）
+     */
+    public static String properties(int roots, int properties) {
+        StringBuilder builder = new StringBuilder(roots * properties * 40);
+        for (int r = 0; r < roots; r++) {
+            String root = "root" + r;
+            builder.append(root).append(".host=127.0.0.").append(r % 255).append("\n");
+            builder.append(root).append(".port=").append(6379 + r).append("\n");
+            builder.append(root).append(".max-active=").append(8 + r).append("\n");
+            builder.append(root).append(".name=").append(root).append("-override\n");
+            for (int p = 0; p < properties; p++) {
+                builder.append(root).append(".extra-property-").append(p).append("=value-").append(r).append("-").append(p).append("\n");
+            }
+        }
+        return builder.toString();
+    }
+
+    public static Path write(Path directory, String fileName, String content) throws IOException {
+        Path file = directory.resolve(fileName);
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    /**
+     * 递归删除临时目录
+     */
+    public static void delete(Path directory) throws IOException {
+        if (directory == null || !Files.exists(directory)) {
+            return;
+        }
+        Files.walk(directory).sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree.helper;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.apenk.carefree.benchmark.SyntheticBean;
+import org.apenk.carefree.benchmark.SyntheticConfigs;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link CarefreeAssistance#loadBeanProperties(Class, Object, Config, String, String)} 和
+ * {@link CarefreeAssistance#fromConfig(Class, Config, String, String)} 的基准测试，
+ * 配置规模越大，每次 hasPath 查找的代价越能体现出来。
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CarefreeAssistanceBenchmark {
+
+    @Param({"1", "16", "128"})
+    private int roots;
+
+    @Param({"8", "256"})
+    private int properties;
+
+    private Config config;
+    private String[] rootNames;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        config = ConfigFactory.parseString(SyntheticConfigs.hocon(roots, properties)
+                + "default { min-idle = 1, retries = 3, separator = \",\", codec = java.lang.StringBuilder }").resolve();
+        rootNames = CarefreeAssistance.getConfigRoots(config).toArray(new String[0]);
+    }
+
+    /**
+     * 绑定一个 root（含默认前缀回退）
+     */
+    @Benchmark
+    public SyntheticBean loadBeanProperties() throws Exception {
+        SyntheticBean bean = new SyntheticBean();
+        CarefreeAssistance.loadBeanProperties(SyntheticBean.class, bean, config, "root0", "default");
+        return bean;
+    }
+
+    /**
+     * 绑定所有 root，与 redis/druid lathe 在启动时的工作量相当
+     */
+    @Benchmark
+    public void fromConfigAllRoots(Blackhole blackhole) throws Exception {
+        for (String root : rootNames) {
+            blackhole.consume(CarefreeAssistance.fromConfig(SyntheticBean.class, config, root, "default"));
+        }
+    }
+
+    @Benchmark
+    public Object getConfigRoots() {
+        return CarefreeAssistance.getConfigRoots(config);
+    }
+
+    /**
+     * 构建索引并查询每个 root 的子树，与 lathe 每加载一个 key 的查询方式相当
+     */
+    @Benchmark
+    public void configIndex(Blackhole blackhole) {
+        CarefreeConfigIndex index = CarefreeConfigIndex.of(config);
+        for (String root : index.roots()) {
+            blackhole.consume(index.getObject(root));
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree.helper;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link CarefreeClassDeclaration#instance()} 在各 scope 下的基准测试，
+ * 多线程运行时可以观察 singleton scope 下全局锁的竞争。
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CarefreeClassDeclarationBenchmark {
+
+    private CarefreeClassDeclaration singleton;
+    private CarefreeClassDeclaration declaration;
+    private CarefreeClassDeclaration prototype;
+    private CarefreeClassDeclaration prototypeWithArgs;
+    private CarefreeClassDeclaration prototypeFactory;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        singleton = declare("java.lang.StringBuilder", null);
+        declaration = declare("java.lang.StringBuilder", "declaration");
+        prototype = declare("java.lang.StringBuilder", "prototype");
+
+        prototypeWithArgs = declare("java.lang.StringBuilder", "prototype");
+        prototypeWithArgs.setConstructorArgs(new Object[]{"carefree"});
+        prototypeWithArgs.setInitializeMethod("append");
+        prototypeWithArgs.setInitializeArgs(new Object[]{"-benchmark"});
+
+        prototypeFactory = declare("java.lang.Integer", "prototype");
+        prototypeFactory.setStaticFactoryMethod("valueOf");
+        prototypeFactory.setStaticFactoryArgs(new Object[]{"6379"});
+    }
+
+    private static CarefreeClassDeclaration declare(String className, String scope) {
+        CarefreeClassDeclaration declaration = new CarefreeClassDeclaration();
+        declaration.setClassName(className);
+        declaration.setScope(scope);
+        return declaration;
+    }
+
+    @Benchmark
+    public Object singleton() {
+        return singleton.instance();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object singletonContended() {
+        return singleton.instance();
+    }
+
+    @Benchmark
+    public Object declaration() {
+        return declaration.instance();
+    }
+
+    @Benchmark
+    public Object prototype() {
+        return prototype.instance();
+    }
+
+    @Benchmark
+    public Object prototypeWithArgs() {
+        return prototypeWithArgs.instance();
+    }
+
+    @Benchmark
+    public Object prototypeFactory() {
+        return prototypeFactory.instance();
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree.helper;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link NamingConvention} 命名转换的基准测试，
+ * 绑定配置时每个属性都会进行 camel -> kebab 和 camel -> snake 的转换。
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class NamingConventionBenchmark {
+
+    @Param({"maxActive", "timeBetweenEvictionRunsMillis", "connectionInitSqlsWithAVeryLongPropertyNameForBenchmark"})
+    private String camel;
+
+    private String kebab;
+    private String snake;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        kebab = NamingConvention.KEBAB.fromCamel(camel);
+        snake = NamingConvention.SNAKE.fromCamel(camel);
+    }
+
+    @Benchmark
+    public String camelToKebab() {
+        return NamingConvention.KEBAB.fromCamel(camel);
+    }
+
+    @Benchmark
+    public String camelToSnake() {
+        return NamingConvention.SNAKE.fromCamel(camel);
+    }
+
+    @Benchmark
+    public String kebabToLowerCamel() {
+        return NamingConvention.LOWER_CAMEL.fromKebab(kebab);
+    }
+
+    @Benchmark
+    public String snakeToUpperCamel() {
+        return NamingConvention.UPPER_CAMEL.fromSnake(snake);
+    }
+
+    @Benchmark
+    public String kebabToSnakeInUpperCase() {
+        return NamingConvention.SNAKE.fromKebabInUpperCase(kebab);
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree.helper;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ParameterizeMessageFormatter#format(String, Object...)} 的基准测试，
+ * 对应 {@link CarefreeLogger} 每条日志的格式化开销。
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ParameterizeMessageFormatterBenchmark {
+
+    private final Object[] oneArg = {"redis"};
+    private final Object[] fourArgs = {"redis", 6379, 12L, true};
+    private final Object[] eightArgs = {"redis", 6379, 12L, true, 0.75D, "root0", new int[]{1, 2, 3}, null};
+
+    @Benchmark
+    public String noArgs() {
+        return ParameterizeMessageFormatter.format("loaded config without arguments");
+    }
+
+    @Benchmark
+    public String oneArg() {
+        return ParameterizeMessageFormatter.format("loaded config key: {}", oneArg);
+    }
+
+    @Benchmark
+    public String fourArgs() {
+        return ParameterizeMessageFormatter.format("key: {}, port: {}, cost: {} ms, cached: {}", fourArgs);
+    }
+
+    @Benchmark
+    public String eightArgs() {
+        return ParameterizeMessageFormatter.format("{} {} {} {} {} {} {} {}", eightArgs);
+    }
+
+    @Benchmark
+    public String indented() {
+        return ParameterizeMessageFormatter.format(2, "key: {}, port: {}, cost: {} ms, cached: {}", fourArgs);
+    }
+}
@@ -22,6 +22,7 @@ import com.alibaba.nacos.api.config.ConfigService;
 import com.alibaba.nacos.api.exception.NacosException;
 import com.typesafe.config.ConfigFactory;
 import org.apache.commons.lang3.StringUtils;
+import org.apenk.carefree.CarefreeConfigLayer;
 import org.apenk.carefree.CarefreeRegistry;
 import org.apenk.carefree.helper.TempCarefreeAide;
 
@@ -70,7 +71,7 @@ class CarefreeCloudConfigNacosLoader extends CarefreeCloudConfigLoader {
             try {
                 configData = configService.getConfig(position.getDataId(), position.getGroup(), timeout);
                 if (StringUtils.isNotBlank(configData)) {
-                    carefreeRegistry.register(position.getKey(), ConfigFactory.parseString(configData));
+                    carefreeRegistry.register(position.getKey(), CarefreeConfigLayer.CLOUD, ConfigFactory.parseString(configData));
                 }
             } catch (NacosException e) {
                 logger.error(e,"get data from Nacos error, dataId:{}", position.getDataId());
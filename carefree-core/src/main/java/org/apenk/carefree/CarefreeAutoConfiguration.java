@@ -17,7 +17,6 @@
 package org.apenk.carefree;
 
 import com.typesafe.config.Config;
-import com.typesafe.config.ConfigValue;
 import org.apenk.carefree.helper.TempCarefreeAide;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.beans.BeansException;
@@ -33,14 +32,17 @@ import org.springframework.boot.context.properties.bind.*;
 import org.springframework.boot.context.properties.source.ConfigurationPropertyName;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
+import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.EnvironmentAware;
 import org.springframework.context.annotation.*;
 import org.springframework.core.Ordered;
 import org.springframework.core.env.Environment;
 import org.springframework.core.io.Resource;
 
-import java.util.List;
-import java.util.Map;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * carefree 自动配置
@@ -53,6 +55,9 @@ public class CarefreeAutoConfiguration implements BeanDefinitionRegistryPostProc
 
     public static final String PropertyName_enabled = "carefree.enabled";
 
+    /** 延迟解析模式下需要预先解析的 key 所在的配置项（druid、redis 模块的 config-key） */
+    private static final String[] PREFETCH_KEY_PROPERTIES = {"carefree.druid.config-key", "carefree.redis.config-key"};
+
     private Environment environment;
     private ApplicationContext applicationContext;
     private ScopeMetadataResolver scopeMetadataResolver;
@@ -69,6 +74,16 @@ public class CarefreeAutoConfiguration implements BeanDefinitionRegistryPostProc
         return new CarefreeRegistry();
     }
 
+    /**
+     * 启动完成后发布 carefree 各启动阶段的耗时记录
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(name = PropertyName_enabled)
+    public CarefreeStartupReporter carefreeStartupReporter() {
+        return new CarefreeStartupReporter();
+    }
+
     @Override
     public void postProcessBeanDefinitionRegistry(@NotNull BeanDefinitionRegistry registry) throws BeansException {
         if (!isCarefreeEnabled()) {
@@ -79,39 +94,63 @@ public class CarefreeAutoConfiguration implements BeanDefinitionRegistryPostProc
 
         // 加载本地配置
         Map<String, List<Resource>> resourcesMap = CarefreeConfigLocator.locate(properties);
-        Map<String, Config> configCache = CarefreeConfigLoader.load(resourcesMap);
+        // 启用热加载时记录 file 层配置文件的解析结果，热加载时未变化的文件不再重新解析
+        Map<Path, Config> parsedFiles = TempCarefreeAide.isTrue(properties.getWatch()) ? new ConcurrentHashMap<>() : null;
+        CarefreeRegistry localRegistry = CarefreeConfigLoader.load(resourcesMap, properties, parsedFiles);
 
         CarefreeRegistry carefreeRegistry = null;
         if (applicationContext.containsBean(CarefreeRegistry.BEAN_NAME)) {
             carefreeRegistry = applicationContext.getBean(CarefreeRegistry.BEAN_NAME, CarefreeRegistry.class);
         }
         if (carefreeRegistry != null) {
-            // 如果已经存在 CarefreeRegistry 的 Bean（由 cloud 模块加载的配置中心的配置）
-            for (Map.Entry<String, Config> entry : configCache.entrySet()) {
-                Config cloudConfig = carefreeRegistry.get(entry.getKey());
-                if (cloudConfig == null) {
-                    // 如果远端配置中心没有该 key 的配置，加载整个本地配置
-                    carefreeRegistry.register(entry.getKey(), entry.getValue());
-                } else {
-                    // 如果远端配置中心存在该 key 的配置，加载远端没有的选项
-                    for (Map.Entry<String, ConfigValue> localOption : entry.getValue().entrySet()) {
-                        if (!cloudConfig.hasPath(localOption.getKey())) {
-                            cloudConfig = cloudConfig.withValue(localOption.getKey(), localOption.getValue());
-                        }
-                    }
-                    carefreeRegistry.register(entry.getKey(), cloudConfig);
-                }
-            }
+            // 如果已经存在 CarefreeRegistry 的 Bean（由 cloud 模块加载的配置中心的配置），
+            // 将本地配置作为 classpath 层和 file 层注册到其中，远端配置中心的配置位于更高优先级的 cloud 层，
+            // 读取时按 cloud -> file -> classpath 的回退链解析，即远端没有的选项使用本地配置
+            carefreeRegistry.registerAll(localRegistry);
         } else {
             // 注册 CarefreeRegistry Bean 定义
             // （注：该部分为遗留代码，由于增加了 carefreeRegistry() 方法的 Bean 声明，因此这部分 Bean 定义其实已经不需要了）
+            // Bean 即为 localRegistry 本身，使预取和热加载作用于容器中的实例
             AnnotatedGenericBeanDefinition definition = new AnnotatedGenericBeanDefinition(CarefreeRegistry.class);
             ScopeMetadata scopeMetadata = this.scopeMetadataResolver.resolveScopeMetadata(definition);
             definition.setScope(scopeMetadata.getScopeName());
-            definition.getConstructorArgumentValues().addGenericArgumentValue(configCache);
+            definition.setInstanceSupplier(() -> localRegistry);
             AnnotationConfigUtils.processCommonDefinitionAnnotations(definition);
             BeanDefinitionHolder definitionHolder = new BeanDefinitionHolder(definition, CarefreeRegistry.BEAN_NAME);
             BeanDefinitionReaderUtils.registerBeanDefinition(definitionHolder, registry);
+            carefreeRegistry = localRegistry;
+        }
+
+        if (TempCarefreeAide.isTrue(properties.getLazy())) {
+            CarefreeConfigLoader.prefetch(carefreeRegistry, resolvePrefetchKeys(), properties);
+        }
+
+        if (TempCarefreeAide.isTrue(properties.getWatch())) {
+            watchConfigFiles(carefreeRegistry, resourcesMap, parsedFiles);
+        }
+    }
+
+    private Set<String> resolvePrefetchKeys() {
+        Set<String> keys = new LinkedHashSet<>();
+        for (String propertyName : PREFETCH_KEY_PROPERTIES) {
+            String configKey = environment.getProperty(propertyName, String.class, "");
+            Arrays.stream(TempCarefreeAide.split(configKey, ",")).filter(TempCarefreeAide::isNotBlank).map(TempCarefreeAide::trim).forEach(keys::add);
+        }
+        return keys;
+    }
+
+    /**
+     * 监听文件系统中的配置文件，变化时热加载到 carefreeRegistry 中，应用上下文关闭时停止监听
+     */
+    private void watchConfigFiles(CarefreeRegistry carefreeRegistry, Map<String, List<Resource>> resourcesMap, Map<Path, Config> parsedFiles) {
+        CarefreeConfigWatcher watcher = new CarefreeConfigWatcher(carefreeRegistry, resourcesMap, parsedFiles);
+        try {
+            if (watcher.start() && applicationContext instanceof ConfigurableApplicationContext) {
+                ((ConfigurableApplicationContext) applicationContext).addApplicationListener(watcher);
+            }
+        } catch (IOException e) {
+            watcher.close();
+            throw new RuntimeException("[Carefree] error to watch config files", e);
         }
     }
 
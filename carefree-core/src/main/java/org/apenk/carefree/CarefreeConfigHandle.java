@@ -0,0 +1,257 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree;
+
+import com.typesafe.config.Config;
+
+import java.util.function.BiFunction;
+
+/**
+ * <p>
+ *     预编译的配置访问句柄，将 key 和属性路径绑定为一个句柄，
+ *     通过 {@link CarefreeRegistry#intHandle(String, String)} 等方法创建，适合在热点路径中反复读取同一个配置值。
+ * </p>
+ * <p>
+ *     句柄以原始类型缓存读取结果及其所属的 {@link CarefreeRegistrySnapshot}，
+ *     重复读取时只需比较一次快照引用并读取字段，不会重复解析路径字符串、遍历配置树或装箱；
+ *     registry 发布新版本后，下一次读取会自动从新快照中刷新。
+ * </p>
+ * <p>
+ *     未指定默认值时，若 key 或属性不存在则抛出异常，与 {@link Config} 的 getXxx 方法一致。
+ * </p>
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public abstract class CarefreeConfigHandle {
+    final CarefreeRegistry registry;
+    final String key;
+    final String path;
+
+    CarefreeConfigHandle(CarefreeRegistry registry, String key, String path) {
+        this.registry = registry;
+        this.key = key;
+        this.path = path;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * 获取快照中可读取到该属性的配置，若属性不存在且有默认值则返回 null
+     */
+    final Config config(CarefreeRegistrySnapshot snapshot, boolean hasDefault) {
+        Config config = snapshot.get(this.key);
+        if (config == null) {
+            if (hasDefault) {
+                return null;
+            }
+            throw new RuntimeException("[Carefree] config key not found: " + this.key);
+        }
+        if (hasDefault && !config.hasPath(this.path)) {
+            return null;
+        }
+        return config;
+    }
+
+    /**
+     * int 类型的访问句柄
+     */
+    public static final class OfInt extends CarefreeConfigHandle {
+        private final boolean hasDefault;
+        private final int defaultValue;
+        private volatile IntSlot slot;
+
+        OfInt(CarefreeRegistry registry, String key, String path, boolean hasDefault, int defaultValue) {
+            super(registry, key, path);
+            this.hasDefault = hasDefault;
+            this.defaultValue = defaultValue;
+        }
+
+        public int get() {
+            IntSlot slot = this.slot;
+            CarefreeRegistrySnapshot snapshot = this.registry.snapshot();
+            if (slot == null || slot.snapshot != snapshot) {
+                Config config = config(snapshot, this.hasDefault);
+                int value = config != null ? config.getInt(this.path) : this.defaultValue;
+                this.slot = slot = new IntSlot(snapshot, value);
+            }
+            return slot.value;
+        }
+    }
+
+    private static final class IntSlot {
+        private final CarefreeRegistrySnapshot snapshot;
+        private final int value;
+
+        private IntSlot(CarefreeRegistrySnapshot snapshot, int value) {
+            this.snapshot = snapshot;
+            this.value = value;
+        }
+    }
+
+    /**
+     * long 类型的访问句柄
+     */
+    public static final class OfLong extends CarefreeConfigHandle {
+        private final boolean hasDefault;
+        private final long defaultValue;
+        private volatile LongSlot slot;
+
+        OfLong(CarefreeRegistry registry, String key, String path, boolean hasDefault, long defaultValue) {
+            super(registry, key, path);
+            this.hasDefault = hasDefault;
+            this.defaultValue = defaultValue;
+        }
+
+        public long get() {
+            LongSlot slot = this.slot;
+            CarefreeRegistrySnapshot snapshot = this.registry.snapshot();
+            if (slot == null || slot.snapshot != snapshot) {
+                Config config = config(snapshot, this.hasDefault);
+                long value = config != null ? config.getLong(this.path) : this.defaultValue;
+                this.slot = slot = new LongSlot(snapshot, value);
+            }
+            return slot.value;
+        }
+    }
+
+    private static final class LongSlot {
+        private final CarefreeRegistrySnapshot snapshot;
+        private final long value;
+
+        private LongSlot(CarefreeRegistrySnapshot snapshot, long value) {
+            this.snapshot = snapshot;
+            this.value = value;
+        }
+    }
+
+    /**
+     * double 类型的访问句柄
+     */
+    public static final class OfDouble extends CarefreeConfigHandle {
+        private final boolean hasDefault;
+        private final double defaultValue;
+        private volatile DoubleSlot slot;
+
+        OfDouble(CarefreeRegistry registry, String key, String path, boolean hasDefault, double defaultValue) {
+            super(registry, key, path);
+            this.hasDefault = hasDefault;
+            this.defaultValue = defaultValue;
+        }
+
+        public double get() {
+            DoubleSlot slot = this.slot;
+            CarefreeRegistrySnapshot snapshot = this.registry.snapshot();
+            if (slot == null || slot.snapshot != snapshot) {
+                Config config = config(snapshot, this.hasDefault);
+                double value = config != null ? config.getDouble(this.path) : this.defaultValue;
+                this.slot = slot = new DoubleSlot(snapshot, value);
+            }
+            return slot.value;
+        }
+    }
+
+    private static final class DoubleSlot {
+        private final CarefreeRegistrySnapshot snapshot;
+        private final double value;
+
+        private DoubleSlot(CarefreeRegistrySnapshot snapshot, double value) {
+            this.snapshot = snapshot;
+            this.value = value;
+        }
+    }
+
+    /**
+     * boolean 类型的访问句柄
+     */
+    public static final class OfBoolean extends CarefreeConfigHandle {
+        private final boolean hasDefault;
+        private final boolean defaultValue;
+        private volatile BooleanSlot slot;
+
+        OfBoolean(CarefreeRegistry registry, String key, String path, boolean hasDefault, boolean defaultValue) {
+            super(registry, key, path);
+            this.hasDefault = hasDefault;
+            this.defaultValue = defaultValue;
+        }
+
+        public boolean get() {
+            BooleanSlot slot = this.slot;
+            CarefreeRegistrySnapshot snapshot = this.registry.snapshot();
+            if (slot == null || slot.snapshot != snapshot) {
+                Config config = config(snapshot, this.hasDefault);
+                boolean value = config != null ? config.getBoolean(this.path) : this.defaultValue;
+                this.slot = slot = new BooleanSlot(snapshot, value);
+            }
+            return slot.value;
+        }
+    }
+
+    private static final class BooleanSlot {
+        private final CarefreeRegistrySnapshot snapshot;
+        private final boolean value;
+
+        private BooleanSlot(CarefreeRegistrySnapshot snapshot, boolean value) {
+            this.snapshot = snapshot;
+            this.value = value;
+        }
+    }
+
+    /**
+     * 任意类型的访问句柄，值由创建时指定的读取函数从配置中获取，如 {@code Config::getString}
+     */
+    public static final class Of<T> extends CarefreeConfigHandle {
+        private final BiFunction<Config, String, T> getter;
+        private final boolean hasDefault;
+        private final T defaultValue;
+        private volatile ObjectSlot<T> slot;
+
+        Of(CarefreeRegistry registry, String key, String path, BiFunction<Config, String, T> getter, boolean hasDefault, T defaultValue) {
+            super(registry, key, path);
+            this.getter = getter;
+            this.hasDefault = hasDefault;
+            this.defaultValue = defaultValue;
+        }
+
+        public T get() {
+            ObjectSlot<T> slot = this.slot;
+            CarefreeRegistrySnapshot snapshot = this.registry.snapshot();
+            if (slot == null || slot.snapshot != snapshot) {
+                Config config = config(snapshot, this.hasDefault);
+                T value = config != null ? this.getter.apply(config, this.path) : this.defaultValue;
+                this.slot = slot = new ObjectSlot<>(snapshot, value);
+            }
+            return slot.value;
+        }
+    }
+
+    private static final class ObjectSlot<T> {
+        private final CarefreeRegistrySnapshot snapshot;
+        private final T value;
+
+        private ObjectSlot(CarefreeRegistrySnapshot snapshot, T value) {
+            this.snapshot = snapshot;
+            this.value = value;
+        }
+    }
+}
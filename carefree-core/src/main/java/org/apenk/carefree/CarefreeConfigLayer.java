@@ -0,0 +1,33 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree;
+
+/**
+ * carefree 配置数据的来源层级，按优先级递增排列，
+ * 高优先级层级中的属性将覆盖低优先级层级中的同名属性。
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public enum CarefreeConfigLayer {
+    /** classpath 中的配置文件，如 classpath:/、classpath:/config/ */
+    CLASSPATH,
+    /** 文件系统中的配置文件，如 file:./、file:./config/ */
+    FILE,
+    /** 配置中心（carefree-cloud）中的配置 */
+    CLOUD
+}
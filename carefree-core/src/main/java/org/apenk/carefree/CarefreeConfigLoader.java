@@ -18,14 +18,19 @@ package org.apenk.carefree;
 
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
-import com.typesafe.config.ConfigValue;
+import org.apenk.carefree.helper.CarefreeLogger;
+import org.apenk.carefree.helper.CarefreeStartupRecorder;
 import org.apenk.carefree.helper.TempCarefreeAide;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.Resource;
 
+import java.io.IOException;
 import java.io.InputStreamReader;
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 解析并加载 carefree 配置数据
@@ -35,31 +40,258 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 class CarefreeConfigLoader {
 
-    static Map<String, Config> load(Map<String, List<Resource>> resourceMap) {
-        Map<String, Config> configCache = new ConcurrentHashMap<>();
+    private static final CarefreeLogger logger = CarefreeLogger.getLogger("carefree");
+
+    /**
+     * 解析所有配置文件，并按 {@link CarefreeConfigLayer} 分层注册到一个新的 {@link CarefreeRegistry} 中，
+     * 同一 key 同一层级的多个配置文件以回退链的方式合并（高优先级在前），不会逐个属性重建配置树。
+     * 若启用了配置快照（carefree.snapshot），则配置文件均未变化的 key 直接使用快照中的配置。
+     * 若启用了延迟解析（carefree.lazy），则需要解析的 key 只注册其配置文件，在第一次读取时才解析，此时不更新快照。
+     */
+    static CarefreeRegistry load(Map<String, List<Resource>> resourceMap, CarefreeProperties properties) {
+        return load(resourceMap, properties, null);
+    }
+
+    /**
+     * 同 {@link #load(Map, CarefreeProperties)}，并将 file 层配置文件各自的解析结果按文件路径记录到 parsedFiles 中
+     * （延迟解析的 key 在解析时记录，来自快照的 key 不记录），供 {@link CarefreeConfigWatcher} 热加载时复用
+     *
+     * @param parsedFiles 可为 null，非 null 时须是线程安全的
+     */
+    static CarefreeRegistry load(Map<String, List<Resource>> resourceMap, CarefreeProperties properties, Map<Path, Config> parsedFiles) {
+        CarefreeRegistry registry = new CarefreeRegistry();
 
         if (TempCarefreeAide.isEmpty(resourceMap)) {
-            return configCache;
+            return registry;
+        }
+
+        long startTime = System.nanoTime();
+
+        Path snapshotFile = TempCarefreeAide.isNotBlank(properties.getSnapshot()) ? Paths.get(properties.getSnapshot().trim()) : null;
+        CarefreeConfigSnapshot snapshot = snapshotFile != null ? CarefreeConfigSnapshot.read(snapshotFile) : null;
+
+        // 找出需要解析的 key（未启用快照、快照中不存在或配置文件已变化）
+        Map<String, List<Resource>> parseMap = new LinkedHashMap<>();
+        Map<String, List<String>> stampMap = new HashMap<>();
+        resourceMap.forEach((key, resources) -> {
+            Map<CarefreeConfigLayer, Config> layers = null;
+            if (snapshot != null) {
+                List<String> stamps = new ArrayList<>(resources.size());
+                resources.forEach(resource -> stamps.add(CarefreeConfigSnapshot.stamp(resource)));
+                stampMap.put(key, stamps);
+                layers = snapshot.get(key, stamps);
+            }
+            if (layers != null) {
+                layers.forEach((layer, config) -> registry.register(key, layer, config));
+            } else {
+                parseMap.put(key, resources);
+            }
+        });
+
+        if (TempCarefreeAide.isTrue(properties.getLazy())) {
+            parseMap.forEach((key, resources) -> registry.register(key, new CarefreeLazyLayers(key, resources, parsedFiles)));
+            logger.info("located {} config key(s) in {} ms, {} key(s) deferred, {} key(s) from snapshot",
+                    resourceMap.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime),
+                    parseMap.size(), resourceMap.size() - parseMap.size());
+            return registry;
         }
 
-        resourceMap.forEach((key, resources) -> resources.forEach(resource -> {
-            try (InputStreamReader reader = new InputStreamReader(resource.getInputStream())) {
-                Config config = ConfigFactory.parseReader(reader);
-                Config cachedConfig = configCache.get(key);
-                if (cachedConfig == null) {
-                    configCache.put(key, config);
-                } else {
-                    for (Map.Entry<String, ConfigValue> entry : config.entrySet()) {
-                        cachedConfig = cachedConfig.withValue(entry.getKey(), entry.getValue());
-                    }
-                    configCache.put(key, cachedConfig);
-                }
+        int resourceCount = parseMap.values().stream().mapToInt(List::size).sum();
+        int parallelism = resolveParallelism(properties, resourceCount);
+        Map<String, Map<CarefreeConfigLayer, Config>> parsed = parallelism > 1
+                ? loadParallel(parseMap, parallelism, parsedFiles) : loadSerial(parseMap, parsedFiles);
+        parsed.forEach((key, layers) -> layers.forEach((layer, config) -> registry.register(key, layer, config)));
+
+        if (snapshot != null && (!parsed.isEmpty() || snapshot.size() != resourceMap.size())) {
+            parsed.forEach((key, layers) -> snapshot.put(key, stampMap.get(key), layers));
+            snapshot.retain(resourceMap.keySet());
+            snapshot.write(snapshotFile);
+        }
+
+        logger.info("loaded {} config key(s) in {} ms, parsed {} resource(s) of {} key(s), {} key(s) from snapshot, parallelism: {}",
+                resourceMap.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime),
+                resourceCount, parsed.size(), resourceMap.size() - parsed.size(), parallelism);
+
+        return registry;
+    }
+
+    /**
+     * 延迟解析模式下，在后台线程中预先解析指定的 key（通常是 druid、redis 等模块启动时必然读取的 key），
+     * 不等待解析完成；模块读取时若解析仍在进行则等待其结果，解析失败时由读取方重新解析并抛出异常。
+     */
+    static void prefetch(CarefreeRegistry registry, Collection<String> keys, CarefreeProperties properties) {
+        List<String> pendingKeys = new LinkedList<>();
+        keys.forEach(key -> {
+            CarefreeLayeredConfig layered = registry.snapshot().layered(key);
+            if (layered != null && !layered.isParsed()) {
+                pendingKeys.add(key);
+            }
+        });
+        if (pendingKeys.isEmpty()) {
+            return;
+        }
+
+        int parallelism = properties.getParallelism() != null && properties.getParallelism() > 0
+                ? properties.getParallelism() : Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, pendingKeys.size()), new LoaderThreadFactory());
+        pendingKeys.forEach(key -> executor.execute(() -> {
+            try {
+                registry.get(key);
             } catch (Exception e) {
-                throw new RuntimeException("[Carefree] error to read config: " + resource, e);
+                logger.debug("error to prefetch config key: {}, {}", key, e.getMessage());
             }
         }));
+        executor.shutdown();
+        logger.debug("prefetching config key(s): {}", pendingKeys);
+    }
+
+    /**
+     * 解析一个 key 的所有配置文件并按层级合并
+     */
+    static Map<CarefreeConfigLayer, Config> parseLayers(String key, List<Resource> resources, Map<Path, Config> parsedFiles) {
+        long startTime = System.nanoTime();
+        List<Config> configs = new LinkedList<>();
+        resources.forEach(resource -> configs.add(parse(key, resource, parsedFiles)));
+        Map<CarefreeConfigLayer, Config> layers = mergeLayers(key, resources, configs);
+        logger.debug("parsed config key: {} in {} ms", key, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+        return layers;
+    }
+
+    private static Map<String, Map<CarefreeConfigLayer, Config>> loadSerial(Map<String, List<Resource>> resourceMap, Map<Path, Config> parsedFiles) {
+        Map<String, Map<CarefreeConfigLayer, Config>> parsed = new LinkedHashMap<>();
+        resourceMap.forEach((key, resources) -> {
+            List<Config> configs = new LinkedList<>();
+            resources.forEach(resource -> configs.add(parse(key, resource, parsedFiles)));
+            parsed.put(key, mergeLayers(key, resources, configs));
+        });
+        return parsed;
+    }
+
+    /**
+     * 在有界线程池中并行解析所有配置文件，
+     * 解析完成后按照 {@link CarefreeConfigLocator} 给出的顺序（优先级从低到高）合并相同 key 的配置
+     */
+    private static Map<String, Map<CarefreeConfigLayer, Config>> loadParallel(Map<String, List<Resource>> resourceMap, int parallelism,
+                                                                              Map<Path, Config> parsedFiles) {
+        Map<String, Map<CarefreeConfigLayer, Config>> parsed = new LinkedHashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, new LoaderThreadFactory());
+        try {
+            Map<String, List<Future<Config>>> futureMap = new LinkedHashMap<>();
+            resourceMap.forEach((key, resources) -> {
+                List<Future<Config>> futures = new LinkedList<>();
+                resources.forEach(resource -> futures.add(executor.submit(() -> parse(key, resource, parsedFiles))));
+                futureMap.put(key, futures);
+            });
+
+            futureMap.forEach((key, futures) -> {
+                List<Config> configs = new LinkedList<>();
+                futures.forEach(future -> configs.add(await(future)));
+                parsed.put(key, mergeLayers(key, resourceMap.get(key), configs));
+            });
+        } finally {
+            executor.shutdownNow();
+        }
+        return parsed;
+    }
+
+    /**
+     * 解析一个配置文件，并记录解析耗时，parsedFiles 非 null 时记录 file 层配置文件的解析结果
+     */
+    private static Config parse(String key, Resource resource, Map<Path, Config> parsedFiles) {
+        CarefreeStartupRecorder.Step step = CarefreeStartupRecorder.getInstance().start(CarefreeStartupRecorder.PHASE_PARSE, key, null);
+        Config config;
+        try {
+            config = parse(resource);
+        } finally {
+            step.end();
+        }
+        if (parsedFiles != null && resolveLayer(resource) == CarefreeConfigLayer.FILE) {
+            Path file = pathOf(resource);
+            if (file != null) {
+                parsedFiles.put(file, config);
+            }
+        }
+        return config;
+    }
+
+    /**
+     * 获取文件系统中配置文件的规范化路径，不是文件时返回 null
+     */
+    static Path pathOf(Resource resource) {
+        if (!resource.isFile()) {
+            return null;
+        }
+        try {
+            return resource.getFile().toPath().toAbsolutePath().normalize();
+        } catch (IOException e) {
+            return null;
+        }
+    }
 
-        return configCache;
+    static Config parse(Resource resource) {
+        try (InputStreamReader reader = new InputStreamReader(resource.getInputStream())) {
+            return ConfigFactory.parseReader(reader);
+        } catch (Exception e) {
+            throw new RuntimeException("[Carefree] error to read config: " + resource, e);
+        }
+    }
+
+    private static Config await(Future<Config> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException("[Carefree] error to read config", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("[Carefree] interrupted while reading config", e);
+        }
+    }
+
+    /**
+     * 将一个 key 的配置（与 resources 一一对应，优先级从低到高）按层级合并
+     */
+    private static Map<CarefreeConfigLayer, Config> mergeLayers(String key, List<Resource> resources, List<Config> configs) {
+        CarefreeStartupRecorder.Step step = CarefreeStartupRecorder.getInstance().start(CarefreeStartupRecorder.PHASE_MERGE, key, null);
+        Map<CarefreeConfigLayer, Config> layerConfigs = new EnumMap<>(CarefreeConfigLayer.class);
+        for (int i = 0; i < configs.size(); i++) {
+            CarefreeConfigLayer layer = resolveLayer(resources.get(i));
+            Config config = configs.get(i);
+            layerConfigs.merge(layer, config, (lower, higher) -> higher.withFallback(lower));
+        }
+        step.end();
+        return layerConfigs;
+    }
+
+    static CarefreeConfigLayer resolveLayer(Resource resource) {
+        return resource instanceof ClassPathResource || resource instanceof CarefreeConfigLocator.ClassPathUrlResource
+                ? CarefreeConfigLayer.CLASSPATH : CarefreeConfigLayer.FILE;
+    }
+
+    /**
+     * 计算解析配置文件使用的线程数，返回值不大于 1 时表示串行解析
+     */
+    private static int resolveParallelism(CarefreeProperties properties, int resourceCount) {
+        if (properties == null || TempCarefreeAide.isNotTrue(properties.getParallel())) {
+            return 1;
+        }
+        int parallelism = properties.getParallelism() != null && properties.getParallelism() > 0
+                ? properties.getParallelism() : Runtime.getRuntime().availableProcessors();
+        return Math.min(parallelism, resourceCount);
+    }
+
+    private static class LoaderThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "carefree-loader-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
     }
 
 }
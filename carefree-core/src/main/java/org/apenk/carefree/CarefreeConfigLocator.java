@@ -16,16 +16,33 @@
 
 package org.apenk.carefree;
 
+import org.apenk.carefree.helper.CarefreeStartupRecorder;
 import org.apenk.carefree.helper.TempCarefreeAide;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.DefaultResourceLoader;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
+import org.springframework.core.io.UrlResource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.core.io.support.ResourcePatternResolver;
 
+import java.io.File;
+import java.io.IOException;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
 import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
 
 /**
  * 定位 carefree 配置文件位置
  *
+ * 每个候选目录只列出一次文件名，之后所有 position 和扩展名的组合都在该目录索引中匹配，
+ * 而不是对每个组合分别检查文件是否存在，启动耗时只与目录数量相关；
+ * 无法列出的目录（如 classpath 根目录）退回逐个检查。
+ * position 的路径支持 classpath*: 前缀，路径和文件名支持 * 和 ? 通配符，此时使用 {@link PathMatchingResourcePatternResolver} 查找。
+ *
  * @author Kweny
  * @since 0.0.1
  */
@@ -93,6 +110,7 @@ class CarefreeConfigLocator {
         Map<String, List<Resource>> resourceMap = new HashMap<>();
 
         if (TempCarefreeAide.isNotEmpty(positions)) {
+            ResourceFinder finder = new ResourceFinder();
             positions.forEach(position -> {
                 // 若未限定配置文件所在根目录，则遍历 DEFAULT_PATHS 中的默认根目录进行查找
                 List<String> paths = new LinkedList<>();
@@ -110,9 +128,11 @@ class CarefreeConfigLocator {
                     extensions.addAll(Arrays.asList(DEFAULT_TYPES));
                 }
 
-                List<Resource> resources = resolveOneKeyResources(position.getName(), paths, extensions);
+                String key = TempCarefreeAide.defaultIfBlank(position.getKey(), position.getName());
+                CarefreeStartupRecorder.Step step = CarefreeStartupRecorder.getInstance().start(CarefreeStartupRecorder.PHASE_LOCATE, key, null);
+                List<Resource> resources = resolveOneKeyResources(finder, position.getName(), paths, extensions);
+                step.end();
                 if (TempCarefreeAide.isNotEmpty(resources)) {
-                    String key = TempCarefreeAide.defaultIfBlank(position.getKey(), position.getName());
                     resourceMap.put(key, resources);
                 }
             });
@@ -125,31 +145,146 @@ class CarefreeConfigLocator {
      * 组装配置文件完整路径并返回路径资源描述（只返回文件真实存在的），
      * root + name + extension
      */
-    private static List<Resource> resolveOneKeyResources(String name, List<String> paths, List<String> extensions) {
+    private static List<Resource> resolveOneKeyResources(ResourceFinder finder, String name, List<String> paths, List<String> extensions) {
         List<Resource> resources = new LinkedList<>();
 
-        ResourceLoader resourceLoader = new DefaultResourceLoader();
-        paths.forEach(path -> extensions.forEach(extension -> {
-            StringBuilder pathBuilder = new StringBuilder();
+        paths.forEach(path -> {
+            String directory = path.endsWith("/") ? path : path + "/";
+            extensions.forEach(extension -> {
+                String fileName = extension.startsWith(".") ? name + extension : name + "." + extension;
+                resources.addAll(finder.find(directory, fileName));
+            });
+        });
+
+        return resources;
+    }
+
+    private static boolean isPattern(String location) {
+        return location.startsWith(ResourcePatternResolver.CLASSPATH_ALL_URL_PREFIX)
+                || location.indexOf('*') >= 0 || location.indexOf('?') >= 0;
+    }
+
+    /**
+     * 一次定位过程中共享的查找器，缓存每个目录的文件名索引
+     */
+    private static class ResourceFinder {
+        private final ResourceLoader resourceLoader = new DefaultResourceLoader();
+        /** 仅在存在 classpath*: 或通配符时创建 */
+        private ResourcePatternResolver patternResolver;
+        /** < 目录, 目录中的文件名 >，值为 null 表示该目录无法列出 */
+        private final Map<String, Set<String>> directoryIndex = new HashMap<>();
+
+        List<Resource> find(String directory, String fileName) {
+            String location = directory + fileName;
+            if (isPattern(location)) {
+                return findByPattern(location);
+            }
 
-            pathBuilder.append(path);
-            if (!path.endsWith("/")) {
-                pathBuilder.append("/");
+            Set<String> names = directoryIndex.computeIfAbsent(directory, this::listDirectory);
+            if (names == null) {
+                Resource resource = resourceLoader.getResource(location);
+                return resource.exists() ? Collections.singletonList(resource) : Collections.emptyList();
+            }
+            return names.contains(fileName) ? Collections.singletonList(resourceLoader.getResource(location)) : Collections.emptyList();
+        }
+
+        private List<Resource> findByPattern(String location) {
+            boolean classpath = location.startsWith(ResourcePatternResolver.CLASSPATH_ALL_URL_PREFIX)
+                    || location.startsWith(ResourceLoader.CLASSPATH_URL_PREFIX);
+            if (patternResolver == null) {
+                patternResolver = new PathMatchingResourcePatternResolver(resourceLoader);
+            }
+            try {
+                List<Resource> resources = new LinkedList<>();
+                for (Resource resource : patternResolver.getResources(location)) {
+                    if (resource.exists() && resource.isReadable()) {
+                        resources.add(classpath && resource instanceof UrlResource ? new ClassPathUrlResource(resource.getURL()) : resource);
+                    }
+                }
+                return resources;
+            } catch (IOException e) {
+                throw new RuntimeException("[Carefree] error to resolve config position: " + location, e);
             }
+        }
+
+        /**
+         * 列出目录中的文件名；classpath 目录合并所有 classpath 根中该目录下的文件名，
+         * 若目录不存在于任何可列出的根中（如 jar 中没有目录条目）则返回 null，由调用方退回逐个检查。
+         * classpath 根目录无法通过 ClassLoader 列出 jar 中的内容，总是逐个检查。
+         */
+        private Set<String> listDirectory(String directory) {
+            try {
+                if (directory.startsWith(ResourceLoader.CLASSPATH_URL_PREFIX)) {
+                    String path = directory.substring(ResourceLoader.CLASSPATH_URL_PREFIX.length());
+                    path = path.startsWith("/") ? path.substring(1) : path;
+                    if (path.isEmpty()) {
+                        return null;
+                    }
+                    ClassLoader classLoader = resourceLoader.getClassLoader();
+                    Enumeration<URL> roots = classLoader != null ? classLoader.getResources(path) : ClassLoader.getSystemResources(path);
+                    Set<String> names = null;
+                    while (roots.hasMoreElements()) {
+                        Set<String> rootNames = listUrl(roots.nextElement());
+                        if (rootNames == null) {
+                            return null;
+                        }
+                        if (names == null) {
+                            names = new HashSet<>();
+                        }
+                        names.addAll(rootNames);
+                    }
+                    return names;
+                }
 
-            pathBuilder.append(name);
+                Resource resource = resourceLoader.getResource(directory);
+                return resource.exists() && resource.isFile() ? listFile(resource.getFile()) : null;
+            } catch (IOException e) {
+                return null;
+            }
+        }
 
-            if (!extension.startsWith(".")) {
-                pathBuilder.append(".");
+        private Set<String> listUrl(URL url) throws IOException {
+            if ("file".equals(url.getProtocol())) {
+                return listFile(new UrlResource(url).getFile());
+            }
+            URLConnection connection = url.openConnection();
+            if (connection instanceof JarURLConnection) {
+                JarURLConnection jarConnection = (JarURLConnection) connection;
+                JarFile jarFile = jarConnection.getJarFile();
+                String prefix = jarConnection.getEntryName();
+                prefix = prefix == null ? "" : (prefix.endsWith("/") ? prefix : prefix + "/");
+                Set<String> names = new HashSet<>();
+                Enumeration<JarEntry> entries = jarFile.entries();
+                while (entries.hasMoreElements()) {
+                    String entryName = entries.nextElement().getName();
+                    if (entryName.length() > prefix.length() && entryName.startsWith(prefix)
+                            && entryName.indexOf('/', prefix.length()) < 0) {
+                        names.add(entryName.substring(prefix.length()));
+                    }
+                }
+                if (!jarConnection.getUseCaches()) {
+                    jarFile.close();
+                }
+                return names;
             }
-            pathBuilder.append(extension);
+            return null;
+        }
 
-            Resource resource = resourceLoader.getResource(pathBuilder.toString());
-            if (resource.exists()) {
-                resources.add(resource);
+        private Set<String> listFile(File directory) {
+            String[] fileNames = directory.list();
+            if (fileNames == null) {
+                return null;
             }
-        }));
+            return new HashSet<>(Arrays.asList(fileNames));
+        }
+    }
 
-        return resources;
+    /**
+     * 通过 classpath*: 找到的 classpath 资源，在分层时与 {@link ClassPathResource} 一样视为 classpath 层
+     */
+    static class ClassPathUrlResource extends UrlResource {
+        ClassPathUrlResource(URL url) {
+            super(url);
+        }
     }
 }
@@ -0,0 +1,337 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree;
+
+import com.typesafe.config.*;
+import org.apenk.carefree.helper.CarefreeLogger;
+import org.springframework.core.io.Resource;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * <p>
+ *     carefree 配置快照缓存，将每个 key 已解析的分层配置以紧凑的二进制格式持久化到文件，
+ *     下次启动时以内存映射的方式读取，若某个 key 的所有配置文件均未发生变化，则直接使用快照中的配置，跳过解析。
+ * </p>
+ *
+ * <p>
+ *     每个配置文件以 描述 + 修改时间 + 长度 作为戳记，无法获取修改时间的资源（如部分 jar 内资源）使用内容的 CRC32 代替修改时间；
+ *     含有未解析替换变量（${...}）的配置无法脱离原文件表达，不会写入快照。
+ *     读取时校验格式版本和每个长度、个数字段，损坏或其他版本的快照视为空快照。
+ * </p>
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+class CarefreeConfigSnapshot {
+
+    private static final CarefreeLogger logger = CarefreeLogger.getLogger("carefree");
+
+    private static final int MAGIC = 0x43465331; // CFS1
+    /** 快照格式版本，格式（包括 {@link CarefreeConfigLayer} 的顺序）变化时递增，其他版本的快照直接忽略 */
+    private static final int FORMAT_VERSION = 2;
+    private static final String ORIGIN = "carefree snapshot";
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_TRUE = 1;
+    private static final byte TYPE_FALSE = 2;
+    private static final byte TYPE_INT = 3;
+    private static final byte TYPE_LONG = 4;
+    private static final byte TYPE_DOUBLE = 5;
+    private static final byte TYPE_STRING = 6;
+    private static final byte TYPE_LIST = 7;
+    private static final byte TYPE_OBJECT = 8;
+
+    /** < key, 快照项 > */
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    /**
+     * 读取快照文件，文件不存在或格式不正确时返回空快照
+     */
+    static CarefreeConfigSnapshot read(Path file) {
+        CarefreeConfigSnapshot snapshot = new CarefreeConfigSnapshot();
+        if (!Files.isRegularFile(file)) {
+            return snapshot;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC) {
+                logger.warn("ignore unrecognized config snapshot: {}", file);
+                return snapshot;
+            }
+            if (buffer.getInt() != FORMAT_VERSION) {
+                logger.warn("ignore config snapshot of another format version: {}", file);
+                return snapshot;
+            }
+            // 每个快照项至少包括 key 长度、戳记个数和分层个数
+            int entryCount = readCount(buffer, 9);
+            for (int i = 0; i < entryCount; i++) {
+                String key = readString(buffer);
+                Entry entry = new Entry();
+                int stampCount = readCount(buffer, 4);
+                for (int j = 0; j < stampCount; j++) {
+                    entry.stamps.add(readString(buffer));
+                }
+                int layerCount = buffer.get();
+                for (int j = 0; j < layerCount; j++) {
+                    CarefreeConfigLayer layer = CarefreeConfigLayer.values()[buffer.get()];
+                    @SuppressWarnings("unchecked")
+                    Map<String, Object> root = (Map<String, Object>) readValue(buffer);
+                    entry.layers.put(layer, ConfigValueFactory.fromMap(root, ORIGIN).toConfig());
+                }
+                snapshot.entries.put(key, entry);
+            }
+        } catch (Exception e) {
+            logger.warn("ignore unreadable config snapshot: {}, cause: {}", file, e.toString());
+            snapshot.entries.clear();
+        }
+        return snapshot;
+    }
+
+    /**
+     * 若快照中该 key 的配置文件戳记与当前配置文件一致，返回快照中的分层配置，否则返回 null
+     */
+    Map<CarefreeConfigLayer, Config> get(String key, List<String> stamps) {
+        Entry entry = this.entries.get(key);
+        return entry != null && entry.stamps.equals(stamps) ? entry.layers : null;
+    }
+
+    int size() {
+        return this.entries.size();
+    }
+
+    void put(String key, List<String> stamps, Map<CarefreeConfigLayer, Config> layers) {
+        for (Config config : layers.values()) {
+            if (!config.isResolved()) {
+                this.entries.remove(key);
+                return;
+            }
+        }
+        Entry entry = new Entry();
+        entry.stamps.addAll(stamps);
+        entry.layers.putAll(layers);
+        this.entries.put(key, entry);
+    }
+
+    /**
+     * 只保留指定 key 的快照项，用于剔除已不再配置的 key
+     */
+    void retain(Set<String> keys) {
+        this.entries.keySet().retainAll(keys);
+    }
+
+    /**
+     * 写入快照文件，先写入临时文件再替换，避免并发启动的实例读取到不完整的文件
+     */
+    void write(Path file) {
+        Path temp = null;
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                output.writeInt(MAGIC);
+                output.writeInt(FORMAT_VERSION);
+                output.writeInt(this.entries.size());
+                for (Map.Entry<String, Entry> mapEntry : this.entries.entrySet()) {
+                    writeString(output, mapEntry.getKey());
+                    Entry entry = mapEntry.getValue();
+                    output.writeInt(entry.stamps.size());
+                    for (String stamp : entry.stamps) {
+                        writeString(output, stamp);
+                    }
+                    output.writeByte(entry.layers.size());
+                    for (Map.Entry<CarefreeConfigLayer, Config> layerEntry : entry.layers.entrySet()) {
+                        output.writeByte(layerEntry.getKey().ordinal());
+                        writeValue(output, layerEntry.getValue().root());
+                    }
+                }
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            temp = null;
+        } catch (Exception e) {
+            logger.warn("failed to write config snapshot: {}, cause: {}", file, e.toString());
+        } finally {
+            if (temp != null) {
+                // 写入或替换失败，删除残留的临时文件
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ignored) {
+                    // 忽略
+                }
+            }
+        }
+    }
+
+    /**
+     * 计算配置文件的戳记：描述 + 修改时间（无法获取时使用内容 CRC32）+ 长度
+     */
+    static String stamp(Resource resource) {
+        long version;
+        long length;
+        try {
+            version = resource.lastModified();
+        } catch (IOException e) {
+            version = 0;
+        }
+        try {
+            if (version <= 0) {
+                version = checksum(resource);
+            }
+            length = resource.contentLength();
+        } catch (IOException e) {
+            throw new UncheckedIOException("[Carefree] error to read config: " + resource, e);
+        }
+        return resource.getDescription() + "@" + version + ":" + length;
+    }
+
+    private static long checksum(Resource resource) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[8192];
+        try (InputStream input = resource.getInputStream()) {
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+            }
+        }
+        return -crc.getValue();
+    }
+
+    private static void writeValue(DataOutputStream output, ConfigValue value) throws IOException {
+        switch (value.valueType()) {
+            case NULL:
+                output.writeByte(TYPE_NULL);
+                break;
+            case BOOLEAN:
+                output.writeByte(Boolean.TRUE.equals(value.unwrapped()) ? TYPE_TRUE : TYPE_FALSE);
+                break;
+            case NUMBER:
+                Object number = value.unwrapped();
+                if (number instanceof Integer) {
+                    output.writeByte(TYPE_INT);
+                    output.writeInt((Integer) number);
+                } else if (number instanceof Long) {
+                    output.writeByte(TYPE_LONG);
+                    output.writeLong((Long) number);
+                } else {
+                    output.writeByte(TYPE_DOUBLE);
+                    output.writeDouble(((Number) number).doubleValue());
+                }
+                break;
+            case STRING:
+                output.writeByte(TYPE_STRING);
+                writeString(output, (String) value.unwrapped());
+                break;
+            case LIST:
+                ConfigList list = (ConfigList) value;
+                output.writeByte(TYPE_LIST);
+                output.writeInt(list.size());
+                for (ConfigValue item : list) {
+                    writeValue(output, item);
+                }
+                break;
+            case OBJECT:
+                ConfigObject object = (ConfigObject) value;
+                output.writeByte(TYPE_OBJECT);
+                output.writeInt(object.size());
+                for (Map.Entry<String, ConfigValue> entry : object.entrySet()) {
+                    writeString(output, entry.getKey());
+                    writeValue(output, entry.getValue());
+                }
+                break;
+            default:
+                throw new IllegalStateException("[Carefree] unsupported config value type: " + value.valueType());
+        }
+    }
+
+    private static Object readValue(MappedByteBuffer buffer) {
+        byte type = buffer.get();
+        switch (type) {
+            case TYPE_NULL:
+                return null;
+            case TYPE_TRUE:
+                return Boolean.TRUE;
+            case TYPE_FALSE:
+                return Boolean.FALSE;
+            case TYPE_INT:
+                return buffer.getInt();
+            case TYPE_LONG:
+                return buffer.getLong();
+            case TYPE_DOUBLE:
+                return buffer.getDouble();
+            case TYPE_STRING:
+                return readString(buffer);
+            case TYPE_LIST:
+                int size = readCount(buffer, 1);
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(buffer));
+                }
+                return list;
+            case TYPE_OBJECT:
+                int count = readCount(buffer, 5);
+                Map<String, Object> object = new LinkedHashMap<>(count * 2);
+                for (int i = 0; i < count; i++) {
+                    String key = readString(buffer);
+                    object.put(key, readValue(buffer));
+                }
+                return object;
+            default:
+                throw new IllegalStateException("[Carefree] corrupted config snapshot, unknown value type: " + type);
+        }
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(MappedByteBuffer buffer) {
+        byte[] bytes = new byte[readCount(buffer, 1)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 读取长度或个数字段，并按每一项至少占用的字节数校验剩余内容是否足够，以免按损坏的字段分配内存
+     */
+    private static int readCount(MappedByteBuffer buffer, int minItemBytes) {
+        int count = buffer.getInt();
+        if (count < 0 || count > buffer.remaining() / minItemBytes) {
+            throw new IllegalStateException("[Carefree] corrupted config snapshot, invalid length: " + count);
+        }
+        return count;
+    }
+
+    private static class Entry {
+        final List<String> stamps = new ArrayList<>();
+        final Map<CarefreeConfigLayer, Config> layers = new EnumMap<>(CarefreeConfigLayer.class);
+    }
+}
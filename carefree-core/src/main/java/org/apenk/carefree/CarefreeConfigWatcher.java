@@ -0,0 +1,219 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.apenk.carefree.helper.CarefreeLogger;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * <p>
+ *     监听文件系统中（file: 位置）的 carefree 配置文件，文件变化时热加载。
+ * </p>
+ *
+ * <p>
+ *     基于 NIO {@link WatchService} 监听配置文件所在目录，同一批次的变化合并处理；
+ *     只重新解析发生变化的文件，未变化的文件使用缓存的解析结果，
+ *     重新合并该 key 的 file 层后整体替换到 {@link CarefreeRegistry} 中并分配新的版本号。
+ *     若变化的文件解析失败（如尚未写完），则保留原有配置并记录错误。
+ * </p>
+ *
+ * <p>
+ *     仅监听启动时已经定位到的配置文件，启动后新增的文件不会被加载。
+ * </p>
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+class CarefreeConfigWatcher implements ApplicationListener<ContextClosedEvent>, Closeable {
+
+    private static final CarefreeLogger logger = CarefreeLogger.getLogger("carefree");
+
+    /** 收到变化事件后等待的时间，用于合并同一批次的事件并等待文件写入完成 */
+    private static final long SETTLE_MILLIS = 200;
+
+    private final CarefreeRegistry registry;
+    /** < key, file 层的配置文件路径（优先级从低到高） > */
+    private final Map<String, List<Path>> keyFiles = new LinkedHashMap<>();
+    /** < 配置文件路径, 引用该文件的 key > */
+    private final Map<Path, Set<String>> fileKeys = new HashMap<>();
+    /** < 配置文件路径, 最近一次解析结果 > */
+    private final Map<Path, Config> parsedFiles = new HashMap<>();
+    /** < 配置文件路径, 启动时的解析结果 >，延迟解析的 key 在解析后才会记录，因此在热加载时才查找 */
+    private final Map<Path, Config> bootstrapFiles;
+
+    private WatchService watchService;
+    private volatile boolean closed;
+
+    /**
+     * @param bootstrapFiles 启动时 {@link CarefreeConfigLoader#load(Map, CarefreeProperties, Map)} 记录的解析结果，可为 null
+     */
+    CarefreeConfigWatcher(CarefreeRegistry registry, Map<String, List<Resource>> resourceMap, Map<Path, Config> bootstrapFiles) {
+        this.registry = registry;
+        this.bootstrapFiles = bootstrapFiles != null ? bootstrapFiles : Collections.emptyMap();
+        resourceMap.forEach((key, resources) -> resources.forEach(resource -> {
+            if (CarefreeConfigLoader.resolveLayer(resource) != CarefreeConfigLayer.FILE) {
+                return;
+            }
+            Path file = CarefreeConfigLoader.pathOf(resource);
+            if (file == null) {
+                logger.warn("config file can not be watched: {}", resource);
+                return;
+            }
+            this.keyFiles.computeIfAbsent(key, k -> new ArrayList<>()).add(file);
+            this.fileKeys.computeIfAbsent(file, k -> new LinkedHashSet<>()).add(key);
+        }));
+    }
+
+    /**
+     * 开始监听，若没有需要监听的配置文件则直接返回 false
+     */
+    boolean start() throws IOException {
+        if (this.fileKeys.isEmpty()) {
+            return false;
+        }
+        this.watchService = FileSystems.getDefault().newWatchService();
+        Set<Path> directories = new LinkedHashSet<>();
+        this.fileKeys.keySet().forEach(file -> directories.add(file.getParent()));
+        for (Path directory : directories) {
+            directory.register(this.watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        }
+
+        Thread thread = new Thread(this::watch, "carefree-watcher");
+        thread.setDaemon(true);
+        thread.start();
+
+        logger.info("watching {} config file(s) in {} directory(ies)", this.fileKeys.size(), directories.size());
+        return true;
+    }
+
+    private void watch() {
+        while (!this.closed) {
+            try {
+                Set<Path> changedFiles = new LinkedHashSet<>();
+                collect(this.watchService.take(), changedFiles);
+
+                Thread.sleep(SETTLE_MILLIS);
+                WatchKey watchKey;
+                while ((watchKey = this.watchService.poll()) != null) {
+                    collect(watchKey, changedFiles);
+                }
+
+                reload(changedFiles);
+            } catch (ClosedWatchServiceException | InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                logger.error(e, "error to reload config");
+            }
+        }
+    }
+
+    private void collect(WatchKey watchKey, Set<Path> changedFiles) {
+        Path directory = (Path) watchKey.watchable();
+        for (WatchEvent<?> event : watchKey.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // 事件丢失，该目录下的所有配置文件都视为已变化
+                this.fileKeys.keySet().stream().filter(file -> file.getParent().equals(directory)).forEach(changedFiles::add);
+                continue;
+            }
+            Path file = directory.resolve((Path) event.context()).toAbsolutePath().normalize();
+            if (this.fileKeys.containsKey(file)) {
+                changedFiles.add(file);
+            }
+        }
+        watchKey.reset();
+    }
+
+    private void reload(Set<Path> changedFiles) {
+        Set<String> changedKeys = new LinkedHashSet<>();
+        for (Path file : changedFiles) {
+            try {
+                this.parsedFiles.put(file, parse(file));
+                changedKeys.addAll(this.fileKeys.get(file));
+            } catch (Exception e) {
+                logger.error(e, "error to reload config file, keep the previous config: {}", file);
+            }
+        }
+
+        for (String key : changedKeys) {
+            Config fileLayer = null;
+            for (Path file : this.keyFiles.get(key)) {
+                Config config = this.parsedFiles.get(file);
+                if (config == null && (config = this.bootstrapFiles.get(file)) != null) {
+                    // 未变化的文件使用启动时的解析结果
+                    this.parsedFiles.put(file, config);
+                }
+                if (config == null) {
+                    // 启动时没有解析（来自快照或延迟解析尚未读取）的文件，首次热加载该 key 时解析，之后使用缓存
+                    try {
+                        this.parsedFiles.put(file, config = parse(file));
+                    } catch (Exception e) {
+                        logger.error(e, "error to reload config file, keep the previous config: {}", file);
+                        fileLayer = null;
+                        break;
+                    }
+                }
+                fileLayer = fileLayer == null ? config : config.withFallback(fileLayer);
+            }
+            if (fileLayer != null) {
+                this.registry.register(key, CarefreeConfigLayer.FILE, fileLayer);
+                logger.info("reloaded config key: {}, version: {}", key, this.registry.getVersion(key));
+            }
+        }
+    }
+
+    /**
+     * 解析配置文件，文件已被删除时返回空配置
+     */
+    private Config parse(Path file) {
+        if (!Files.exists(file)) {
+            return ConfigFactory.empty();
+        }
+        return CarefreeConfigLoader.parse(new FileSystemResource(file));
+    }
+
+    @Override
+    public void onApplicationEvent(@NotNull ContextClosedEvent event) {
+        close();
+    }
+
+    @Override
+    public void close() {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        try {
+            if (this.watchService != null) {
+                this.watchService.close();
+            }
+        } catch (IOException e) {
+            logger.warn("error to close config watcher: {}", e.toString());
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigException;
+import org.apenk.carefree.helper.CarefreeConfigIndex;
+import org.apenk.carefree.helper.CarefreeStartupRecorder;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * 一个 key 的分层配置数据，不可变，
+ * 合并后的配置在首次读取时按优先级从高到低构建回退链并缓存。
+ * 延迟解析模式下可以持有尚未解析的 {@link CarefreeLazyLayers}，直接注册的同层级配置优先于其中的配置。
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+class CarefreeLayeredConfig {
+    static final CarefreeConfigLayer[] LAYERS_DESCENDING;
+
+    static {
+        CarefreeConfigLayer[] layers = CarefreeConfigLayer.values();
+        LAYERS_DESCENDING = new CarefreeConfigLayer[layers.length];
+        for (int i = 0; i < layers.length; i++) {
+            LAYERS_DESCENDING[i] = layers[layers.length - 1 - i];
+        }
+    }
+
+    static final CarefreeLayeredConfig EMPTY = new CarefreeLayeredConfig(new EnumMap<>(CarefreeConfigLayer.class), null, 0);
+
+    /** 直接注册的各层级配置 */
+    private final EnumMap<CarefreeConfigLayer, Config> layers;
+    /** 尚未解析的配置文件，非延迟解析模式下为 null */
+    private final CarefreeLazyLayers lazy;
+    /** 该 key 最近一次发生变化时的 registry 版本号 */
+    final long version;
+    private volatile Config resolved;
+    private volatile CarefreeConfigIndex index;
+
+    private CarefreeLayeredConfig(EnumMap<CarefreeConfigLayer, Config> layers, CarefreeLazyLayers lazy, long version) {
+        this.layers = layers;
+        this.lazy = lazy;
+        this.version = version;
+    }
+
+    CarefreeLayeredConfig with(CarefreeConfigLayer layer, Config config, long version) {
+        EnumMap<CarefreeConfigLayer, Config> newLayers = new EnumMap<>(this.layers);
+        newLayers.put(layer, config);
+        return new CarefreeLayeredConfig(newLayers, this.lazy, version);
+    }
+
+    CarefreeLayeredConfig with(CarefreeLazyLayers lazy, long version) {
+        return new CarefreeLayeredConfig(this.layers, lazy, version);
+    }
+
+    /**
+     * 将另一个分层配置数据中的层级合并进来，对方的层级覆盖本方的同名层级
+     */
+    CarefreeLayeredConfig with(CarefreeLayeredConfig other, long version) {
+        EnumMap<CarefreeConfigLayer, Config> newLayers = new EnumMap<>(this.layers);
+        newLayers.putAll(other.layers);
+        return new CarefreeLayeredConfig(newLayers, other.lazy != null ? other.lazy : this.lazy, version);
+    }
+
+    /**
+     * 获取各层级的配置，若存在尚未解析的配置文件则在此时解析
+     */
+    Map<CarefreeConfigLayer, Config> layers() {
+        if (this.lazy == null) {
+            return this.layers;
+        }
+        EnumMap<CarefreeConfigLayer, Config> layers = new EnumMap<>(CarefreeConfigLayer.class);
+        layers.putAll(this.lazy.get());
+        layers.putAll(this.layers);
+        return layers;
+    }
+
+    /**
+     * 是否所有配置都已解析
+     */
+    boolean isParsed() {
+        return this.lazy == null || this.lazy.isParsed();
+    }
+
+    /**
+     * 获取合并后的配置，并发的首次读取只构建一次
+     */
+    Config resolve(String key) {
+        Config config = this.resolved;
+        if (config == null) {
+            synchronized (this) {
+                config = this.resolved;
+                if (config == null) {
+                    Map<CarefreeConfigLayer, Config> layers = layers();
+                    CarefreeStartupRecorder.Step step = CarefreeStartupRecorder.getInstance().start(CarefreeStartupRecorder.PHASE_MERGE, key, null);
+                    try {
+                        for (CarefreeConfigLayer layer : LAYERS_DESCENDING) {
+                            Config layerConfig = layers.get(layer);
+                            if (layerConfig != null) {
+                                config = config == null ? layerConfig : config.withFallback(layerConfig);
+                            }
+                        }
+                        this.resolved = config = config.resolve();
+                    } finally {
+                        step.end();
+                    }
+                }
+            }
+        }
+        return config;
+    }
+
+    /**
+     * 获取合并后配置的索引，与合并后的配置一样只构建一次
+     */
+    CarefreeConfigIndex index(String key) {
+        CarefreeConfigIndex index = this.index;
+        if (index == null) {
+            Config config = resolve(key);
+            synchronized (this) {
+                index = this.index;
+                if (index == null) {
+                    this.index = index = CarefreeConfigIndex.of(config);
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * 获取某个属性值的来源层级，若该属性不存在则返回 null
+     */
+    CarefreeConfigLayer layerOf(String path) {
+        Map<CarefreeConfigLayer, Config> layers = layers();
+        for (CarefreeConfigLayer layer : LAYERS_DESCENDING) {
+            Config config = layers.get(layer);
+            if (config != null && hasPath(config, path)) {
+                return layer;
+            }
+        }
+        return null;
+    }
+
+    private static boolean hasPath(Config config, String path) {
+        try {
+            return config.hasPath(path);
+        } catch (ConfigException.NotResolved e) {
+            // 存在尚未解析的替换变量，说明该层级中定义了这个属性
+            return true;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree;
+
+import com.typesafe.config.Config;
+import org.springframework.core.io.Resource;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 延迟解析模式下一个 key 尚未解析的配置文件，
+ * 第一次读取时解析并按层级合并，并发的首次读取只会触发一次解析，其余读取方等待其结果；
+ * 解析失败不会被缓存，下一次读取将重新解析。
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+class CarefreeLazyLayers {
+    private final String key;
+    private final List<Resource> resources;
+    /** 可为 null，见 {@link CarefreeConfigLoader#load(Map, CarefreeProperties, Map)} */
+    private final Map<Path, Config> parsedFiles;
+    private volatile Map<CarefreeConfigLayer, Config> layers;
+
+    CarefreeLazyLayers(String key, List<Resource> resources, Map<Path, Config> parsedFiles) {
+        this.key = key;
+        this.resources = resources;
+        this.parsedFiles = parsedFiles;
+    }
+
+    Map<CarefreeConfigLayer, Config> get() {
+        Map<CarefreeConfigLayer, Config> layers = this.layers;
+        if (layers == null) {
+            synchronized (this) {
+                layers = this.layers;
+                if (layers == null) {
+                    this.layers = layers = CarefreeConfigLoader.parseLayers(this.key, this.resources, this.parsedFiles);
+                }
+            }
+        }
+        return layers;
+    }
+
+    boolean isParsed() {
+        return this.layers != null;
+    }
+}
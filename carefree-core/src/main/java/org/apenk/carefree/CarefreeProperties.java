@@ -31,12 +31,42 @@ public class CarefreeProperties {
 
     private String position;
     private List<Position> positions;
+    /**
+     * 是否并行解析配置文件，默认 false。
+     * 开启后每个配置文件在独立的线程中解析，相同 key 的配置仍按优先级从低到高的顺序合并。
+     */
+    private Boolean parallel;
+    /**
+     * 并行解析配置文件时的最大线程数，默认为可用 CPU 数量，
+     * 仅在 {@link #parallel} 为 true 时有效
+     */
+    private Integer parallelism;
+    /**
+     * 配置快照缓存文件路径，为空表示不启用（默认）。
+     * 启用后每个 key 的已解析配置将缓存到该文件，下次启动时若该 key 的配置文件均未发生变化，则跳过解析直接使用快照。
+     */
+    private String snapshot;
+    /**
+     * 是否监听文件系统中（file: 位置）的配置文件并在其变化时热加载，默认 false
+     */
+    private Boolean watch;
+    /**
+     * 是否延迟解析配置文件，默认 false。
+     * 开启后启动时只定位配置文件，每个 key 在第一次被读取时才解析，
+     * carefree.druid.config-key 和 carefree.redis.config-key 中的 key 会在启动时于后台线程中预先解析。
+     */
+    private Boolean lazy;
 
     @Override
     public String toString() {
         return "CarefreeProperties{" +
                 "position='" + position + '\'' +
                 ", positions=" + positions +
+                ", parallel=" + parallel +
+                ", parallelism=" + parallelism +
+                ", snapshot='" + snapshot + '\'' +
+                ", watch=" + watch +
+                ", lazy=" + lazy +
                 '}';
     }
 
@@ -56,6 +86,46 @@ public class CarefreeProperties {
         this.positions = positions;
     }
 
+    public Boolean getParallel() {
+        return parallel;
+    }
+
+    public void setParallel(Boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    public Integer getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(Integer parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public String getSnapshot() {
+        return snapshot;
+    }
+
+    public void setSnapshot(String snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    public Boolean getWatch() {
+        return watch;
+    }
+
+    public void setWatch(Boolean watch) {
+        this.watch = watch;
+    }
+
+    public Boolean getLazy() {
+        return lazy;
+    }
+
+    public void setLazy(Boolean lazy) {
+        this.lazy = lazy;
+    }
+
     public static class Position {
         private String name;
         private String extension;
@@ -17,10 +17,17 @@
 package org.apenk.carefree;
 
 import com.typesafe.config.Config;
+import com.typesafe.config.ConfigValue;
+import org.apenk.carefree.helper.CarefreeConfigIndex;
+import org.apenk.carefree.helper.CarefreeLogger;
+import org.apenk.carefree.listener.CarefreeRegistryChangeEvent;
+import org.apenk.carefree.listener.CarefreeRegistryListener;
 
-import java.util.Collections;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
 
 /**
  * 持有 carefree 配置数据，
@@ -28,6 +35,18 @@ import java.util.concurrent.ConcurrentHashMap;
  * 可注入到应用程序中，使用 {@link #get(String)} 方法获取指定配置数据，
  * 或使用 {@link #getAll()} 方法获取所有配置数据。
  *
+ * 每个 key 的配置数据按 {@link CarefreeConfigLayer} 分层持有（classpath、file、cloud），
+ * 在首次读取时按优先级从高到低构建一次回退链得到最终配置，
+ * 可使用 {@link #getLayer(String, String)} 查询某个属性值来自哪一层。
+ *
+ * 所有数据保存在不可变的 {@link CarefreeRegistrySnapshot} 中，每次注册都以写时复制的方式生成新的快照并整体替换，
+ * 读取方无锁，并且不会看到合并到一半的状态；可使用 {@link #snapshot()} 获取并持有某个版本的快照。
+ * 使用 {@link #subscribe(String, CarefreeRegistryListener)} 或 {@link #subscribe(String, String, CarefreeRegistryListener)}
+ * 订阅某个 key 或某个属性路径的变更，变更时将收到包含变化路径的事件。
+ *
+ * 对于热点路径中的反复读取，可使用 {@link #intHandle(String, String)} 等方法创建 {@link CarefreeConfigHandle}，
+ * 将 key 和属性路径预先绑定，之后每次读取只需一次快照比较和字段读取，并在版本变化后自动刷新。
+ *
  * @author Kweny
  * @since 0.0.1
  */
@@ -36,28 +55,366 @@ public class CarefreeRegistry {
 
     public static final CarefreeRegistry EMPTY = new CarefreeRegistry();
 
-    /** < key, 配置数据 > */
-    private final Map<String, Config> configHolder;
+    private static final CarefreeLogger logger = CarefreeLogger.getLogger("carefree");
+
+    /** 当前快照，仅在持有写锁时替换 */
+    private volatile CarefreeRegistrySnapshot snapshot;
+    private final Object writeLock = new Object();
+    private final List<Subscription> subscriptions;
+    /** 待通知的变更，在持有写锁时按版本顺序加入 */
+    private final Queue<Notification> notifications = new ConcurrentLinkedQueue<>();
+    /** 是否有线程正在依次通知 {@link #notifications} 中的变更 */
+    private final AtomicBoolean notifying = new AtomicBoolean();
 
     public CarefreeRegistry() {
-        this.configHolder = new ConcurrentHashMap<>();
+        this.snapshot = CarefreeRegistrySnapshot.EMPTY;
+        this.subscriptions = new CopyOnWriteArrayList<>();
     }
 
     public CarefreeRegistry(Map<String, Config> configMap) {
         this();
-        this.configHolder.putAll(configMap);
+        configMap.forEach(this::register);
+    }
+
+    public CarefreeRegistry(CarefreeRegistry registry) {
+        this();
+        registerAll(registry);
     }
 
+    /**
+     * 注册配置数据到最高优先级的层级（{@link CarefreeConfigLayer#CLOUD}）
+     */
     public void register(String key, Config config) {
-        this.configHolder.put(key, config);
+        register(key, CarefreeConfigLayer.CLOUD, config);
+    }
+
+    /**
+     * 注册指定层级的配置数据，若该层级已存在配置数据则将其替换
+     */
+    public void register(String key, CarefreeConfigLayer layer, Config config) {
+        publish(Collections.singletonMap(key, (layered, version) -> layered.with(layer, config, version)));
+    }
+
+    /**
+     * 延迟解析模式下注册尚未解析的配置文件，在第一次读取该 key 时解析
+     */
+    void register(String key, CarefreeLazyLayers lazy) {
+        publish(Collections.singletonMap(key, (layered, version) -> layered.with(lazy, version)));
+    }
+
+    /**
+     * 将另一个 registry 中的所有分层配置数据（包括尚未解析的）注册到本 registry，所有变更在一个新版本中生效
+     */
+    public void registerAll(CarefreeRegistry registry) {
+        Map<String, LayeredUpdate> changes = new HashMap<>();
+        registry.snapshot().layered().forEach((key, other) -> changes.put(key, (layered, version) -> layered.with(other, version)));
+        publish(changes);
+    }
+
+    /**
+     * 获取当前版本的不可变快照
+     */
+    public CarefreeRegistrySnapshot snapshot() {
+        return this.snapshot;
+    }
+
+    /**
+     * 当前版本号，每次注册（包括热加载）都会使其加一
+     */
+    public long getVersion() {
+        return this.snapshot.getVersion();
+    }
+
+    /**
+     * 获取指定 key 最近一次发生变化时的版本号，若 key 不存在则返回 0
+     */
+    public long getVersion(String key) {
+        return this.snapshot.getVersion(key);
     }
 
     public Config get(String key) {
-        return this.configHolder.get(key);
+        return this.snapshot.get(key);
+    }
+
+    /**
+     * 获取指定 key 合并后配置的索引，用于枚举 root、获取子树等
+     */
+    public CarefreeConfigIndex getIndex(String key) {
+        return this.snapshot.getIndex(key);
     }
 
     public Map<String, Config> getAll() {
-        return Collections.unmodifiableMap(this.configHolder);
+        return this.snapshot.getAll();
+    }
+
+    /**
+     * 获取指定 key 在各层级中的原始配置数据
+     */
+    public Map<CarefreeConfigLayer, Config> getLayers(String key) {
+        return this.snapshot.getLayers(key);
+    }
+
+    /**
+     * 获取指定 key 中某个属性值的来源层级，若该属性不存在则返回 null
+     */
+    public CarefreeConfigLayer getLayer(String key, String path) {
+        return this.snapshot.getLayer(key, path);
+    }
+
+    public CarefreeConfigHandle.OfInt intHandle(String key, String path) {
+        return new CarefreeConfigHandle.OfInt(this, key, path, false, 0);
+    }
+
+    public CarefreeConfigHandle.OfInt intHandle(String key, String path, int defaultValue) {
+        return new CarefreeConfigHandle.OfInt(this, key, path, true, defaultValue);
+    }
+
+    public CarefreeConfigHandle.OfLong longHandle(String key, String path) {
+        return new CarefreeConfigHandle.OfLong(this, key, path, false, 0L);
+    }
+
+    public CarefreeConfigHandle.OfLong longHandle(String key, String path, long defaultValue) {
+        return new CarefreeConfigHandle.OfLong(this, key, path, true, defaultValue);
+    }
+
+    public CarefreeConfigHandle.OfDouble doubleHandle(String key, String path) {
+        return new CarefreeConfigHandle.OfDouble(this, key, path, false, 0D);
+    }
+
+    public CarefreeConfigHandle.OfDouble doubleHandle(String key, String path, double defaultValue) {
+        return new CarefreeConfigHandle.OfDouble(this, key, path, true, defaultValue);
+    }
+
+    public CarefreeConfigHandle.OfBoolean booleanHandle(String key, String path) {
+        return new CarefreeConfigHandle.OfBoolean(this, key, path, false, false);
+    }
+
+    public CarefreeConfigHandle.OfBoolean booleanHandle(String key, String path, boolean defaultValue) {
+        return new CarefreeConfigHandle.OfBoolean(this, key, path, true, defaultValue);
+    }
+
+    public CarefreeConfigHandle.Of<String> stringHandle(String key, String path) {
+        return new CarefreeConfigHandle.Of<>(this, key, path, Config::getString, false, null);
+    }
+
+    public CarefreeConfigHandle.Of<String> stringHandle(String key, String path, String defaultValue) {
+        return new CarefreeConfigHandle.Of<>(this, key, path, Config::getString, true, defaultValue);
+    }
+
+    /**
+     * 创建任意类型的访问句柄，getter 为从配置中读取值的函数，如 {@code Config::getDuration}
+     */
+    public <T> CarefreeConfigHandle.Of<T> handle(String key, String path, BiFunction<Config, String, T> getter) {
+        return new CarefreeConfigHandle.Of<>(this, key, path, getter, false, null);
+    }
+
+    public <T> CarefreeConfigHandle.Of<T> handle(String key, String path, BiFunction<Config, String, T> getter, T defaultValue) {
+        return new CarefreeConfigHandle.Of<>(this, key, path, getter, true, defaultValue);
+    }
+
+    /**
+     * 订阅指定 key 的变更
+     */
+    public Subscription subscribe(String key, CarefreeRegistryListener listener) {
+        return subscribe(key, null, listener);
+    }
+
+    /**
+     * 订阅指定 key 中某个属性路径（及其子路径）的变更，path 为空时订阅整个 key
+     */
+    public Subscription subscribe(String key, String path, CarefreeRegistryListener listener) {
+        Subscription subscription = new Subscription(key, path, listener);
+        this.subscriptions.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * 生成并发布新版本的快照，写操作之间串行，读操作不受影响；
+     * 发布完成后通知订阅者，同一时刻只有一个线程在通知，事件严格按版本顺序送达：
+     * 并发写入时，后一个版本的事件可能由正在通知的另一个写线程送达，当前线程不等待；
+     * 订阅者在回调中写入时，新版本的事件在当前事件的所有回调结束后送达。
+     * 有订阅者的 key 在替换快照之前合并新的配置，合并失败（如引用了不存在的路径）时抛出异常并保留原有快照；
+     * 没有订阅者的 key 仍在首次读取时合并，以保持延迟解析。
+     */
+    private void publish(Map<String, LayeredUpdate> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        CarefreeRegistrySnapshot previous;
+        CarefreeRegistrySnapshot current;
+        synchronized (this.writeLock) {
+            previous = this.snapshot;
+            long version = previous.getVersion() + 1;
+            Map<String, CarefreeLayeredConfig> layeredChanges = new HashMap<>();
+            changes.forEach((key, update) -> {
+                CarefreeLayeredConfig layered = previous.layered(key);
+                layeredChanges.put(key, update.apply(layered != null ? layered : CarefreeLayeredConfig.EMPTY, version));
+            });
+            layeredChanges.forEach((key, layered) -> {
+                if (isSubscribed(key)) {
+                    layered.resolve(key);
+                }
+            });
+            this.snapshot = current = previous.with(layeredChanges, version);
+            if (!this.subscriptions.isEmpty()) {
+                this.notifications.add(new Notification(previous, current, changes.keySet()));
+            }
+        }
+        drainNotifications();
+    }
+
+    /**
+     * 依次通知待通知的变更，已有线程在通知时直接返回，由该线程继续通知；
+     * 释放通知权后再次检查队列，以免遗漏在此期间加入的变更
+     */
+    private void drainNotifications() {
+        while (!this.notifications.isEmpty()) {
+            if (!this.notifying.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                Notification notification;
+                while ((notification = this.notifications.poll()) != null) {
+                    notifySubscribers(notification.previous, notification.current, notification.keys);
+                }
+            } finally {
+                this.notifying.set(false);
+            }
+        }
+    }
+
+    private void notifySubscribers(CarefreeRegistrySnapshot previous, CarefreeRegistrySnapshot current, Set<String> keys) {
+        if (this.subscriptions.isEmpty()) {
+            return;
+        }
+        for (String key : keys) {
+            Set<String> changedPaths = null;
+            for (Subscription subscription : this.subscriptions) {
+                if (!key.equals(subscription.key)) {
+                    continue;
+                }
+                if (changedPaths == null) {
+                    try {
+                        changedPaths = diff(previous.get(key), current.get(key));
+                    } catch (Exception e) {
+                        logger.error(e, "error to compare config change of key: {}", key);
+                        break;
+                    }
+                    if (changedPaths.isEmpty()) {
+                        break;
+                    }
+                }
+                Set<String> matchedPaths = subscription.match(changedPaths);
+                if (matchedPaths.isEmpty()) {
+                    continue;
+                }
+
+                CarefreeRegistryChangeEvent event = new CarefreeRegistryChangeEvent();
+                event.setKey(key);
+                event.setPath(subscription.path);
+                event.setPreviousVersion(previous.getVersion(key));
+                event.setVersion(current.getVersion(key));
+                event.setPreviousConfig(previous.get(key));
+                event.setConfig(current.get(key));
+                event.setChangedPaths(matchedPaths);
+                try {
+                    subscription.listener.changed(event);
+                } catch (Exception e) {
+                    logger.error(e, "error to notify config change of key: {}", key);
+                }
+            }
+        }
+    }
+
+    private boolean isSubscribed(String key) {
+        for (Subscription subscription : this.subscriptions) {
+            if (key.equals(subscription.key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 比较两个配置，返回新增、删除、修改过的属性路径
+     */
+    private static Set<String> diff(Config previous, Config current) {
+        Map<String, ConfigValue> previousValues = flatten(previous);
+        Map<String, ConfigValue> currentValues = flatten(current);
+        Set<String> changedPaths = new TreeSet<>();
+        currentValues.forEach((path, value) -> {
+            if (!value.equals(previousValues.get(path))) {
+                changedPaths.add(path);
+            }
+        });
+        previousValues.keySet().forEach(path -> {
+            if (!currentValues.containsKey(path)) {
+                changedPaths.add(path);
+            }
+        });
+        return changedPaths;
+    }
+
+    private static Map<String, ConfigValue> flatten(Config config) {
+        Map<String, ConfigValue> values = new HashMap<>();
+        if (config != null) {
+            config.entrySet().forEach(entry -> values.put(entry.getKey(), entry.getValue()));
+        }
+        return values;
+    }
+
+    @FunctionalInterface
+    private interface LayeredUpdate {
+        CarefreeLayeredConfig apply(CarefreeLayeredConfig layered, long version);
+    }
+
+    /**
+     * 一次发布中待通知的变更
+     */
+    private static final class Notification {
+        private final CarefreeRegistrySnapshot previous;
+        private final CarefreeRegistrySnapshot current;
+        private final Set<String> keys;
+
+        private Notification(CarefreeRegistrySnapshot previous, CarefreeRegistrySnapshot current, Set<String> keys) {
+            this.previous = previous;
+            this.current = current;
+            this.keys = keys;
+        }
+    }
+
+    /**
+     * 变更订阅，调用 {@link #cancel()} 取消订阅
+     */
+    public class Subscription {
+        private final String key;
+        private final String path;
+        private final String pathPrefix;
+        private final CarefreeRegistryListener listener;
+
+        private Subscription(String key, String path, CarefreeRegistryListener listener) {
+            this.key = key;
+            this.path = path == null || path.isEmpty() ? null : path;
+            this.pathPrefix = this.path != null ? this.path + "." : null;
+            this.listener = listener;
+        }
+
+        private Set<String> match(Set<String> changedPaths) {
+            if (this.path == null) {
+                return changedPaths;
+            }
+            Set<String> matchedPaths = new TreeSet<>();
+            for (String changedPath : changedPaths) {
+                if (changedPath.equals(this.path) || changedPath.startsWith(this.pathPrefix)) {
+                    matchedPaths.add(changedPath);
+                }
+            }
+            return matchedPaths;
+        }
+
+        public void cancel() {
+            subscriptions.remove(this);
+        }
     }
 
 }
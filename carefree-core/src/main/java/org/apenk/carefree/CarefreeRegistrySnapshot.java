@@ -0,0 +1,115 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree;
+
+import com.typesafe.config.Config;
+import org.apenk.carefree.helper.CarefreeConfigIndex;
+
+import java.util.*;
+
+/**
+ * <p>
+ *     {@link CarefreeRegistry} 在某个版本时的不可变快照，
+ *     可以被读取方长期持有，读取时无需任何同步；registry 的每次变更都会生成新的快照，而不会修改已有快照。
+ * </p>
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public final class CarefreeRegistrySnapshot {
+    static final CarefreeRegistrySnapshot EMPTY = new CarefreeRegistrySnapshot(Collections.emptyMap(), 0);
+
+    /** < key, 分层配置数据 > */
+    private final Map<String, CarefreeLayeredConfig> configHolder;
+    private final long version;
+
+    CarefreeRegistrySnapshot(Map<String, CarefreeLayeredConfig> configHolder, long version) {
+        this.configHolder = configHolder;
+        this.version = version;
+    }
+
+    /**
+     * 在本快照的基础上应用变更，生成新版本的快照
+     */
+    CarefreeRegistrySnapshot with(Map<String, CarefreeLayeredConfig> changes, long version) {
+        Map<String, CarefreeLayeredConfig> newHolder = new HashMap<>(this.configHolder);
+        newHolder.putAll(changes);
+        return new CarefreeRegistrySnapshot(Collections.unmodifiableMap(newHolder), version);
+    }
+
+    CarefreeLayeredConfig layered(String key) {
+        return this.configHolder.get(key);
+    }
+
+    Map<String, CarefreeLayeredConfig> layered() {
+        return this.configHolder;
+    }
+
+    /**
+     * 快照的版本号，registry 每发生一次变更版本号加一
+     */
+    public long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * 指定 key 最近一次发生变化时的版本号，若 key 不存在则返回 0
+     */
+    public long getVersion(String key) {
+        CarefreeLayeredConfig layered = this.configHolder.get(key);
+        return layered != null ? layered.version : 0;
+    }
+
+    public Set<String> keys() {
+        return this.configHolder.keySet();
+    }
+
+    public Config get(String key) {
+        CarefreeLayeredConfig layered = this.configHolder.get(key);
+        return layered != null ? layered.resolve(key) : null;
+    }
+
+    /**
+     * 获取指定 key 合并后配置的索引，用于枚举 root、获取子树等
+     */
+    public CarefreeConfigIndex getIndex(String key) {
+        CarefreeLayeredConfig layered = this.configHolder.get(key);
+        return layered != null ? layered.index(key) : null;
+    }
+
+    public Map<String, Config> getAll() {
+        Map<String, Config> configMap = new HashMap<>();
+        this.configHolder.forEach((key, layered) -> configMap.put(key, layered.resolve(key)));
+        return Collections.unmodifiableMap(configMap);
+    }
+
+    /**
+     * 获取指定 key 在各层级中的原始配置数据
+     */
+    public Map<CarefreeConfigLayer, Config> getLayers(String key) {
+        CarefreeLayeredConfig layered = this.configHolder.get(key);
+        return layered != null ? Collections.unmodifiableMap(layered.layers()) : Collections.emptyMap();
+    }
+
+    /**
+     * 获取指定 key 中某个属性值的来源层级，若该属性不存在则返回 null
+     */
+    public CarefreeConfigLayer getLayer(String key, String path) {
+        CarefreeLayeredConfig layered = this.configHolder.get(key);
+        return layered != null ? layered.layerOf(path) : null;
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.apenk.carefree.helper.CarefreeStartupRecorder;
+import org.springframework.context.ApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 将启动耗时记录发布到 Micrometer，仅在 classpath 中存在 Micrometer 时由 {@link CarefreeStartupReporter} 加载
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+class CarefreeStartupMetrics {
+    static final String METRIC_DURATION = "carefree.startup.duration";
+    static final String METRIC_ALLOCATED = "carefree.startup.allocated";
+
+    /**
+     * 若容器中存在唯一的 MeterRegistry，则将记录发布到其中
+     *
+     * @return 是否发布成功
+     */
+    static boolean publish(ApplicationContext applicationContext, List<CarefreeStartupRecorder.Record> records) {
+        MeterRegistry meterRegistry = applicationContext.getBeanProvider(MeterRegistry.class).getIfUnique();
+        if (meterRegistry == null) {
+            return false;
+        }
+        records.forEach(record -> {
+            Tags tags = Tags.of(
+                    "phase", record.getPhase(),
+                    "key", record.getKey() != null ? record.getKey() : "none",
+                    "root", record.getRoot() != null ? record.getRoot() : "none");
+            Timer.builder(METRIC_DURATION)
+                    .description("Time spent in a carefree startup phase")
+                    .tags(tags)
+                    .register(meterRegistry)
+                    .record(record.getDurationNanos(), TimeUnit.NANOSECONDS);
+            if (record.getAllocatedBytes() >= 0) {
+                DistributionSummary.builder(METRIC_ALLOCATED)
+                        .description("Bytes allocated by the thread running a carefree startup phase")
+                        .baseUnit("bytes")
+                        .tags(tags)
+                        .register(meterRegistry)
+                        .record(record.getAllocatedBytes());
+            }
+        });
+        return true;
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree;
+
+import org.apenk.carefree.helper.CarefreeLogger;
+import org.apenk.carefree.helper.CarefreeStartupRecorder;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.BeansException;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.context.ApplicationListener;
+import org.springframework.util.ClassUtils;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * <p>
+ *     应用启动完成后发布 {@link CarefreeStartupRecorder} 中的启动耗时记录：
+ *     若存在 Micrometer 的 MeterRegistry 则作为指标发布，否则（或 carefree.startup-report=true 时）输出启动报告，
+ *     报告中包含各阶段的合计、耗时最长的 key/root 以及耗时最长的单个步骤。
+ *     发布后清空记录并停止记录。
+ * </p>
+ * <p>
+ *     指标：carefree.startup.duration（Timer）、carefree.startup.allocated（DistributionSummary，单位 bytes），
+ *     标签为 phase、key、root，可用于在集群范围内找出启动最慢的 root。
+ * </p>
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public class CarefreeStartupReporter implements ApplicationListener<ApplicationReadyEvent>, ApplicationContextAware {
+    public static final String PropertyName_startupReport = "carefree.startup-report";
+
+    private static final String METER_REGISTRY_CLASS = "io.micrometer.core.instrument.MeterRegistry";
+    private static final int TOP = 10;
+
+    private static final CarefreeLogger logger = CarefreeLogger.getLogger("carefree");
+
+    private ApplicationContext applicationContext;
+
+    @Override
+    public void onApplicationEvent(@NotNull ApplicationReadyEvent event) {
+        CarefreeStartupRecorder recorder = CarefreeStartupRecorder.getInstance();
+        List<CarefreeStartupRecorder.Record> records = recorder.getRecords();
+        // 启动后的操作不再记录，避免记录常驻内存
+        recorder.stop();
+        if (records.isEmpty()) {
+            return;
+        }
+
+        boolean metrics = ClassUtils.isPresent(METER_REGISTRY_CLASS, applicationContext.getClassLoader())
+                && CarefreeStartupMetrics.publish(applicationContext, records);
+        if (!metrics || applicationContext.getEnvironment().getProperty(PropertyName_startupReport, Boolean.class, false)) {
+            logger.info("{}", report(records));
+        }
+    }
+
+    static String report(List<CarefreeStartupRecorder.Record> records) {
+        StringBuilder builder = new StringBuilder();
+        Summary total = new Summary();
+        records.forEach(total::add);
+        builder.append("startup report: ").append(total.count).append(" step(s), ")
+                .append(millis(total.durationNanos)).append(" (sum of all steps, parallel steps overlap), ")
+                .append(bytes(total.allocatedBytes)).append(" allocated");
+
+        builder.append("\n  by phase:");
+        group(records, CarefreeStartupRecorder.Record::getPhase).forEach(summary ->
+                builder.append(String.format("%n    %-20s %6d step(s) %12s %12s", summary.name, summary.count, millis(summary.durationNanos), bytes(summary.allocatedBytes))));
+
+        builder.append("\n  slowest keys/roots:");
+        group(records, CarefreeStartupReporter::target).stream().limit(TOP).forEach(summary ->
+                builder.append(String.format("%n    %-40s %12s %12s  %s", summary.name, millis(summary.durationNanos), bytes(summary.allocatedBytes), summary.phases())));
+
+        builder.append("\n  slowest steps:");
+        records.stream().sorted(Comparator.comparingLong(CarefreeStartupRecorder.Record::getDurationNanos).reversed()).limit(TOP).forEach(record ->
+                builder.append(String.format("%n    %-20s %-40s %12s %12s  [%s]", record.getPhase(), target(record), millis(record.getDurationNanos()), bytes(record.getAllocatedBytes()), record.getThread())));
+
+        return builder.toString();
+    }
+
+    /**
+     * 按指定维度分组汇总，按耗时降序排列
+     */
+    private static List<Summary> group(List<CarefreeStartupRecorder.Record> records, Function<CarefreeStartupRecorder.Record, String> classifier) {
+        Map<String, Summary> summaries = new LinkedHashMap<>();
+        records.forEach(record -> summaries.computeIfAbsent(classifier.apply(record), Summary::new).add(record));
+        List<Summary> result = new ArrayList<>(summaries.values());
+        result.sort(Comparator.comparingLong((Summary summary) -> summary.durationNanos).reversed());
+        return result;
+    }
+
+    private static String target(CarefreeStartupRecorder.Record record) {
+        String key = record.getKey() != null ? record.getKey() : "-";
+        return record.getRoot() != null ? key + "/" + record.getRoot() : key;
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.1f ms", nanos / 1_000_000D);
+    }
+
+    private static String bytes(long bytes) {
+        if (bytes < 0) {
+            return "n/a";
+        }
+        if (bytes < 1024 * 1024) {
+            return String.format("%.1f KB", bytes / 1024D);
+        }
+        return String.format("%.1f MB", bytes / (1024D * 1024D));
+    }
+
+    private static class Summary {
+        private final String name;
+        private final Map<String, Long> phaseNanos = new LinkedHashMap<>();
+        private int count;
+        private long durationNanos;
+        private long allocatedBytes;
+
+        Summary() {
+            this(null);
+        }
+
+        Summary(String name) {
+            this.name = name;
+        }
+
+        void add(CarefreeStartupRecorder.Record record) {
+            this.count++;
+            this.durationNanos += record.getDurationNanos();
+            if (this.allocatedBytes >= 0) {
+                this.allocatedBytes = record.getAllocatedBytes() < 0 ? -1 : this.allocatedBytes + record.getAllocatedBytes();
+            }
+            this.phaseNanos.merge(record.getPhase(), record.getDurationNanos(), Long::sum);
+        }
+
+        String phases() {
+            StringJoiner joiner = new StringJoiner(", ", "(", ")");
+            this.phaseNanos.forEach((phase, nanos) -> joiner.add(phase + " " + millis(nanos)));
+            return joiner.toString();
+        }
+    }
+
+    @Override
+    public void setApplicationContext(@NotNull ApplicationContext applicationContext) throws BeansException {
+        this.applicationContext = applicationContext;
+    }
+}
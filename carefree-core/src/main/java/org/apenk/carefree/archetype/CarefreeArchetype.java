@@ -33,7 +33,8 @@ public abstract class CarefreeArchetype {
      */
     private Boolean enabled = true;
     /**
-     * 引用的另一个配置的 key，若本实例的某个属性未配置，则使用所引用配置的相应属性作为默认值
+     * 引用的另一个配置的 key，若本实例的某个属性未配置，则使用所引用配置的相应属性作为默认值，
+     * 所引用的配置也可以继续引用其他配置，见 {@link CarefreeArchetypeFactory}
      */
     private String reference;
 
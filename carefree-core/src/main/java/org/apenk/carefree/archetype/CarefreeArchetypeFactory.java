@@ -16,12 +16,120 @@
 
 package org.apenk.carefree.archetype;
 
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigValue;
+import com.typesafe.config.ConfigValueType;
+import org.apenk.carefree.helper.CarefreeAssistance;
+import org.apenk.carefree.helper.CarefreeBindingPlan;
+import org.apenk.carefree.helper.CarefreeConfigIndex;
+import org.apenk.carefree.helper.TempCarefreeAide;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
- * TODO-Kweny CarefreeArchetypeFactory
+ * <p>
+ *     从一份配置中创建 archetype，并处理 root 之间的引用链。
+ * </p>
+ * <p>
+ *     root 可以通过 reference 引用另一个 root，被引用的 root 也可以继续引用其他 root，
+ *     如 tenant -> region-default -> global-default。
+ *     未在本 root 中配置的属性使用引用链中最近一级所配置的值，force-default 同样会终止向上查找。
+ *     引用链中出现循环时抛出异常。
+ * </p>
+ * <p>
+ *     被引用的 root 的解析结果（{@link CarefreeBindingPlan.Resolution}）按 archetype 类型和路径缓存，
+ *     多个 root 引用同一个 root 时，被引用的 root 只解析一次；
+ *     每个 root 仍然会创建独立的 archetype 实例，其属性值不会在 root 之间共享。
+ * </p>
+ * <p>
+ *     一个实例对应一份配置，可以被多个线程同时使用。
+ * </p>
  *
  * @author Kweny
  * @since 0.0.1
  */
 public class CarefreeArchetypeFactory {
 
+    private static final String REFERENCE = "reference";
+
+    private final CarefreeConfigIndex index;
+    private final Map<String, String> references = new ConcurrentHashMap<>();
+    private final Map<Class<?>, Map<String, CarefreeBindingPlan.Resolution>> resolutions = new ConcurrentHashMap<>();
+
+    public CarefreeArchetypeFactory(Config config) {
+        this(CarefreeConfigIndex.of(config));
+    }
+
+    public CarefreeArchetypeFactory(CarefreeConfigIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * 按 root 及其引用链创建 archetype
+     */
+    public <T> T create(Class<T> clazz, String root) {
+        return create(clazz, root, null);
+    }
+
+    /**
+     * 按 root 下的 section（如 pool）及各级引用 root 下的同名 section 创建 archetype
+     *
+     * @param section 为空时表示 root 本身
+     */
+    public <T> T create(Class<T> clazz, String root, String section) {
+        return CarefreeAssistance.fromResolution(clazz, resolve(clazz, root, section, new ArrayList<>()));
+    }
+
+    /**
+     * @return root 所引用的 root，未配置时返回空字符串
+     */
+    public String getReference(String root) {
+        return this.references.computeIfAbsent(root, r -> {
+            String path = String.join(".", r, REFERENCE);
+            ConfigValue value = this.index.getValue(path);
+            if (value == null) {
+                return "";
+            }
+            // 非字符串的值交给 Config 按其规则转换
+            return value.valueType() == ConfigValueType.STRING ? (String) value.unwrapped() : this.index.getConfig().getString(path);
+        });
+    }
+
+    private CarefreeBindingPlan.Resolution resolve(Class<?> clazz, String root, String section, List<String> chain) {
+        if (chain.contains(root)) {
+            chain.add(root);
+            throw new RuntimeException("[Carefree] circular reference: " + String.join(" -> ", chain));
+        }
+        chain.add(root);
+
+        CarefreeBindingPlan.Resolution base = null;
+        String reference = getReference(root);
+        if (TempCarefreeAide.isNotBlank(reference)) {
+            base = resolveReference(clazz, reference, section, chain);
+        }
+        CarefreeBindingPlan.Resolution resolution = CarefreeAssistance.resolve(clazz, this.index.getObject(path(root, section)), base);
+
+        chain.remove(chain.size() - 1);
+        return resolution;
+    }
+
+    private CarefreeBindingPlan.Resolution resolveReference(Class<?> clazz, String root, String section, List<String> chain) {
+        // 不使用 computeIfAbsent，因为解析过程中会递归访问同一个 map；并发时可能重复解析，但结果相同
+        Map<String, CarefreeBindingPlan.Resolution> cache = this.resolutions.computeIfAbsent(clazz, k -> new ConcurrentHashMap<>());
+        String path = path(root, section);
+        CarefreeBindingPlan.Resolution resolution = cache.get(path);
+        if (resolution == null) {
+            resolution = resolve(clazz, root, section, chain);
+            CarefreeBindingPlan.Resolution existing = cache.putIfAbsent(path, resolution);
+            if (existing != null) {
+                resolution = existing;
+            }
+        }
+        return resolution;
+    }
+
+    private static String path(String root, String section) {
+        return TempCarefreeAide.isBlank(section) ? root : String.join(".", root, section);
+    }
 }
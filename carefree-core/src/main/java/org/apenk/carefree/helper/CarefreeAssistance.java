@@ -16,14 +16,12 @@
 
 package org.apenk.carefree.helper;
 
-import com.typesafe.config.Config;
-import com.typesafe.config.ConfigValue;
+import com.typesafe.config.*;
 
 import java.beans.BeanInfo;
 import java.beans.IntrospectionException;
 import java.beans.Introspector;
 import java.beans.PropertyDescriptor;
-import java.lang.reflect.Method;
 import java.util.*;
 
 /**
@@ -58,168 +56,173 @@ public class CarefreeAssistance {
         return beanInfo;
     }
 
+    /**
+     * 获取配置中的所有 root，需要多次查询同一份配置时应直接使用 {@link CarefreeConfigIndex}
+     */
     public static Set<String> getConfigRoots(Config config) {
-        Set<String> rootKeys = new HashSet<>();
-        for (Map.Entry<String, ConfigValue> entry : config.entrySet()) {
-            String key = entry.getKey();
-            int pointIndex = key.indexOf(".");
-            if (pointIndex > 0) {
-                rootKeys.add(key.substring(0, pointIndex));
-            }
-        }
-        return rootKeys;
+        return new HashSet<>(CarefreeConfigIndex.of(config).roots());
     }
 
     public static <T> void loadReference(Class<T> clazz, T target, T another) throws Exception {
-        BeanInfo targetBean = getBeanInfo(clazz, Object.class);
-        PropertyDescriptor[] beanProperties = targetBean.getPropertyDescriptors();
-        for (PropertyDescriptor beanProperty : beanProperties) {
-//            if (StringAide.equals("reference", beanProperty.getName())) {
-//                continue;
-//            }
-            Method writeMethod = beanProperty.getWriteMethod();
-            Method readMethod = beanProperty.getReadMethod();
-            if (writeMethod == null || readMethod == null) {
+        for (CarefreeBindingPlan.Property property : CarefreeBindingPlan.of(clazz).getProperties()) {
+            if (!property.isReadable()) {
                 continue;
             }
 
-            Object value = readMethod.invoke(target);
+            Object value = property.get(target);
             if (TempCarefreeAide.isNull(value)) {
-                Object anotherValue = readMethod.invoke(another);
+                Object anotherValue = property.get(another);
                 if (TempCarefreeAide.isNotNull(anotherValue)) {
-                    writeMethod.invoke(target, anotherValue);
+                    property.set(target, anotherValue);
                 }
             }
         }
     }
 
     public static <T> T fromConfig(Class<T> clazz, Config config) throws Exception {
-        T bean = clazz.getConstructor().newInstance();
+        T bean = clazz.cast(CarefreeBindingPlan.of(clazz).newInstance());
         loadBeanProperties(clazz, bean, config, null, null);
         return bean;
     }
 
     public static <T> T fromConfig(Class<T> clazz, Config config, String prefix) throws Exception {
-        T bean = clazz.getConstructor().newInstance();
+        T bean = clazz.cast(CarefreeBindingPlan.of(clazz).newInstance());
         loadBeanProperties(clazz, bean, config, prefix, null);
         return bean;
     }
 
     public static <T> T fromConfig(Class<T> clazz, Config config, String prefix, String defaultPrefix) throws Exception {
-        T bean = clazz.getConstructor().newInstance();
+        T bean = clazz.cast(CarefreeBindingPlan.of(clazz).newInstance());
         loadBeanProperties(clazz, bean, config, prefix, defaultPrefix);
         return bean;
     }
 
+    /**
+     * <p>
+     *     从 prefix 所指的配置对象中为 bean 的属性赋值，prefix 中不存在的属性再从 defaultPrefix 中查找；
+     *     每个属性依次匹配属性名、kebab 形式、snake 形式，值为 force-default 的属性保持默认值。
+     * </p>
+     * <p>
+     *     prefix、defaultPrefix 各自的配置对象只取一次，遍历其中的 key 并在绑定计划的候选名索引中查找，
+     *     而不是为每个属性拼接路径并逐一调用 {@link Config#hasPath(String)}。
+     * </p>
+     */
     public static void loadBeanProperties(Class<?> clazz, Object bean, Config config, String prefix, String defaultPrefix) throws Exception {
-        BeanInfo targetBean = getBeanInfo(clazz, Object.class);
-        PropertyDescriptor[] beanProperties = targetBean.getPropertyDescriptors();
-        for (PropertyDescriptor beanProperty : beanProperties) {
-            Method writeMethod = beanProperty.getWriteMethod();
-            if (writeMethod == null) {
+        CarefreeBindingPlan plan = CarefreeBindingPlan.of(clazz);
+        CarefreeBindingPlan.Resolution base = TempCarefreeAide.isNotBlank(defaultPrefix) ? resolve(plan, objectAt(config, defaultPrefix), null) : null;
+        bind(resolve(plan, objectAt(config, prefix), base), bean);
+    }
+
+    /**
+     * 为 clazz 的各属性选定 path 所指配置对象中的值，path 中不存在的属性使用 base 中选定的值，
+     * 因此可以沿引用链逐级构建，每一级的结果都可以被多个下级共享
+     *
+     * @param base 可为 null
+     */
+    public static CarefreeBindingPlan.Resolution resolve(Class<?> clazz, Config config, String path, CarefreeBindingPlan.Resolution base) {
+        return resolve(clazz, objectAt(config, path), base);
+    }
+
+    /**
+     * 同 {@link #resolve(Class, Config, String, CarefreeBindingPlan.Resolution)}，
+     * 配置对象通常由 {@link CarefreeConfigIndex#getObject(String)} 获取
+     *
+     * @param object 可为 null，表示没有配置
+     */
+    public static CarefreeBindingPlan.Resolution resolve(Class<?> clazz, ConfigObject object, CarefreeBindingPlan.Resolution base) {
+        CarefreeBindingPlan plan = CarefreeBindingPlan.of(clazz);
+        if (base != null && base.plan != plan) {
+            throw new RuntimeException("[Carefree] resolution of " + base.plan.getType().getName() + " can not be used as base of " + clazz.getName());
+        }
+        return resolve(plan, object, base);
+    }
+
+    /**
+     * 创建 clazz 的实例并按 resolution 中选定的值为其属性赋值
+     */
+    public static <T> T fromResolution(Class<T> clazz, CarefreeBindingPlan.Resolution resolution) {
+        T bean = clazz.cast(resolution.plan.newInstance());
+        bind(resolution, bean);
+        return bean;
+    }
+
+    private static CarefreeBindingPlan.Resolution resolve(CarefreeBindingPlan plan, ConfigObject object, CarefreeBindingPlan.Resolution base) {
+        int size = plan.getProperties().size();
+        String[] keys = new String[size];
+        ConfigObject[] owners = new ConfigObject[size];
+        int[] ranks = new int[size];
+
+        int matched = match(plan, object, keys, owners, ranks);
+        if (base != null && matched < size) {
+            // 只有 object 中没有的属性才使用 base 中的配置
+            for (int index = 0; index < size; index++) {
+                if (owners[index] == null) {
+                    keys[index] = base.keys[index];
+                    owners[index] = base.owners[index];
+                }
+            }
+        }
+        return new CarefreeBindingPlan.Resolution(plan, keys, owners);
+    }
+
+    private static void bind(CarefreeBindingPlan.Resolution resolution, Object bean) {
+        List<CarefreeBindingPlan.Property> properties = resolution.plan.getProperties();
+        ConfigObject[] owners = resolution.owners;
+        String[] keys = resolution.keys;
+        for (int index = 0; index < owners.length; index++) {
+            if (owners[index] == null) {
                 continue;
             }
-            String name = beanProperty.getName();
-            String propertyPath;
-
-            String newPrefix = TempCarefreeAide.isNotBlank(prefix) ? prefix + "." : "";
-            String newDefaultPrefix = TempCarefreeAide.isNotBlank(defaultPrefix) ? defaultPrefix + "." : "";
-
-            String kebabName = NamingConvention.KEBAB.fromCamel(name);
-            String snakeName = NamingConvention.SNAKE.fromCamel(name);
-
-            String specifiedPropertyPath = newPrefix + name;
-            String specifiedPropertyPathKebab = newPrefix + kebabName;
-            String specifiedPropertyPathSnake = newPrefix + snakeName;
-            String defaultPropertyPath = newDefaultPrefix + name;
-            String defaultPropertyPathKebab = newDefaultPrefix + kebabName;
-            String defaultPropertyPathSnake = newDefaultPrefix + snakeName;
-
-            if (config.hasPath(specifiedPropertyPath)) {
-                propertyPath = specifiedPropertyPath;
-            } else if (config.hasPath(specifiedPropertyPathKebab)) {
-                propertyPath = specifiedPropertyPathKebab;
-            } else if (config.hasPath(specifiedPropertyPathSnake)) {
-                propertyPath = specifiedPropertyPathSnake;
-            } else if (TempCarefreeAide.isNotBlank(newDefaultPrefix)) {
-                if (config.hasPath(defaultPropertyPath)) {
-                    propertyPath = defaultPropertyPath;
-                } else if (config.hasPath(defaultPropertyPathKebab)) {
-                    propertyPath = defaultPropertyPathKebab;
-                } else if (config.hasPath(defaultPropertyPathSnake)) {
-                    propertyPath = defaultPropertyPathSnake;
-                } else {
-                    continue;
-                }
-            } else {
+            ConfigValue value = owners[index].get(keys[index]);
+            if (value.valueType() == ConfigValueType.STRING
+                    && TempCarefreeAide.equalsIgnoreCase(FORCE_DEFAULT, (String) value.unwrapped())) {
                 continue;
             }
+            CarefreeBindingPlan.Property property = properties.get(index);
+            property.set(bean, property.converter().convert(value, keys[index]));
+        }
+    }
 
-            Object configValue = config.getValue(propertyPath).unwrapped();
-            if ((configValue instanceof String)
-                    && TempCarefreeAide.equalsIgnoreCase(FORCE_DEFAULT, (String) configValue)) {
+    /**
+     * 遍历 object 的 key，为每个属性记录优先级最高的 key
+     *
+     * @return 已匹配的属性数
+     */
+    private static int match(CarefreeBindingPlan plan, ConfigObject object, String[] keys, ConfigObject[] owners, int[] ranks) {
+        if (object == null) {
+            return 0;
+        }
+        int matched = 0;
+        // ConfigObject.entrySet() 每次都会复制一个新的集合，keySet() 则不会
+        for (String key : object.keySet()) {
+            CarefreeBindingPlan.Candidate[] candidates = plan.candidatesOf(key);
+            if (candidates == null || object.get(key).valueType() == ConfigValueType.NULL) {
                 continue;
             }
-
-            Class<?> propertyType = beanProperty.getPropertyType();
-            if (propertyType == CarefreeClassDeclaration.class) {
-
-                CarefreeClassDeclaration wrapper = new CarefreeClassDeclaration();
-                Object configAny = config.getAnyRef(propertyPath);
-                if (configAny instanceof String) {
-                    wrapper.setClassName((String) configAny);
-                } else {
-                    Config wrapperConfig = config.getConfig(propertyPath);
-                    loadBeanProperties(CarefreeClassDeclaration.class, wrapper, wrapperConfig, null, null);
+            for (CarefreeBindingPlan.Candidate candidate : candidates) {
+                int index = candidate.property;
+                if (owners[index] == null) {
+                    matched++;
+                } else if (ranks[index] <= candidate.rank) {
+                    continue;
                 }
-                writeMethod.invoke(bean, wrapper);
-
-            } else if (propertyType == String.class) {
-
-                writeMethod.invoke(bean, config.getString(propertyPath));
-
-            } else if (propertyType == Byte.class || "byte".equals(propertyType.getName())) {
-
-                writeMethod.invoke(bean, config.getNumber(propertyPath).byteValue());
-
-            } else if (propertyType == Short.class || "short".equals(propertyType.getName())) {
-
-                writeMethod.invoke(bean, config.getNumber(propertyPath).shortValue());
-
-            } else if (propertyType == Integer.class || "int".equals(propertyType.getName())) {
-
-                writeMethod.invoke(bean, config.getInt(propertyPath));
-
-            } else if (propertyType == Long.class || "long".equals(propertyType.getName())) {
-
-                writeMethod.invoke(bean, config.getLong(propertyPath));
-
-            } else if (propertyType == Float.class || "float".equals(propertyType.getName())) {
-
-                writeMethod.invoke(bean, config.getNumber(propertyPath).floatValue());
-
-            } else if (propertyType == Double.class || "double".equals(propertyType.getName())) {
-
-                writeMethod.invoke(bean, config.getDouble(propertyPath));
-
-            } else if (propertyType == Boolean.class || "boolean".equals(propertyType.getName())) {
-
-                writeMethod.invoke(bean, config.getBoolean(propertyPath));
-
-            } else if (propertyType == Character.class || "char".equals(propertyType.getName())) {
-
-                writeMethod.invoke(bean, config.getString(propertyPath).charAt(0));
-
-            } else if (propertyType.isArray()) {
-
-                writeMethod.invoke(bean, (Object) config.getAnyRefList(propertyPath).toArray());
-
-            } else {
-
-                writeMethod.invoke(bean, config.getAnyRef(propertyPath));
-
+                keys[index] = key;
+                owners[index] = object;
+                ranks[index] = candidate.rank;
             }
         }
+        return matched;
+    }
+
+    private static ConfigObject objectAt(Config config, String prefix) {
+        if (TempCarefreeAide.isBlank(prefix)) {
+            return config.root();
+        }
+        if (!config.hasPath(prefix)) {
+            return null;
+        }
+        ConfigValue value = config.getValue(prefix);
+        return value.valueType() == ConfigValueType.OBJECT ? (ConfigObject) value : null;
     }
 
 }
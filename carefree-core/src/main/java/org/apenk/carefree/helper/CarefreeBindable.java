@@ -0,0 +1,38 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree.helper;
+
+import java.lang.annotation.*;
+
+/**
+ * <p>
+ *     标记一个需要从配置绑定的类（通常是各模块的 archetype），
+ *     carefree-processor 会在编译期为其生成 {@link CarefreeBindingPlanProvider} 实现，
+ *     {@link CarefreeBindingPlan#of(Class)} 优先使用生成的绑定计划，不再通过反射内省该类。
+ * </p>
+ * <p>
+ *     未启用注解处理器时该注解没有任何作用，绑定计划仍通过反射构建。
+ * </p>
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface CarefreeBindable {
+}
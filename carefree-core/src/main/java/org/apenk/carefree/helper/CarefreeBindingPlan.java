@@ -0,0 +1,468 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree.helper;
+
+import com.typesafe.config.ConfigObject;
+
+import java.beans.Introspector;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * <p>
+ *     一个类的配置绑定计划，包括无参构造方法和所有可写属性的 setter、getter，
+ *     每个类只构建一次并缓存在 {@link ClassValue} 中，绑定时不再进行 bean 内省和 {@link Method#invoke} 调用。
+ * </p>
+ * <p>
+ *     属性的规则与 {@link Introspector#getBeanInfo(Class, Class)}（stopClass 为 Object）一致：
+ *     public、非静态、单个参数且返回 void 的 setXxx 方法为 setter，
+ *     若同名 setter 有多个，则选择参数类型与 getter 返回值类型相同的那个。
+ *     setter、getter 通过 {@link MethodHandle} 调用。
+ * </p>
+ * <p>
+ *     若类标注了 {@link CarefreeBindable} 且编译时启用了 carefree-processor，
+ *     则直接使用生成的 {@link CarefreeBindingPlanProvider} 所提供的计划，完全不经过反射，
+ *     适用于 GraalVM native image 等反射受限的环境。
+ * </p>
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public final class CarefreeBindingPlan {
+
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+
+    private static final CarefreeLogger logger = CarefreeLogger.getLogger("carefree");
+
+    private static final ClassValue<CarefreeBindingPlan> PLANS = new ClassValue<CarefreeBindingPlan>() {
+        @Override
+        protected CarefreeBindingPlan computeValue(Class<?> type) {
+            CarefreeBindingPlanProvider provider = GeneratedPlans.PROVIDERS.get(type);
+            if (provider != null) {
+                return provider.getPlan();
+            }
+            return reflect(type);
+        }
+    };
+
+    public static CarefreeBindingPlan of(Class<?> type) {
+        return PLANS.get(type);
+    }
+
+    public static Builder builder(Class<?> type) {
+        return new Builder(type);
+    }
+
+    /**
+     * 构造一个 {@link ParameterizedType}，供生成的绑定计划描述泛型属性类型（如 {@code Set<String>}）
+     */
+    public static ParameterizedType parameterizedType(Class<?> rawType, Type... typeArguments) {
+        return new CarefreeParameterizedType(rawType, typeArguments);
+    }
+
+    private final Class<?> type;
+    private final Supplier<?> instantiator;
+    private final List<Property> properties;
+    /**
+     * 配置中可能出现的 key（属性名及其 kebab、snake 形式）到候选属性的索引
+     */
+    private final Map<String, Candidate[]> candidates;
+
+    CarefreeBindingPlan(Class<?> type, Supplier<?> instantiator, List<Property> properties) {
+        this.type = type;
+        this.instantiator = instantiator;
+        this.properties = Collections.unmodifiableList(properties);
+        this.candidates = indexCandidates(properties);
+    }
+
+    private static Map<String, Candidate[]> indexCandidates(List<Property> properties) {
+        Map<String, Candidate[]> candidates = new HashMap<>();
+        for (int index = 0; index < properties.size(); index++) {
+            String[] names = properties.get(index).candidateNames;
+            for (int rank = 0; rank < names.length; rank++) {
+                // 同一属性的多个形式相同时（如 host），只保留优先级最高的
+                if (rank > 0 && Arrays.asList(names).subList(0, rank).contains(names[rank])) {
+                    continue;
+                }
+                Candidate candidate = new Candidate(index, rank);
+                candidates.merge(names[rank], new Candidate[] {candidate}, (existing, added) -> {
+                    Candidate[] merged = Arrays.copyOf(existing, existing.length + 1);
+                    merged[existing.length] = candidate;
+                    return merged;
+                });
+            }
+        }
+        return candidates;
+    }
+
+    public Class<?> getType() {
+        return type;
+    }
+
+    /**
+     * 按属性名排序的可写属性
+     */
+    public List<Property> getProperties() {
+        return properties;
+    }
+
+    /**
+     * @param key 配置对象中的一个 key
+     * @return 以该 key 命名的候选属性，不存在则返回 null
+     */
+    Candidate[] candidatesOf(String key) {
+        return this.candidates.get(key);
+    }
+
+    public Object newInstance() {
+        if (this.instantiator == null) {
+            throw new RuntimeException("[Carefree] no public no-arg constructor: " + this.type.getName());
+        }
+        return this.instantiator.get();
+    }
+
+    public static class Property {
+        private final String name;
+        private final Class<?> type;
+        private final Type genericType;
+        private final BiConsumer<Object, Object> setter;
+        private final Function<Object, Object> getter;
+        /**
+         * 按匹配优先级排列的配置名：属性名、kebab 形式、snake 形式
+         */
+        private final String[] candidateNames;
+        /**
+         * 按泛型类型构建的值转换器，首次绑定时创建
+         */
+        private volatile CarefreeValueConverter converter;
+
+        Property(String name, Class<?> type, Type genericType, BiConsumer<Object, Object> setter, Function<Object, Object> getter) {
+            this.name = name.intern();
+            this.type = type;
+            this.genericType = genericType;
+            this.setter = setter;
+            this.getter = getter;
+            this.candidateNames = new String[] {
+                    this.name,
+                    NamingConvention.KEBAB.fromCamel(name).intern(),
+                    NamingConvention.SNAKE.fromCamel(name).intern()
+            };
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getKebabName() {
+            return candidateNames[1];
+        }
+
+        public String getSnakeName() {
+            return candidateNames[2];
+        }
+
+        public Class<?> getType() {
+            return type;
+        }
+
+        public Type getGenericType() {
+            return genericType;
+        }
+
+        public boolean isReadable() {
+            return getter != null;
+        }
+
+        public void set(Object bean, Object value) {
+            this.setter.accept(bean, value);
+        }
+
+        public Object get(Object bean) {
+            return this.getter.apply(bean);
+        }
+
+        CarefreeValueConverter converter() {
+            CarefreeValueConverter converter = this.converter;
+            if (converter == null) {
+                // 重复创建是无害的，无需加锁
+                this.converter = converter = CarefreeValueConverter.of(genericType != null ? genericType : type);
+            }
+            return converter;
+        }
+    }
+
+    /**
+     * 配置 key 所对应的属性，rank 越小优先级越高（0 属性名、1 kebab、2 snake）
+     */
+    static final class Candidate {
+        final int property;
+        final int rank;
+
+        private Candidate(int property, int rank) {
+            this.property = property;
+            this.rank = rank;
+        }
+    }
+
+    /**
+     * <p>
+     *     为绑定计划的各属性选定的配置值（所在的配置对象及其 key），按属性下标对应，未选定的为 null。
+     * </p>
+     * <p>
+     *     由 {@link CarefreeAssistance#resolve(Class, com.typesafe.config.Config, String, Resolution)} 创建，
+     *     创建后不可变，可作为引用链中的基础配置被多个 root 共享。
+     * </p>
+     */
+    public static final class Resolution {
+        final CarefreeBindingPlan plan;
+        final String[] keys;
+        final ConfigObject[] owners;
+
+        Resolution(CarefreeBindingPlan plan, String[] keys, ConfigObject[] owners) {
+            this.plan = plan;
+            this.keys = keys;
+            this.owners = owners;
+        }
+
+        public CarefreeBindingPlan getPlan() {
+            return plan;
+        }
+    }
+
+    /**
+     * 用于编译期生成的绑定计划，属性会按名称排序
+     */
+    public static final class Builder {
+        private final Class<?> type;
+        private Supplier<?> instantiator;
+        private final Map<String, Property> properties = new TreeMap<>();
+
+        private Builder(Class<?> type) {
+            this.type = type;
+        }
+
+        public Builder instantiator(Supplier<?> instantiator) {
+            this.instantiator = instantiator;
+            return this;
+        }
+
+        /**
+         * @param getter 可为 null，表示属性不可读
+         */
+        public Builder property(String name, Class<?> type, Type genericType, BiConsumer<Object, Object> setter, Function<Object, Object> getter) {
+            this.properties.put(name, new Property(name, type, genericType != null ? genericType : type, setter, getter));
+            return this;
+        }
+
+        public CarefreeBindingPlan build() {
+            return new CarefreeBindingPlan(this.type, this.instantiator, new ArrayList<>(this.properties.values()));
+        }
+    }
+
+    // ---------- 编译期生成 ----------
+
+    private static class GeneratedPlans {
+        private static final Map<Class<?>, CarefreeBindingPlanProvider> PROVIDERS = load();
+
+        private static Map<Class<?>, CarefreeBindingPlanProvider> load() {
+            Map<Class<?>, CarefreeBindingPlanProvider> providers = new HashMap<>();
+            try {
+                for (CarefreeBindingPlanProvider provider : ServiceLoader.load(CarefreeBindingPlanProvider.class, CarefreeBindingPlan.class.getClassLoader())) {
+                    providers.put(provider.getType(), provider);
+                }
+            } catch (ServiceConfigurationError | LinkageError e) {
+                logger.warn("error to load generated binding plans, fall back to reflection: {}", e.toString());
+            }
+            return providers;
+        }
+    }
+
+    private static class CarefreeParameterizedType implements ParameterizedType {
+        private final Class<?> rawType;
+        private final Type[] typeArguments;
+
+        private CarefreeParameterizedType(Class<?> rawType, Type[] typeArguments) {
+            this.rawType = rawType;
+            this.typeArguments = typeArguments.clone();
+        }
+
+        @Override
+        public Type[] getActualTypeArguments() {
+            return this.typeArguments.clone();
+        }
+
+        @Override
+        public Type getRawType() {
+            return this.rawType;
+        }
+
+        @Override
+        public Type getOwnerType() {
+            return this.rawType.getDeclaringClass();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ParameterizedType)) {
+                return false;
+            }
+            ParameterizedType that = (ParameterizedType) o;
+            return this.rawType.equals(that.getRawType())
+                    && Objects.equals(getOwnerType(), that.getOwnerType())
+                    && Arrays.equals(this.typeArguments, that.getActualTypeArguments());
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(this.typeArguments) ^ Objects.hashCode(getOwnerType()) ^ this.rawType.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            StringJoiner joiner = new StringJoiner(", ", this.rawType.getName() + "<", ">");
+            for (Type argument : this.typeArguments) {
+                joiner.add(argument.getTypeName());
+            }
+            return joiner.toString();
+        }
+    }
+
+    // ---------- 通过反射构建 ----------
+
+    private static CarefreeBindingPlan reflect(Class<?> type) {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+        Map<String, Method> getters = new HashMap<>();
+        Map<String, List<Method>> setters = new TreeMap<>();
+        for (Method method : type.getMethods()) {
+            if (Modifier.isStatic(method.getModifiers()) || method.isBridge() || method.getDeclaringClass() == Object.class) {
+                continue;
+            }
+            String methodName = method.getName();
+            int parameterCount = method.getParameterCount();
+            if (parameterCount == 1 && methodName.length() > 3 && methodName.startsWith("set") && method.getReturnType() == void.class) {
+                setters.computeIfAbsent(Introspector.decapitalize(methodName.substring(3)), k -> new ArrayList<>()).add(method);
+            } else if (parameterCount == 0 && methodName.length() > 3 && methodName.startsWith("get") && method.getReturnType() != void.class) {
+                getters.putIfAbsent(Introspector.decapitalize(methodName.substring(3)), method);
+            } else if (parameterCount == 0 && methodName.length() > 2 && methodName.startsWith("is") && method.getReturnType() == boolean.class) {
+                getters.put(Introspector.decapitalize(methodName.substring(2)), method);
+            }
+        }
+
+        List<Property> properties = new ArrayList<>(setters.size());
+        setters.forEach((name, candidates) -> {
+            Method getter = getters.get(name);
+            Method setter = chooseSetter(candidates, getter);
+            if (getter != null && getter.getReturnType() != setter.getParameterTypes()[0]) {
+                getter = null;
+            }
+            properties.add(new Property(name, setter.getParameterTypes()[0], setter.getGenericParameterTypes()[0],
+                    setter(lookup, setter), getter != null ? getter(lookup, getter) : null));
+        });
+
+        return new CarefreeBindingPlan(type, instantiator(lookup, type), properties);
+    }
+
+    private static Method chooseSetter(List<Method> candidates, Method getter) {
+        if (candidates.size() > 1) {
+            if (getter != null) {
+                for (Method candidate : candidates) {
+                    if (candidate.getParameterTypes()[0] == getter.getReturnType()) {
+                        return candidate;
+                    }
+                }
+            }
+            candidates.sort(Comparator.comparing(candidate -> candidate.getParameterTypes()[0].getName()));
+        }
+        return candidates.get(0);
+    }
+
+    private static MethodHandle unreflect(MethodHandles.Lookup lookup, Method method) {
+        try {
+            method.setAccessible(true);
+            return lookup.unreflect(method);
+        } catch (Exception e) {
+            throw new RuntimeException("[Carefree] error to access method: " + method, e);
+        }
+    }
+
+    private static BiConsumer<Object, Object> setter(MethodHandles.Lookup lookup, Method method) {
+        MethodHandle handle = unreflect(lookup, method).asType(SETTER_TYPE);
+        return (bean, value) -> {
+            try {
+                handle.invokeExact(bean, value);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new RuntimeException("[Carefree] error to invoke setter: " + method, e);
+            }
+        };
+    }
+
+    private static Function<Object, Object> getter(MethodHandles.Lookup lookup, Method method) {
+        MethodHandle handle = unreflect(lookup, method).asType(GETTER_TYPE);
+        return bean -> {
+            try {
+                return (Object) handle.invokeExact(bean);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new RuntimeException("[Carefree] error to invoke getter: " + method, e);
+            }
+        };
+    }
+
+    private static Supplier<?> instantiator(MethodHandles.Lookup lookup, Class<?> type) {
+        if (Modifier.isAbstract(type.getModifiers()) || type.isInterface()) {
+            return null;
+        }
+        Constructor<?> constructor;
+        try {
+            constructor = type.getConstructor();
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+        MethodHandle handle;
+        try {
+            constructor.setAccessible(true);
+            handle = lookup.unreflectConstructor(constructor).asType(CONSTRUCTOR_TYPE);
+        } catch (Exception e) {
+            throw new RuntimeException("[Carefree] error to access constructor: " + constructor, e);
+        }
+        return () -> {
+            try {
+                return (Object) handle.invokeExact();
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new RuntimeException("[Carefree] error to instantiate: " + type.getName(), e);
+            }
+        };
+    }
+}
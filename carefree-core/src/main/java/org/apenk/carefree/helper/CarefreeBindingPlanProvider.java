@@ -0,0 +1,39 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree.helper;
+
+/**
+ * <p>
+ *     编译期生成的绑定计划提供者，由 carefree-processor 为标注了 {@link CarefreeBindable} 的类生成，
+ *     并登记在 META-INF/services/org.apenk.carefree.helper.CarefreeBindingPlanProvider 中。
+ * </p>
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public interface CarefreeBindingPlanProvider {
+
+    /**
+     * @return 绑定计划所对应的类
+     */
+    Class<?> getType();
+
+    /**
+     * @return 不使用反射构建的绑定计划
+     */
+    CarefreeBindingPlan getPlan();
+}
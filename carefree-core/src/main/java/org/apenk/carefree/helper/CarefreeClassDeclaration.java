@@ -16,28 +16,59 @@
 
 package org.apenk.carefree.helper;
 
+import org.springframework.beans.factory.BeanFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Executable;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.locks.ReentrantLock;
 
 /**
+ * <p>
+ *     声明一个类的实例化方式，首次实例化时解析类、选定构造方法（或静态工厂方法）与初始化方法，
+ *     并将参数绑定到 {@link MethodHandle} 上编译为构造计划缓存起来，之后的实例化只需调用构造计划，
+ *     因此 prototype 作用域的实例也可以在热点路径上创建。
+ * </p>
+ * <p>
+ *     方法参数按参数个数和类型匹配，基本类型与其包装类型可以互相匹配，
+ *     配置中的数字可以转换为其他数字类型（如 int 转为 long），字符串可以转换为枚举，存在多个同样匹配的方法时抛出异常。
+ * </p>
+ * <p>
+ *     也可以不创建新的实例，而是引用已有的实例：
+ *     bean 引用 Spring 容器中的 bean（className 可选，作为 bean 的类型），生命周期由容器管理，
+ *     须使用 {@link #instance(BeanFactory)} 并传入所在应用上下文的 BeanFactory；
+ *     shared 引用一个命名共享实例，由第一个引用它的声明按 className 等属性创建，
+ *     各声明通过 {@link #release()} 释放引用，最后一个引用释放时调用 destroyMethod，参见 {@link CarefreeSharedInstances}。
+ * </p>
+ *
  * @author Kweny
  * @since 0.0.1
  */
+@CarefreeBindable
 public class CarefreeClassDeclaration {
-    private static final Map<String, Object> INSTANCE_CACHE = new ConcurrentHashMap<>();
-    private static final ReentrantLock INSTANCE_CACHE_LOCK = new ReentrantLock();
+    /**
+     * singleton 作用域的实例，每个类名一个 {@link Singleton}，只有同一个类的首次实例化相互等待
+     */
+    private static final Map<String, Singleton> INSTANCE_CACHE = new ConcurrentHashMap<>();
 
     /**
      * 类全名
      */
     private String className;
     /**
-     * 构造方法参数，若构造方法参数中含有基本类型，则应在声明时使用其包装类型
+     * 构造方法参数，基本类型参数可以使用其包装类型或可以无损转换的数字声明
      */
     private Object[] constructorArgs;
     /**
-     * 初始化方法，若方法参数中含有基本类型，则应在声明时使用其包装类型
+     * 初始化方法，基本类型参数可以使用其包装类型或可以无损转换的数字声明
      */
     private String initializeMethod;
     /**
@@ -45,7 +76,7 @@ public class CarefreeClassDeclaration {
      */
     private Object[] initializeArgs;
     /**
-     * 静态工厂方法，若方法参数中含有基本类型，则应在声明时使用其包装类型
+     * 静态工厂方法，基本类型参数可以使用其包装类型或可以无损转换的数字声明
      */
     private String staticFactoryMethod;
     /**
@@ -58,76 +89,430 @@ public class CarefreeClassDeclaration {
      * prototype：每次调用 CarefreeClassDeclaration.instance() 都会创建一个新的实例。
      */
     private String scope;
+    /**
+     * 引用的 Spring bean 名称，指定时忽略 scope 和 shared
+     */
+    private String bean;
+    /**
+     * 引用的命名共享实例名称，指定时忽略 scope
+     */
+    private String shared;
+    /**
+     * 销毁方法，命名共享实例的最后一个引用释放时，或 declaration 作用域的实例释放时调用，
+     * 未指定时若实例实现了 {@link AutoCloseable} 则调用其 close 方法
+     */
+    private String destroyMethod;
+    /**
+     * 销毁方法参数
+     */
+    private Object[] destroyArgs;
     /**
      * 每个 CarefreeClassDeclaration 独立的实例
      */
-    private Object declarationInstance;
-    private ReentrantLock declarationInstanceLock = new ReentrantLock();
+    private volatile Object declarationInstance;
+    /**
+     * 该声明持有引用的命名共享实例
+     */
+    private volatile Object sharedInstance;
+    /**
+     * 构造计划，首次实例化时创建，修改声明时丢弃
+     */
+    private volatile ConstructionPlan plan;
 
     public <T> T instance() {
-        if (TempCarefreeAide.isBlank(className)) {
-            return null;
-        }
+        return instance(null);
+    }
+
+    /**
+     * 同 {@link #instance()}，声明了 bean 时从 beanFactory 中获取
+     *
+     * @param beanFactory 用于解析 bean 引用，可为 null，此时声明了 bean 将抛出异常
+     */
+    public <T> T instance(BeanFactory beanFactory) {
         Object instance;
-        if (TempCarefreeAide.equalsIgnoreCase(scope, "prototype")) {
+        if (TempCarefreeAide.isNotBlank(bean)) {
+            if (beanFactory == null) {
+                throw new RuntimeException("[Carefree] no spring bean factory to resolve bean: " + bean);
+            }
+            instance = TempCarefreeAide.isNotBlank(className) ? beanFactory.getBean(bean, resolveClass()) : beanFactory.getBean(bean);
+        } else if (TempCarefreeAide.isNotBlank(shared)) {
+            instance = this.sharedInstance;
+            if (instance == null) {
+                synchronized (this) {
+                    instance = this.sharedInstance;
+                    if (instance == null) {
+                        // 每个声明最多持有一个引用，只声明了 shared 时只能引用已创建的实例
+                        this.sharedInstance = instance = CarefreeSharedInstances.getInstance().acquire(shared,
+                                TempCarefreeAide.isNotBlank(className) ? this::newInstance : null, this::destroy);
+                    }
+                }
+            }
+        } else if (TempCarefreeAide.isBlank(className)) {
+            return null;
+        } else if (TempCarefreeAide.equalsIgnoreCase(scope, "prototype")) {
             instance = newInstance();
         } else if (TempCarefreeAide.equalsIgnoreCase(scope, "declaration")) {
-            try {
-                declarationInstanceLock.lock();
-                instance = this.declarationInstance != null ? this.declarationInstance : (this.declarationInstance = newInstance());
-            } finally {
-                declarationInstanceLock.unlock();
+            instance = this.declarationInstance;
+            if (instance == null) {
+                synchronized (this) {
+                    instance = this.declarationInstance;
+                    if (instance == null) {
+                        this.declarationInstance = instance = newInstance();
+                    }
+                }
             }
         } else {
-            try {
-                INSTANCE_CACHE_LOCK.lock();
-                instance = INSTANCE_CACHE.computeIfAbsent(className, k -> newInstance());
-            } finally {
-                INSTANCE_CACHE_LOCK.unlock();
+            // 不在 computeIfAbsent 中实例化，以免实例化过程中再次调用 instance() 时递归修改 INSTANCE_CACHE
+            Singleton singleton = INSTANCE_CACHE.get(className);
+            if (singleton == null) {
+                Singleton created = new Singleton();
+                singleton = INSTANCE_CACHE.putIfAbsent(className, created);
+                if (singleton == null) {
+                    singleton = created;
+                }
             }
+            instance = singleton.get(this);
         }
         @SuppressWarnings("unchecked")
         final T result = (T) instance;
         return result;
     }
 
+    /**
+     * 释放该声明持有的实例：命名共享实例的引用数减一，declaration 作用域的实例直接销毁；
+     * singleton、prototype 作用域的实例及 Spring bean 不受影响。释放后再次调用 {@link #instance()} 将重新获取。
+     */
+    public void release() {
+        Object instance;
+        synchronized (this) {
+            if (this.sharedInstance != null) {
+                this.sharedInstance = null;
+                CarefreeSharedInstances.getInstance().release(shared);
+                return;
+            }
+            instance = this.declarationInstance;
+            this.declarationInstance = null;
+        }
+        if (instance != null) {
+            destroy(instance);
+        }
+    }
+
     private Object newInstance() {
+        return plan().newInstance();
+    }
+
+    private void destroy(Object instance) {
+        plan().destroy(instance);
+    }
+
+    private ConstructionPlan plan() {
+        ConstructionPlan plan = this.plan;
+        if (plan == null) {
+            // 并发的首次实例化可能重复创建构造计划，这是无害的
+            this.plan = plan = ConstructionPlan.compile(this);
+        }
+        return plan;
+    }
+
+    private Class<?> resolveClass() {
         try {
-            Object instance;
+            return Class.forName(className);
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException("[Carefree] class not found: " + className, e);
+        }
+    }
+
+    private static final class Singleton {
+        private volatile Object instance;
 
-            Class<?> clazz = Class.forName(className);
+        Object get(CarefreeClassDeclaration declaration) {
+            Object instance = this.instance;
+            if (instance == null) {
+                synchronized (this) {
+                    instance = this.instance;
+                    if (instance == null) {
+                        this.instance = instance = declaration.newInstance();
+                    }
+                }
+            }
+            return instance;
+        }
+    }
+
+    /**
+     * 已解析的实例化方式，参数均已绑定，creator 的类型为 ()Object，initializer、destroyer 的类型为 (Object)void
+     */
+    private static final class ConstructionPlan {
+        private final String className;
+        private final MethodHandle creator;
+        private final MethodHandle initializer;
+        private final MethodHandle destroyer;
+
+        private ConstructionPlan(String className, MethodHandle creator, MethodHandle initializer, MethodHandle destroyer) {
+            this.className = className;
+            this.creator = creator;
+            this.initializer = initializer;
+            this.destroyer = destroyer;
+        }
+
+        static ConstructionPlan compile(CarefreeClassDeclaration declaration) {
+            String className = declaration.className;
+            try {
+                Class<?> clazz = Class.forName(className);
+                MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+                MethodHandle creator;
+                if (TempCarefreeAide.isNotBlank(declaration.staticFactoryMethod)) {
+                    // 优先使用静态工厂方法进行实例化
+                    Object[] args = declaration.staticFactoryArgs;
+                    Method method = (Method) select(clazz, declaration.staticFactoryMethod, true, args);
+                    creator = bind(lookup.unreflect(method), method.getParameterTypes(), 0, args);
+                } else {
+                    // 若无工厂方法则使用构造方法
+                    Object[] args = declaration.constructorArgs;
+                    Constructor<?> constructor = (Constructor<?>) select(clazz, null, false, args);
+                    creator = bind(lookup.unreflectConstructor(constructor), constructor.getParameterTypes(), 0, args);
+                }
+                creator = creator.asType(MethodType.methodType(Object.class));
+
+                // 实例化后调用初始化方法（若存在）
+                MethodHandle initializer = null;
+                if (TempCarefreeAide.isNotBlank(declaration.initializeMethod)) {
+                    Object[] args = declaration.initializeArgs;
+                    Method method = (Method) select(clazz, declaration.initializeMethod, false, args);
+                    initializer = bind(lookup.unreflect(method), method.getParameterTypes(), 1, args)
+                            .asType(MethodType.methodType(void.class, Object.class));
+                }
+
+                // 销毁方法（若存在）
+                MethodHandle destroyer = null;
+                if (TempCarefreeAide.isNotBlank(declaration.destroyMethod)) {
+                    Object[] args = declaration.destroyArgs;
+                    Method method = (Method) select(clazz, declaration.destroyMethod, false, args);
+                    destroyer = bind(lookup.unreflect(method), method.getParameterTypes(), 1, args)
+                            .asType(MethodType.methodType(void.class, Object.class));
+                }
+
+                return new ConstructionPlan(className, creator, initializer, destroyer);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new RuntimeException("[Carefree] error to compile construction of class: " + className, e);
+            }
+        }
 
-            if (TempCarefreeAide.isNotBlank(staticFactoryMethod)) {
-                // 优先使用静态工厂方法进行实例化
-                Class<?>[] parameterTypes = getParameterTypes(staticFactoryArgs);
-                instance = clazz.getMethod(staticFactoryMethod, parameterTypes).invoke(null, staticFactoryArgs);
+        Object newInstance() {
+            try {
+                Object instance = (Object) creator.invokeExact();
+                if (initializer != null && instance != null) {
+                    initializer.invokeExact(instance);
+                }
+                return instance;
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new RuntimeException("[Carefree] error to instantiate class: " + className, e);
+            }
+        }
+
+        void destroy(Object instance) {
+            try {
+                if (destroyer != null) {
+                    destroyer.invokeExact(instance);
+                } else if (instance instanceof AutoCloseable) {
+                    ((AutoCloseable) instance).close();
+                }
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new RuntimeException("[Carefree] error to destroy instance of class: " + className, e);
+            }
+        }
+
+        /**
+         * 选定参数最匹配的公共构造方法（name 为 null）或方法，忽略编译器生成的桥接方法；
+         * 匹配程度相同的方法中，若一个方法的返回类型或声明类比另一个更具体（如协变重写），则选择更具体的方法
+         */
+        private static Executable select(Class<?> clazz, String name, boolean isStatic, Object[] args) {
+            int argCount = args == null ? 0 : args.length;
+            List<Executable> candidates = new ArrayList<>();
+            if (name == null) {
+                for (Constructor<?> constructor : clazz.getConstructors()) {
+                    candidates.add(constructor);
+                }
             } else {
-                // 若无工厂方法则使用构造方法
-                Class<?>[] parameterTypes = getParameterTypes(constructorArgs);
-                instance = clazz.getConstructor(parameterTypes).newInstance(constructorArgs);
+                for (Method method : clazz.getMethods()) {
+                    if (method.getName().equals(name) && Modifier.isStatic(method.getModifiers()) == isStatic
+                            && !method.isBridge() && !method.isSynthetic()) {
+                        candidates.add(method);
+                    }
+                }
             }
 
-            // 实例化后调用初始化方法（若存在）
-            if (TempCarefreeAide.isNotBlank(initializeMethod) && instance != null) {
-                Class<?>[] parameterTypes = getParameterTypes(initializeArgs);
-                clazz.getMethod(initializeMethod, parameterTypes).invoke(instance, initializeArgs);
+            List<Executable> selected = new ArrayList<>();
+            int selectedCost = Integer.MAX_VALUE;
+            for (Executable candidate : candidates) {
+                if (candidate.getParameterCount() != argCount) {
+                    continue;
+                }
+                int cost = 0;
+                Class<?>[] parameterTypes = candidate.getParameterTypes();
+                for (int i = 0; i < argCount && cost >= 0; i++) {
+                    int argCost = cost(args[i], parameterTypes[i]);
+                    cost = argCost < 0 ? -1 : cost + argCost;
+                }
+                if (cost < 0 || cost > selectedCost) {
+                    continue;
+                }
+                if (cost < selectedCost) {
+                    selected.clear();
+                    selectedCost = cost;
+                }
+                selected.add(candidate);
+            }
+            if (selected.size() > 1) {
+                selected.removeIf(candidate -> selected.stream().anyMatch(other -> moreSpecific(other, candidate)));
             }
 
-            return instance;
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+            String description = (name == null ? "constructor" : "method " + name) + " of class " + clazz.getName() + " with " + argCount + " argument(s)";
+            if (selected.isEmpty()) {
+                throw new RuntimeException("[Carefree] no public " + description + " matches the declared arguments");
+            }
+            if (selected.size() > 1) {
+                throw new RuntimeException("[Carefree] ambiguous " + description + ", declare the arguments with exact types");
+            }
+            return selected.get(0);
         }
-    }
 
-    private Class<?>[] getParameterTypes(Object[] args) {
-        Class<?>[] parameterTypes = null;
-        if (TempCarefreeAide.isNotEmpty(args)) {
-            parameterTypes = new Class[args.length];
+        /**
+         * a 与 b 是否为参数类型相同的方法，且 a 的返回类型或声明类比 b 更具体
+         */
+        private static boolean moreSpecific(Executable a, Executable b) {
+            if (a == b || !(a instanceof Method) || !(b instanceof Method)
+                    || !Arrays.equals(a.getParameterTypes(), b.getParameterTypes())) {
+                return false;
+            }
+            Class<?> returnA = ((Method) a).getReturnType();
+            Class<?> returnB = ((Method) b).getReturnType();
+            if (returnA != returnB) {
+                return returnB.isAssignableFrom(returnA);
+            }
+            return a.getDeclaringClass() != b.getDeclaringClass() && b.getDeclaringClass().isAssignableFrom(a.getDeclaringClass());
+        }
+
+        /**
+         * 将参数转换为参数类型后绑定到 handle 上，position 之前的参数（如初始化方法的调用对象）保持不变
+         */
+        private static MethodHandle bind(MethodHandle handle, Class<?>[] parameterTypes, int position, Object[] args) {
+            if (args == null || args.length == 0) {
+                return handle;
+            }
+            Object[] converted = new Object[args.length];
             for (int i = 0; i < args.length; i++) {
-                parameterTypes[i] = args[i].getClass();
+                converted[i] = convert(args[i], parameterTypes[i]);
+            }
+            return MethodHandles.insertArguments(handle, position, converted);
+        }
+
+        /**
+         * 参数与参数类型的匹配代价，-1 表示不匹配：
+         * 0 类型一致（包括基本类型与其包装类型），1 可赋值或数字放宽转换，2 数字无损收窄转换或字符串转换
+         */
+        private static int cost(Object arg, Class<?> type) {
+            if (arg == null) {
+                return type.isPrimitive() ? -1 : 1;
+            }
+            Class<?> boxed = box(type);
+            if (arg.getClass() == boxed) {
+                return 0;
+            }
+            if (boxed.isInstance(arg)) {
+                return 1;
+            }
+            if (arg instanceof Number && Number.class.isAssignableFrom(boxed)) {
+                Object converted = toNumber((Number) arg, boxed);
+                if (converted == null) {
+                    return -1;
+                }
+                return rank(arg.getClass()) <= rank(boxed) ? 1 : 2;
+            }
+            if (boxed == Character.class && arg instanceof String && ((String) arg).length() == 1) {
+                return 2;
+            }
+            if (boxed.isEnum() && arg instanceof String) {
+                return toEnum((String) arg, boxed) != null ? 2 : -1;
+            }
+            return -1;
+        }
+
+        private static Object convert(Object arg, Class<?> type) {
+            Class<?> boxed = box(type);
+            if (arg == null || boxed.isInstance(arg)) {
+                return arg;
+            }
+            if (arg instanceof Number) {
+                return toNumber((Number) arg, boxed);
+            }
+            if (boxed.isEnum()) {
+                return toEnum((String) arg, boxed);
             }
+            return ((String) arg).charAt(0);
+        }
+
+        private static Object toEnum(String name, Class<?> enumType) {
+            for (Object constant : enumType.getEnumConstants()) {
+                if (((Enum<?>) constant).name().equalsIgnoreCase(name)) {
+                    return constant;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * 将数字转换为 boxed 类型，不能无损转换时返回 null
+         */
+        private static Object toNumber(Number number, Class<?> boxed) {
+            double value = number.doubleValue();
+            boolean integral = !(number instanceof Double || number instanceof Float) || value == Math.rint(value);
+            long longValue = number.longValue();
+            if (boxed == Integer.class) {
+                return integral && longValue == (int) longValue ? (Object) (int) longValue : null;
+            } else if (boxed == Long.class) {
+                return integral ? longValue : null;
+            } else if (boxed == Short.class) {
+                return integral && longValue == (short) longValue ? (Object) (short) longValue : null;
+            } else if (boxed == Byte.class) {
+                return integral && longValue == (byte) longValue ? (Object) (byte) longValue : null;
+            } else if (boxed == Double.class) {
+                return value;
+            } else if (boxed == Float.class) {
+                return (float) value;
+            }
+            return null;
+        }
+
+        private static int rank(Class<?> numberType) {
+            if (numberType == Byte.class) {
+                return 0;
+            } else if (numberType == Short.class) {
+                return 1;
+            } else if (numberType == Integer.class) {
+                return 2;
+            } else if (numberType == Long.class) {
+                return 3;
+            } else if (numberType == Float.class) {
+                return 4;
+            }
+            return 5;
+        }
+
+        private static Class<?> box(Class<?> type) {
+            if (!type.isPrimitive()) {
+                return type;
+            }
+            return MethodType.methodType(type).wrap().returnType();
         }
-        return parameterTypes;
     }
 
     public String getClassName() {
@@ -136,6 +521,7 @@ public class CarefreeClassDeclaration {
 
     public void setClassName(String className) {
         this.className = className;
+        this.plan = null;
     }
 
     public Object[] getConstructorArgs() {
@@ -144,6 +530,7 @@ public class CarefreeClassDeclaration {
 
     public void setConstructorArgs(Object[] constructorArgs) {
         this.constructorArgs = constructorArgs;
+        this.plan = null;
     }
 
     public String getInitializeMethod() {
@@ -152,6 +539,7 @@ public class CarefreeClassDeclaration {
 
     public void setInitializeMethod(String initializeMethod) {
         this.initializeMethod = initializeMethod;
+        this.plan = null;
     }
 
     public Object[] getInitializeArgs() {
@@ -160,6 +548,7 @@ public class CarefreeClassDeclaration {
 
     public void setInitializeArgs(Object[] initializeArgs) {
         this.initializeArgs = initializeArgs;
+        this.plan = null;
     }
 
     public String getStaticFactoryMethod() {
@@ -168,6 +557,7 @@ public class CarefreeClassDeclaration {
 
     public void setStaticFactoryMethod(String staticFactoryMethod) {
         this.staticFactoryMethod = staticFactoryMethod;
+        this.plan = null;
     }
 
     public Object[] getStaticFactoryArgs() {
@@ -176,6 +566,7 @@ public class CarefreeClassDeclaration {
 
     public void setStaticFactoryArgs(Object[] staticFactoryArgs) {
         this.staticFactoryArgs = staticFactoryArgs;
+        this.plan = null;
     }
 
     public String getScope() {
@@ -185,4 +576,38 @@ public class CarefreeClassDeclaration {
     public void setScope(String scope) {
         this.scope = scope;
     }
+
+    public String getBean() {
+        return bean;
+    }
+
+    public void setBean(String bean) {
+        this.bean = bean;
+    }
+
+    public String getShared() {
+        return shared;
+    }
+
+    public void setShared(String shared) {
+        this.shared = shared;
+    }
+
+    public String getDestroyMethod() {
+        return destroyMethod;
+    }
+
+    public void setDestroyMethod(String destroyMethod) {
+        this.destroyMethod = destroyMethod;
+        this.plan = null;
+    }
+
+    public Object[] getDestroyArgs() {
+        return destroyArgs;
+    }
+
+    public void setDestroyArgs(Object[] destroyArgs) {
+        this.destroyArgs = destroyArgs;
+        this.plan = null;
+    }
 }
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree.helper;
+
+import com.typesafe.config.*;
+
+import java.util.*;
+
+/**
+ * <p>
+ *     一份已解析（resolve）配置的前缀树索引，构建时只遍历一次配置树，不展开为完整路径。
+ * </p>
+ * <p>
+ *     root 列表在构建时确定，获取子树、判断路径是否存在只需按路径的各段逐级查找，
+ *     不再像 {@link Config#entrySet()} 那样展开整个配置，也不必为每次查询重复解析完整路径。
+ *     与 {@link Config#hasPath(String)} 一致，值为 null 的路径视为不存在。
+ * </p>
+ * <p>
+ *     实例不可变，可以被多个线程共享。
+ * </p>
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public final class CarefreeConfigIndex {
+
+    public static CarefreeConfigIndex of(Config config) {
+        return new CarefreeConfigIndex(config);
+    }
+
+    private final Config config;
+    private final Node root;
+    private final Set<String> roots;
+
+    private CarefreeConfigIndex(Config config) {
+        this.config = config;
+        this.root = Node.of(config.root());
+
+        Set<String> roots = new TreeSet<>();
+        this.root.children.forEach((key, node) -> {
+            // 与原先展开 entrySet 的结果一致：只有包含非 null 值的配置对象才是 root
+            if (node.children != null && node.hasValue) {
+                roots.add(key);
+            }
+        });
+        this.roots = Collections.unmodifiableSet(new LinkedHashSet<>(roots));
+    }
+
+    public Config getConfig() {
+        return config;
+    }
+
+    /**
+     * @return 所有包含非 null 值的顶层配置对象的 key，按名称排序
+     */
+    public Set<String> roots() {
+        return roots;
+    }
+
+    /**
+     * @param path 配置路径表达式，如 a.b.c
+     */
+    public boolean hasPath(String path) {
+        return node(split(path)) != null;
+    }
+
+    /**
+     * @param path 配置路径表达式，如 a.b.c
+     * @return 路径不存在或值为 null 时返回 null
+     */
+    public ConfigValue getValue(String path) {
+        Node node = node(split(path));
+        return node != null ? node.value : null;
+    }
+
+    /**
+     * @param path 配置路径表达式，如 a.b.c，为空时表示整个配置
+     * @return 路径所指的配置对象，不存在或不是配置对象时返回 null
+     */
+    public ConfigObject getObject(String path) {
+        return TempCarefreeAide.isBlank(path) ? this.config.root() : getObject(split(path));
+    }
+
+    /**
+     * @param keys 路径的各段（不含引号），null 或空字符串的段会被忽略
+     * @return 路径所指的配置对象，不存在或不是配置对象时返回 null
+     */
+    public ConfigObject getObject(String... keys) {
+        Node node = node(keys);
+        return node != null && node.children != null ? (ConfigObject) node.value : null;
+    }
+
+    private Node node(String... keys) {
+        Node node = this.root;
+        for (String key : keys) {
+            if (key == null || key.isEmpty()) {
+                continue;
+            }
+            node = node.children != null ? node.children.get(key) : null;
+            if (node == null) {
+                return null;
+            }
+        }
+        return node;
+    }
+
+    private static String[] split(String path) {
+        // 不含引号的路径直接按 . 拆分，含引号时交给 ConfigUtil 解析
+        if (path.indexOf('"') < 0) {
+            return path.split("\\.", -1);
+        }
+        List<String> keys = ConfigUtil.splitPath(path);
+        return keys.toArray(new String[0]);
+    }
+
+    private static class Node {
+        private final ConfigValue value;
+        /** 配置对象的子节点，不是配置对象时为 null */
+        private final Map<String, Node> children;
+        /** 本节点或其子孙节点中是否存在非 null 的值 */
+        private final boolean hasValue;
+
+        private Node(ConfigValue value, Map<String, Node> children, boolean hasValue) {
+            this.value = value;
+            this.children = children;
+            this.hasValue = hasValue;
+        }
+
+        private static Node of(ConfigValue value) {
+            if (value.valueType() != ConfigValueType.OBJECT) {
+                return new Node(value, null, true);
+            }
+            ConfigObject object = (ConfigObject) value;
+            Map<String, Node> children = new HashMap<>((int) (object.size() / 0.75f) + 1);
+            boolean hasValue = false;
+            // ConfigObject.entrySet() 每次都会复制一个新的集合，keySet() 则不会
+            for (String key : object.keySet()) {
+                ConfigValue childValue = object.get(key);
+                // null 值在 ConfigObject 中仍然存在，但在路径查询中视为不存在
+                if (childValue.valueType() == ConfigValueType.NULL) {
+                    continue;
+                }
+                Node child = of(childValue);
+                children.put(key, child);
+                hasValue |= child.hasValue;
+            }
+            return new Node(value, children, hasValue);
+        }
+    }
+}
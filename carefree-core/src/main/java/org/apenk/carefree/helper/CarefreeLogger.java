@@ -43,6 +43,18 @@ public class CarefreeLogger {
         this.prefix = "[" + name + "] ";
     }
 
+    public boolean isDebugEnabled() {
+        return logger.isDebugEnabled();
+    }
+
+    public void debug(String msg, Object... args) {
+        logger.debug(prefix.concat(msg), args);
+    }
+
+    public void info(String msg, Object... args) {
+        logger.info(prefix.concat(msg), args);
+    }
+
     public void warn(String msg, Object... args) {
         logger.warn(prefix.concat(msg), args);
     }
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree.helper;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * <p>
+ *     为一个配置 key 中的各 root 创建资源（如 redis 的 ConnectionFactory、druid 的 DataSource），
+ *     可以串行执行，也可以在有界线程池中并行执行。
+ * </p>
+ * <p>
+ *     并行执行时各 root 相互隔离，一个 root 失败不会中断其他 root，
+ *     所有 root 完成后若存在失败，则释放已创建的资源并抛出包含所有失败原因的异常。
+ *     无论是否并行，结果都按 roots 的顺序返回，注册顺序与串行执行时一致。
+ * </p>
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public final class CarefreeRootMaterializer {
+
+    private static final CarefreeLogger logger = CarefreeLogger.getLogger("carefree");
+
+    /**
+     * 未指定时的并行线程数，创建连接、连接池主要是网络 I/O，因此不按 CPU 数量确定
+     */
+    public static final int DEFAULT_PARALLELISM = 8;
+
+    @FunctionalInterface
+    public interface Task<T> {
+        T materialize(String root) throws Exception;
+    }
+
+    private CarefreeRootMaterializer() {
+    }
+
+    /**
+     * @param module 模块名，如 redis，用于线程名和异常信息
+     * @param parallelism 并行线程数，不大于 1 时串行执行
+     * @param release 并行执行出现失败时，用于释放其他 root 已创建的资源
+     * @return 与 roots 顺序一致的结果
+     */
+    public static <T> List<T> materialize(String module, String key, Collection<String> roots, int parallelism,
+                                          Task<T> task, Consumer<T> release) throws Exception {
+        if (parallelism <= 1 || roots.size() <= 1) {
+            List<T> results = new ArrayList<>(roots.size());
+            for (String root : roots) {
+                results.add(task.materialize(root));
+            }
+            return results;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, roots.size()), new MaterializerThreadFactory(module));
+        try {
+            Map<String, Future<T>> futures = new LinkedHashMap<>();
+            for (String root : roots) {
+                futures.put(root, executor.submit(() -> task.materialize(root)));
+            }
+
+            List<T> results = new ArrayList<>(roots.size());
+            Map<String, Throwable> failures = new LinkedHashMap<>();
+            futures.forEach((root, future) -> {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    failures.put(root, e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    failures.put(root, e);
+                }
+            });
+
+            if (!failures.isEmpty()) {
+                results.forEach(result -> releaseQuietly(module, release, result));
+                throw aggregate(module, key, roots.size(), failures);
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static <T> void releaseQuietly(String module, Consumer<T> release, T result) {
+        try {
+            release.accept(result);
+        } catch (Exception e) {
+            logger.warn("error to release {} resource after a failed load: {}", module, e.toString());
+        }
+    }
+
+    private static RuntimeException aggregate(String module, String key, int total, Map<String, Throwable> failures) {
+        RuntimeException exception = null;
+        for (Map.Entry<String, Throwable> entry : failures.entrySet()) {
+            RuntimeException failure = new RuntimeException("[Carefree] error to load " + module + " root: " + entry.getKey(), entry.getValue());
+            if (exception == null) {
+                exception = new RuntimeException("[Carefree] error to load " + failures.size() + " of " + total + " "
+                        + module + " root(s) for config key " + key + ": " + failures.keySet(), failure);
+            } else {
+                exception.addSuppressed(failure);
+            }
+        }
+        return exception;
+    }
+
+    private static class MaterializerThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger counter = new AtomicInteger();
+
+        private MaterializerThreadFactory(String module) {
+            this.prefix = "carefree-" + module + "-loader-";
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, this.prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
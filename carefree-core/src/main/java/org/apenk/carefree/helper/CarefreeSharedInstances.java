@@ -0,0 +1,135 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree.helper;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * <p>
+ *     {@link CarefreeClassDeclaration} 所引用的按名称共享、带引用计数的实例。
+ * </p>
+ * <p>
+ *     命名共享实例由第一个引用它的声明创建，此后同名的声明（可以只声明 shared）都得到同一个实例，
+ *     每个声明最多持有一个引用，声明释放后引用减一，最后一个引用释放时调用其销毁方法。
+ *     这样多个 root 可以共用一组 Netty 线程、定时器等资源，而不是各自创建。
+ * </p>
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public final class CarefreeSharedInstances {
+
+    private static final CarefreeLogger logger = CarefreeLogger.getLogger("carefree");
+
+    private static final CarefreeSharedInstances INSTANCE = new CarefreeSharedInstances();
+
+    public static CarefreeSharedInstances getInstance() {
+        return INSTANCE;
+    }
+
+    private final Map<String, Shared> shares;
+
+    private CarefreeSharedInstances() {
+        this.shares = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * 获取一个命名共享实例并使其引用数加一，实例不存在时由 creator 创建
+     *
+     * @param creator 可为 null，表示只引用已有的实例
+     * @param destroyer 最后一个引用释放时调用，可为 null
+     */
+    public Object acquire(String name, Supplier<Object> creator, Consumer<Object> destroyer) {
+        while (true) {
+            Shared shared = this.shares.computeIfAbsent(name, key -> new Shared());
+            synchronized (shared) {
+                if (shared.references < 0) {
+                    // 已被销毁并移除，重新获取
+                    continue;
+                }
+                if (shared.references == 0) {
+                    if (creator == null) {
+                        this.shares.remove(name, shared);
+                        shared.references = -1;
+                        throw new RuntimeException("[Carefree] shared instance is not declared: " + name);
+                    }
+                    // 在锁外创建会使并发的引用方得到不同的实例，因此创建期间同名的引用方等待
+                    shared.instance = creator.get();
+                    shared.destroyer = destroyer;
+                }
+                shared.references++;
+                return shared.instance;
+            }
+        }
+    }
+
+    /**
+     * 释放一个命名共享实例的引用，最后一个引用释放时销毁该实例
+     */
+    public void release(String name) {
+        Shared shared = this.shares.get(name);
+        if (shared == null) {
+            return;
+        }
+        Object instance;
+        Consumer<Object> destroyer;
+        synchronized (shared) {
+            if (shared.references <= 0 || --shared.references > 0) {
+                return;
+            }
+            this.shares.remove(name, shared);
+            shared.references = -1;
+            instance = shared.instance;
+            destroyer = shared.destroyer;
+            shared.instance = null;
+        }
+        if (destroyer != null && instance != null) {
+            try {
+                destroyer.accept(instance);
+            } catch (RuntimeException e) {
+                logger.warn("error to destroy shared instance: {}, {}", name, e.toString());
+            }
+        }
+    }
+
+    /**
+     * 当前各命名共享实例的引用数
+     */
+    public Map<String, Integer> references() {
+        Map<String, Integer> references = new TreeMap<>();
+        this.shares.forEach((name, shared) -> {
+            synchronized (shared) {
+                if (shared.references > 0) {
+                    references.put(name, shared.references);
+                }
+            }
+        });
+        return Collections.unmodifiableMap(references);
+    }
+
+    private static final class Shared {
+        /** 引用数，-1 表示已销毁 */
+        private int references;
+        private Object instance;
+        private Consumer<Object> destroyer;
+    }
+}
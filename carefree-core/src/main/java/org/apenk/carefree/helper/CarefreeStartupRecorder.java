@@ -0,0 +1,238 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree.helper;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ *     记录 carefree 启动过程中各阶段的耗时（墙钟时间）和当前线程的内存分配量，
+ *     每条记录对应一个阶段在某个 key（及 root）上的一次执行，如解析某个 key 的一个配置文件、创建某个 root 的 ConnectionFactory。
+ * </p>
+ * <p>
+ *     启动完成后，若容器中存在 Micrometer 的 MeterRegistry，则记录作为指标发布（carefree.startup.duration、carefree.startup.allocated），
+ *     否则输出一份启动报告，参见 {@code CarefreeStartupReporter}；发布后调用 {@link #stop()} 清空记录并停止记录，
+ *     启动后的操作（如热加载、延迟解析）不再产生记录。
+ *     内存分配量依赖 HotSpot 的 com.sun.management.ThreadMXBean，不支持时为 -1。
+ * </p>
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public class CarefreeStartupRecorder {
+    public static final String PHASE_LOCATE = "locate";
+    public static final String PHASE_PARSE = "parse";
+    public static final String PHASE_MERGE = "merge";
+    public static final String PHASE_BINDING = "binding";
+    public static final String PHASE_LISTENER = "listener";
+    public static final String PHASE_CONNECTION_FACTORY = "connection-factory";
+    public static final String PHASE_DATASOURCE = "datasource";
+
+    /** 最多保留的记录数，超出时丢弃最早的 */
+    private static final int MAX_RECORDS = 4096;
+
+    private static final CarefreeStartupRecorder INSTANCE = new CarefreeStartupRecorder();
+
+    public static CarefreeStartupRecorder getInstance() {
+        return INSTANCE;
+    }
+
+    private final Queue<Record> records;
+    private final AtomicInteger recordCount;
+    private final com.sun.management.ThreadMXBean allocationBean;
+    /** 停止后返回的空步骤，结束时不产生记录 */
+    private final Step stoppedStep;
+    private volatile boolean stopped;
+
+    private CarefreeStartupRecorder() {
+        this.records = new ConcurrentLinkedQueue<>();
+        this.recordCount = new AtomicInteger();
+        this.allocationBean = resolveAllocationBean();
+        this.stoppedStep = new Step(null, null, null, -1, 0);
+    }
+
+    private static com.sun.management.ThreadMXBean resolveAllocationBean() {
+        try {
+            ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+            if (threadBean instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+                if (allocationBean.isThreadAllocatedMemorySupported() && allocationBean.isThreadAllocatedMemoryEnabled()) {
+                    return allocationBean;
+                }
+            }
+        } catch (Throwable e) {
+            // 非 HotSpot 虚拟机，不记录内存分配量
+        }
+        return null;
+    }
+
+    /**
+     * 开始一个阶段，须在同一线程中调用 {@link Step#end()} 结束
+     *
+     * @param phase 阶段名，见 PHASE_XXX 常量
+     * @param key 配置 key，可为 null
+     * @param root 配置 root，可为 null
+     */
+    public Step start(String phase, String key, String root) {
+        if (this.stopped) {
+            return this.stoppedStep;
+        }
+        return new Step(phase, key, root, allocatedBytes(), System.nanoTime());
+    }
+
+    public <T> T call(String phase, String key, String root, Callable<T> callable) throws Exception {
+        Step step = start(phase, key, root);
+        try {
+            return callable.call();
+        } finally {
+            step.end();
+        }
+    }
+
+    public void run(String phase, String key, String root, Action action) throws Exception {
+        Step step = start(phase, key, root);
+        try {
+            action.run();
+        } finally {
+            step.end();
+        }
+    }
+
+    /**
+     * 获取目前为止的所有记录
+     */
+    public List<Record> getRecords() {
+        return new ArrayList<>(this.records);
+    }
+
+    /**
+     * 清空所有记录并停止记录，之后 {@link #start(String, String, String)} 返回的步骤不再产生记录
+     */
+    public void stop() {
+        this.stopped = true;
+        this.records.clear();
+        this.recordCount.set(0);
+    }
+
+    private long allocatedBytes() {
+        return this.allocationBean != null ? this.allocationBean.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1;
+    }
+
+    private void add(Record record) {
+        if (this.stopped) {
+            return;
+        }
+        this.records.add(record);
+        if (this.recordCount.incrementAndGet() > MAX_RECORDS && this.records.poll() != null) {
+            this.recordCount.decrementAndGet();
+        }
+    }
+
+    @FunctionalInterface
+    public interface Action {
+        void run() throws Exception;
+    }
+
+    public class Step {
+        private final String phase;
+        private final String key;
+        private final String root;
+        private final long startAllocatedBytes;
+        private final long startTime;
+
+        private Step(String phase, String key, String root, long startAllocatedBytes, long startTime) {
+            this.phase = phase;
+            this.key = key;
+            this.root = root;
+            this.startAllocatedBytes = startAllocatedBytes;
+            this.startTime = startTime;
+        }
+
+        public void end() {
+            if (this.phase == null) {
+                return;
+            }
+            long durationNanos = System.nanoTime() - this.startTime;
+            long allocatedBytes = this.startAllocatedBytes < 0 ? -1 : allocatedBytes() - this.startAllocatedBytes;
+            add(new Record(this.phase, this.key, this.root, Thread.currentThread().getName(), durationNanos, allocatedBytes));
+        }
+    }
+
+    public static class Record {
+        private final String phase;
+        private final String key;
+        private final String root;
+        private final String thread;
+        private final long durationNanos;
+        private final long allocatedBytes;
+
+        private Record(String phase, String key, String root, String thread, long durationNanos, long allocatedBytes) {
+            this.phase = phase;
+            this.key = key;
+            this.root = root;
+            this.thread = thread;
+            this.durationNanos = durationNanos;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        public String getPhase() {
+            return phase;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public String getRoot() {
+            return root;
+        }
+
+        public String getThread() {
+            return thread;
+        }
+
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+        /**
+         * 该阶段在当前线程中分配的内存字节数，不支持时为 -1
+         */
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        @Override
+        public String toString() {
+            return "Record{" +
+                    "phase='" + phase + '\'' +
+                    ", key='" + key + '\'' +
+                    ", root='" + root + '\'' +
+                    ", thread='" + thread + '\'' +
+                    ", durationNanos=" + durationNanos +
+                    ", allocatedBytes=" + allocatedBytes +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree.helper;
+
+import com.typesafe.config.*;
+
+import java.lang.reflect.*;
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * <p>
+ *     将一个配置值转换为属性类型的转换器，每个属性按其泛型类型构建一次并缓存在绑定计划中。
+ * </p>
+ * <p>
+ *     值的类型与属性类型一致时直接使用 {@link ConfigValue#unwrapped()}，
+ *     否则交给 {@link Config} 的 getXxx 方法，以保持其类型转换规则（如 "10" 转为 int、"10s" 转为 Duration）。
+ *     支持的类型：
+ *     <ul>
+ *         <li>String、基本类型及其包装类型、{@link Duration}、{@link ConfigMemorySize}、{@link CarefreeClassDeclaration}；</li>
+ *         <li>int[]、long[]、double[] 等基本类型数组，直接写入数组，不经过装箱的集合；</li>
+ *         <li>元素为以上类型的数组、List、Set、Collection，以及 Map&lt;String, T&gt;，可以嵌套；</li>
+ *         <li>Object[]、未指定元素类型的 List、Map 与原先一样使用 unwrapped 的值。</li>
+ *     </ul>
+ * </p>
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+@FunctionalInterface
+interface CarefreeValueConverter {
+
+    /**
+     * @param key 配置值在其所在配置对象中的 key，用于调用 {@link Config} 的 getXxx 方法和异常信息
+     */
+    Object convert(ConfigValue value, String key);
+
+    static CarefreeValueConverter of(Type type) {
+        Class<?> rawType = rawType(type);
+
+        if (rawType == CarefreeClassDeclaration.class) {
+            return CarefreeValueConverter::toClassDeclaration;
+        } else if (rawType == String.class) {
+            return (value, key) -> value.valueType() == ConfigValueType.STRING ? value.unwrapped() : holder(value, key).getString(path(key));
+        } else if (rawType == Byte.class || rawType == byte.class) {
+            return (value, key) -> toNumber(value, key).byteValue();
+        } else if (rawType == Short.class || rawType == short.class) {
+            return (value, key) -> toNumber(value, key).shortValue();
+        } else if (rawType == Integer.class || rawType == int.class) {
+            return CarefreeValueConverter::toInt;
+        } else if (rawType == Long.class || rawType == long.class) {
+            return CarefreeValueConverter::toLong;
+        } else if (rawType == Float.class || rawType == float.class) {
+            return (value, key) -> toNumber(value, key).floatValue();
+        } else if (rawType == Double.class || rawType == double.class) {
+            return CarefreeValueConverter::toDouble;
+        } else if (rawType == Boolean.class || rawType == boolean.class) {
+            return (value, key) -> value.valueType() == ConfigValueType.BOOLEAN ? value.unwrapped() : holder(value, key).getBoolean(path(key));
+        } else if (rawType == Character.class || rawType == char.class) {
+            return (value, key) -> (value.valueType() == ConfigValueType.STRING ? (String) value.unwrapped() : holder(value, key).getString(path(key))).charAt(0);
+        } else if (rawType == Duration.class) {
+            return (value, key) -> holder(value, key).getDuration(path(key));
+        } else if (rawType == ConfigMemorySize.class) {
+            return (value, key) -> holder(value, key).getMemorySize(path(key));
+        } else if (rawType.isArray()) {
+            return ofArray(type, rawType.getComponentType());
+        } else if (Collection.class.isAssignableFrom(rawType)) {
+            return ofCollection(type, rawType);
+        } else if (Map.class.isAssignableFrom(rawType)) {
+            return ofMap(type, rawType);
+        }
+        return (value, key) -> value.unwrapped();
+    }
+
+    // ---------- 数组、集合 ----------
+
+    static CarefreeValueConverter ofArray(Type type, Class<?> componentType) {
+        if (componentType == int.class) {
+            return (value, key) -> {
+                List<? extends ConfigValue> list = toList(value, key);
+                int[] array = new int[list.size()];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = (Integer) toInt(list.get(i), key);
+                }
+                return array;
+            };
+        } else if (componentType == long.class) {
+            return (value, key) -> {
+                List<? extends ConfigValue> list = toList(value, key);
+                long[] array = new long[list.size()];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = (Long) toLong(list.get(i), key);
+                }
+                return array;
+            };
+        } else if (componentType == double.class) {
+            return (value, key) -> {
+                List<? extends ConfigValue> list = toList(value, key);
+                double[] array = new double[list.size()];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = (Double) toDouble(list.get(i), key);
+                }
+                return array;
+            };
+        } else if (componentType == Object.class) {
+            // 与原先一致：元素为 unwrapped 的值
+            return (value, key) -> toList(value, key).stream().map(element -> element == null ? null : element.unwrapped()).toArray();
+        }
+
+        // 其他基本类型数组（byte[]、boolean[] 等）及对象数组逐个元素转换
+        Type componentGenericType = type instanceof GenericArrayType ? ((GenericArrayType) type).getGenericComponentType() : componentType;
+        CarefreeValueConverter elementConverter = of(componentGenericType);
+        return (value, key) -> {
+            List<? extends ConfigValue> list = toList(value, key);
+            Object array = Array.newInstance(componentType, list.size());
+            for (int i = 0; i < list.size(); i++) {
+                Array.set(array, i, convertElement(elementConverter, list.get(i), key));
+            }
+            return array;
+        };
+    }
+
+    static CarefreeValueConverter ofCollection(Type type, Class<?> rawType) {
+        boolean set = Set.class.isAssignableFrom(rawType);
+        if (!rawType.isAssignableFrom(ArrayList.class) && !rawType.isAssignableFrom(LinkedHashSet.class) && !rawType.isAssignableFrom(TreeSet.class)) {
+            // 无法确定实现类的集合类型，与原先一致
+            return (value, key) -> value.unwrapped();
+        }
+
+        Type elementType = typeArgument(type, 0);
+        if (elementType == Object.class) {
+            // 未指定元素类型，List 与原先一致，Set 使用保持顺序的 LinkedHashSet
+            return set
+                    ? (value, key) -> newCollection(rawType, toUnwrappedList(value, key))
+                    : (value, key) -> value.valueType() == ConfigValueType.LIST ? value.unwrapped() : toUnwrappedList(value, key);
+        }
+
+        CarefreeValueConverter elementConverter = of(elementType);
+        return (value, key) -> {
+            List<? extends ConfigValue> list = toList(value, key);
+            List<Object> elements = new ArrayList<>(list.size());
+            for (ConfigValue element : list) {
+                elements.add(convertElement(elementConverter, element, key));
+            }
+            return rawType.isAssignableFrom(ArrayList.class) ? elements : newCollection(rawType, elements);
+        };
+    }
+
+    static CarefreeValueConverter ofMap(Type type, Class<?> rawType) {
+        Type keyType = typeArgument(type, 0);
+        Type valueType = typeArgument(type, 1);
+        if (!rawType.isAssignableFrom(LinkedHashMap.class) || (keyType != String.class && keyType != Object.class) || valueType == Object.class) {
+            // 与原先一致
+            return (value, key) -> value.unwrapped();
+        }
+
+        CarefreeValueConverter valueConverter = of(valueType);
+        return (value, key) -> {
+            ConfigObject object = value.valueType() == ConfigValueType.OBJECT ? (ConfigObject) value : holder(value, key).getObject(path(key));
+            Map<String, Object> map = new LinkedHashMap<>((int) (object.size() / 0.75f) + 1);
+            for (String entryKey : object.keySet()) {
+                map.put(entryKey, convertElement(valueConverter, object.get(entryKey), entryKey));
+            }
+            return map;
+        };
+    }
+
+    static Object convertElement(CarefreeValueConverter converter, ConfigValue element, String key) {
+        return element == null || element.valueType() == ConfigValueType.NULL ? null : converter.convert(element, key);
+    }
+
+    static Collection<Object> newCollection(Class<?> rawType, List<?> elements) {
+        if (rawType.isAssignableFrom(LinkedHashSet.class)) {
+            return new LinkedHashSet<>(elements);
+        } else if (rawType.isAssignableFrom(TreeSet.class)) {
+            return new TreeSet<>(elements);
+        }
+        return new ArrayList<>(elements);
+    }
+
+    /**
+     * 列表值直接使用，其他值（如 properties 文件中以数字为 key 的对象）交给 {@link Config#getList(String)} 转换
+     */
+    static List<? extends ConfigValue> toList(ConfigValue value, String key) {
+        return value.valueType() == ConfigValueType.LIST ? (ConfigList) value : holder(value, key).getList(path(key));
+    }
+
+    static List<Object> toUnwrappedList(ConfigValue value, String key) {
+        List<? extends ConfigValue> list = toList(value, key);
+        List<Object> unwrapped = new ArrayList<>(list.size());
+        for (ConfigValue element : list) {
+            unwrapped.add(element == null ? null : element.unwrapped());
+        }
+        return unwrapped;
+    }
+
+    // ---------- 单个值 ----------
+
+    static Object toClassDeclaration(ConfigValue value, String key) {
+        if (value.valueType() == ConfigValueType.STRING) {
+            CarefreeClassDeclaration declaration = new CarefreeClassDeclaration();
+            declaration.setClassName((String) value.unwrapped());
+            return declaration;
+        } else if (value.valueType() == ConfigValueType.OBJECT) {
+            return CarefreeAssistance.fromResolution(CarefreeClassDeclaration.class,
+                    CarefreeAssistance.resolve(CarefreeClassDeclaration.class, (ConfigObject) value, null));
+        }
+        // 抛出与 getConfig 一致的类型错误
+        holder(value, key).getConfig(path(key));
+        return null;
+    }
+
+    static Object toInt(ConfigValue value, String key) {
+        Object unwrapped = value.unwrapped();
+        return unwrapped instanceof Integer ? unwrapped : holder(value, key).getInt(path(key));
+    }
+
+    static Object toLong(ConfigValue value, String key) {
+        Object unwrapped = value.unwrapped();
+        return unwrapped instanceof Integer || unwrapped instanceof Long ? ((Number) unwrapped).longValue() : holder(value, key).getLong(path(key));
+    }
+
+    static Object toDouble(ConfigValue value, String key) {
+        return value.valueType() == ConfigValueType.NUMBER ? ((Number) value.unwrapped()).doubleValue() : holder(value, key).getDouble(path(key));
+    }
+
+    static Number toNumber(ConfigValue value, String key) {
+        return value.valueType() == ConfigValueType.NUMBER ? (Number) value.unwrapped() : holder(value, key).getNumber(path(key));
+    }
+
+    /**
+     * 将单个值放入一个只含该值的 {@link Config} 中，以使用 getXxx 方法的类型转换
+     */
+    static Config holder(ConfigValue value, String key) {
+        return value.atKey(key);
+    }
+
+    static String path(String key) {
+        return ConfigUtil.joinPath(key);
+    }
+
+    // ---------- 泛型 ----------
+
+    static Class<?> rawType(Type type) {
+        if (type instanceof Class) {
+            return (Class<?>) type;
+        } else if (type instanceof ParameterizedType) {
+            return rawType(((ParameterizedType) type).getRawType());
+        } else if (type instanceof GenericArrayType) {
+            return Array.newInstance(rawType(((GenericArrayType) type).getGenericComponentType()), 0).getClass();
+        } else if (type instanceof WildcardType) {
+            return rawType(((WildcardType) type).getUpperBounds()[0]);
+        } else if (type instanceof TypeVariable) {
+            Type[] bounds = ((TypeVariable<?>) type).getBounds();
+            return bounds.length > 0 ? rawType(bounds[0]) : Object.class;
+        }
+        return Object.class;
+    }
+
+    /**
+     * @return 第 index 个类型参数，未指定时返回 Object.class
+     */
+    static Type typeArgument(Type type, int index) {
+        if (type instanceof ParameterizedType) {
+            Type[] arguments = ((ParameterizedType) type).getActualTypeArguments();
+            if (index < arguments.length) {
+                Type argument = arguments[index];
+                if (argument instanceof WildcardType || argument instanceof TypeVariable) {
+                    return rawType(argument);
+                }
+                return argument;
+            }
+        }
+        return Object.class;
+    }
+}
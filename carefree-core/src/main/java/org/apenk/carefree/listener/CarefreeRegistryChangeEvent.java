@@ -0,0 +1,98 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree.listener;
+
+import com.typesafe.config.Config;
+
+import java.util.Set;
+
+/**
+ * 监听器接口 {@link CarefreeRegistryListener} 的事件对象。
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public class CarefreeRegistryChangeEvent {
+    private String key;
+    /** 订阅的属性路径，订阅整个 key 时为 null */
+    private String path;
+
+    private long previousVersion;
+    private long version;
+
+    private Config previousConfig;
+    private Config config;
+
+    /** 新增、删除、修改过的属性路径（仅包含订阅路径范围内的） */
+    private Set<String> changedPaths;
+
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public long getPreviousVersion() {
+        return previousVersion;
+    }
+
+    public void setPreviousVersion(long previousVersion) {
+        this.previousVersion = previousVersion;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public Config getPreviousConfig() {
+        return previousConfig;
+    }
+
+    public void setPreviousConfig(Config previousConfig) {
+        this.previousConfig = previousConfig;
+    }
+
+    public Config getConfig() {
+        return config;
+    }
+
+    public void setConfig(Config config) {
+        this.config = config;
+    }
+
+    public Set<String> getChangedPaths() {
+        return changedPaths;
+    }
+
+    public void setChangedPaths(Set<String> changedPaths) {
+        this.changedPaths = changedPaths;
+    }
+}
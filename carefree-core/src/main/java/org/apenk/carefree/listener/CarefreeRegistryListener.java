@@ -0,0 +1,33 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree.listener;
+
+import org.apenk.carefree.CarefreeRegistry;
+
+/**
+ * {@link CarefreeRegistry} 配置变更的监听器，
+ * 通过 {@link CarefreeRegistry#subscribe(String, CarefreeRegistryListener)} 订阅，
+ * 在新版本快照发布后于注册线程（并发写入时可能是另一个注册线程）中回调，
+ * 同一个 registry 的事件不会并发回调，并且按版本顺序送达。
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+@FunctionalInterface
+public interface CarefreeRegistryListener extends CarefreeListener {
+    void changed(CarefreeRegistryChangeEvent event);
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * 测试 {@link CarefreeConfigSnapshot} 的写入、读取，以及损坏或其他版本的快照文件被视为空快照
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public class CarefreeConfigSnapshotTest {
+
+    private static final List<String> STAMPS = Collections.singletonList("file [carefree.conf]@1:10");
+
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempFile("carefree-snapshot", ".bin");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void roundTrip() {
+        Config config = ConfigFactory.parseString("name = carefree, port = 6379, ratio = 0.5, tags = [a, b], nested { on = true, off = null }");
+        CarefreeConfigSnapshot snapshot = new CarefreeConfigSnapshot();
+        snapshot.put("key0", STAMPS, Collections.singletonMap(CarefreeConfigLayer.FILE, config));
+        snapshot.write(file);
+
+        CarefreeConfigSnapshot read = CarefreeConfigSnapshot.read(file);
+        assertEquals(1, read.size());
+        Map<CarefreeConfigLayer, Config> layers = read.get("key0", STAMPS);
+        assertNotNull(layers);
+        assertEquals(config.root().unwrapped(), layers.get(CarefreeConfigLayer.FILE).root().unwrapped());
+        assertNull(read.get("key0", Collections.singletonList("file [carefree.conf]@2:10")));
+    }
+
+    @Test
+    public void oversizedLength() throws IOException {
+        // 声明的 key 长度远超文件剩余内容，不应按其分配内存
+        write(ByteBuffer.allocate(16).putInt(0x43465331).putInt(2).putInt(1).putInt(0x7ffffff0));
+        assertEquals(0, CarefreeConfigSnapshot.read(file).size());
+
+        write(ByteBuffer.allocate(12).putInt(0x43465331).putInt(2).putInt(-1));
+        assertEquals(0, CarefreeConfigSnapshot.read(file).size());
+    }
+
+    @Test
+    public void otherFormatVersion() throws IOException {
+        write(ByteBuffer.allocate(12).putInt(0x43465331).putInt(1).putInt(0));
+        assertEquals(0, CarefreeConfigSnapshot.read(file).size());
+    }
+
+    @Test
+    public void truncatedFile() throws IOException {
+        CarefreeConfigSnapshot snapshot = new CarefreeConfigSnapshot();
+        snapshot.put("key0", STAMPS, Collections.singletonMap(CarefreeConfigLayer.FILE, ConfigFactory.parseString("tags = [a, b, c]")));
+        snapshot.write(file);
+        byte[] bytes = Files.readAllBytes(file);
+
+        for (int length = 0; length < bytes.length; length++) {
+            Files.write(file, Arrays.copyOf(bytes, length));
+            assertEquals("length " + length, 0, CarefreeConfigSnapshot.read(file).size());
+        }
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        Files.write(file, buffer.array());
+    }
+}
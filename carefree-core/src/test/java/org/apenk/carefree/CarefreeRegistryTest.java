@@ -0,0 +1,106 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree;
+
+import com.typesafe.config.ConfigFactory;
+import org.apenk.carefree.listener.CarefreeRegistryChangeEvent;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * 测试 {@link CarefreeRegistry} 的变更事件按版本顺序送达
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public class CarefreeRegistryTest {
+
+    @Test
+    public void concurrentWritersDeliverInVersionOrder() throws InterruptedException {
+        CarefreeRegistry registry = new CarefreeRegistry();
+        List<CarefreeRegistryChangeEvent> events = new CopyOnWriteArrayList<>();
+        AtomicInteger concurrent = new AtomicInteger();
+        AtomicInteger maxConcurrent = new AtomicInteger();
+        registry.subscribe("key0", event -> {
+            maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+            events.add(event);
+            Thread.yield();
+            concurrent.decrementAndGet();
+        });
+
+        int threads = 4;
+        int writes = 500;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int writer = t;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < writes; i++) {
+                    registry.register("key0", CarefreeConfigLayer.FILE, ConfigFactory.parseString("value = " + (writer * writes + i)));
+                }
+            });
+            thread.start();
+            writers.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : writers) {
+            thread.join();
+        }
+
+        assertEquals(threads * writes, events.size());
+        assertEquals(1, maxConcurrent.get());
+        for (int i = 0; i < events.size(); i++) {
+            CarefreeRegistryChangeEvent event = events.get(i);
+            assertEquals(i + 1, event.getVersion());
+            assertEquals(i, event.getPreviousVersion());
+            if (i > 0) {
+                assertSame(events.get(i - 1).getConfig(), event.getPreviousConfig());
+            }
+        }
+        assertSame(registry.get("key0"), events.get(events.size() - 1).getConfig());
+    }
+
+    @Test
+    public void writeInListenerIsDeliveredAfterCurrentEvent() {
+        CarefreeRegistry registry = new CarefreeRegistry();
+        List<String> calls = new ArrayList<>();
+        registry.subscribe("key0", event -> {
+            calls.add("first:" + event.getVersion());
+            if (event.getVersion() == 1) {
+                registry.register("key0", ConfigFactory.parseString("value = 2"));
+            }
+        });
+        registry.subscribe("key0", event -> calls.add("second:" + event.getVersion()));
+
+        registry.register("key0", ConfigFactory.parseString("value = 1"));
+
+        assertEquals(2, registry.getVersion());
+        assertEquals("[first:1, second:1, first:2, second:2]", calls.toString());
+    }
+}
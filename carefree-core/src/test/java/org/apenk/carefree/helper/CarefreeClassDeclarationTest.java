@@ -0,0 +1,106 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree.helper;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * 测试 {@link CarefreeClassDeclaration} 选定构造方法与初始化方法
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public class CarefreeClassDeclarationTest {
+
+    @Test
+    public void bridgeMethodIsIgnored() {
+        // StringBuilder.append(String) 另有返回 AbstractStringBuilder 的桥接方法
+        CarefreeClassDeclaration declaration = prototype(StringBuilder.class.getName());
+        declaration.setConstructorArgs(new Object[]{"carefree"});
+        declaration.setInitializeMethod("append");
+        declaration.setInitializeArgs(new Object[]{"-declaration"});
+
+        assertEquals("carefree-declaration", declaration.instance().toString());
+    }
+
+    @Test
+    public void covariantOverride() {
+        CarefreeClassDeclaration declaration = prototype(Derived.class.getName());
+        declaration.setInitializeMethod("name");
+        declaration.setInitializeArgs(new Object[]{"carefree"});
+
+        Derived instance = declaration.instance();
+        assertEquals("derived:carefree", instance.name);
+    }
+
+    @Test
+    public void argumentConversion() {
+        CarefreeClassDeclaration declaration = prototype(Integer.class.getName());
+        declaration.setStaticFactoryMethod("valueOf");
+        declaration.setStaticFactoryArgs(new Object[]{"6379"});
+
+        assertEquals(Integer.valueOf(6379), declaration.instance());
+    }
+
+    @Test
+    public void ambiguousMethod() {
+        CarefreeClassDeclaration declaration = prototype(Ambiguous.class.getName());
+        declaration.setInitializeMethod("name");
+        declaration.setInitializeArgs(new Object[]{"carefree"});
+
+        try {
+            declaration.instance();
+            fail("ambiguous method should be rejected");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("[Carefree] ambiguous method name"));
+        }
+    }
+
+    private static CarefreeClassDeclaration prototype(String className) {
+        CarefreeClassDeclaration declaration = new CarefreeClassDeclaration();
+        declaration.setClassName(className);
+        declaration.setScope("prototype");
+        return declaration;
+    }
+
+    public static class Base {
+        String name;
+
+        public Base name(String name) {
+            this.name = "base:" + name;
+            return this;
+        }
+    }
+
+    public static class Derived extends Base {
+        @Override
+        public Derived name(String name) {
+            this.name = "derived:" + name;
+            return this;
+        }
+    }
+
+    public static class Ambiguous {
+        public void name(CharSequence name) {
+        }
+
+        public void name(Comparable<String> name) {
+        }
+    }
+}
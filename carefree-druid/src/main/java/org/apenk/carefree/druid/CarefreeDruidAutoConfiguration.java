@@ -16,10 +16,11 @@
 
 package org.apenk.carefree.druid;
 
-import com.typesafe.config.Config;
 import org.apenk.carefree.CarefreeOrdered;
 import org.apenk.carefree.CarefreeRegistry;
+import org.apenk.carefree.helper.CarefreeConfigIndex;
 import org.apenk.carefree.helper.CarefreeLogger;
+import org.apenk.carefree.helper.CarefreeRootMaterializer;
 import org.apenk.carefree.helper.TempCarefreeAide;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.beans.BeansException;
@@ -48,6 +49,8 @@ import java.util.Arrays;
 public class CarefreeDruidAutoConfiguration implements ApplicationContextAware, EnvironmentAware, BeanDefinitionRegistryPostProcessor, Ordered {
     public static final String PropertyName_enabled = "carefree.druid.enabled";
     public static final String PropertyName_Config = "carefree.druid.config-key";
+    public static final String PropertyName_Parallel = "carefree.druid.parallel";
+    public static final String PropertyName_Parallelism = "carefree.druid.parallelism";
 
     public static final CarefreeLogger logger = CarefreeLogger.getLogger("carefree.druid");
 
@@ -85,15 +88,16 @@ public class CarefreeDruidAutoConfiguration implements ApplicationContextAware,
 
         CarefreeRegistry carefreeRegistry = applicationContext.getBean(CarefreeRegistry.BEAN_NAME, CarefreeRegistry.class);
 
+        int parallelism = resolveParallelism();
         String[] keys = configKey.split(",");
         Arrays.stream(keys).filter(TempCarefreeAide::isNotBlank).forEach(key -> {
-            Config config = carefreeRegistry.get(key);
-            if (config == null) {
+            CarefreeConfigIndex index = carefreeRegistry.getIndex(key);
+            if (index == null) {
                 logger.warn("[Carefree] no druid config for key: {}", key);
                 return; // means continue
             }
             try {
-                CarefreeDruidLathe.getInstance().load(key, config);
+                CarefreeDruidLathe.getInstance().load(key, index, parallelism, applicationContext);
             } catch (Exception e) {
                 throw new RuntimeException("[Carefree] error to load the druid config for key: " + key, e);
             }
@@ -108,6 +112,17 @@ public class CarefreeDruidAutoConfiguration implements ApplicationContextAware,
         CarefreeDruidLathe.getInstance().payloads().clear();
     }
 
+    /**
+     * 各 root 并行加载时的线程数，未开启并行加载时返回 1
+     */
+    private int resolveParallelism() {
+        if (!this.environment.getProperty(PropertyName_Parallel, Boolean.class, false)) {
+            return 1;
+        }
+        Integer parallelism = this.environment.getProperty(PropertyName_Parallelism, Integer.class);
+        return parallelism != null && parallelism > 0 ? parallelism : CarefreeRootMaterializer.DEFAULT_PARALLELISM;
+    }
+
     public boolean isDruidEnabled() {
         return this.environment.getProperty(PropertyName_enabled, Boolean.class, false);
     }
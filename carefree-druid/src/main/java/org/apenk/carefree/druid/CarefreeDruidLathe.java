@@ -18,18 +18,20 @@ package org.apenk.carefree.druid;
 
 import com.alibaba.druid.filter.Filter;
 import com.alibaba.druid.pool.DruidDataSource;
-import com.typesafe.config.Config;
+import org.apenk.carefree.archetype.CarefreeArchetypeFactory;
 import org.apenk.carefree.druid.archetype.CarefreeDruidArchetype;
 import org.apenk.carefree.druid.listener.CarefreeDruidConfigureListener;
-import org.apenk.carefree.helper.CarefreeAssistance;
 import org.apenk.carefree.helper.CarefreeClassDeclaration;
+import org.apenk.carefree.helper.CarefreeConfigIndex;
+import org.apenk.carefree.helper.CarefreeRootMaterializer;
+import org.apenk.carefree.helper.CarefreeStartupRecorder;
 import org.apenk.carefree.helper.TempCarefreeAide;
+import org.springframework.beans.factory.BeanFactory;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author Kweny
@@ -46,46 +48,63 @@ public class CarefreeDruidLathe {
     private final Map<String, CarefreeDruidPayload> payloads;
 
     private CarefreeDruidLathe() {
-        this.payloads = new ConcurrentHashMap<>();
+        // 按加载顺序保存，使注册顺序是确定的
+        this.payloads = new LinkedHashMap<>();
     }
 
-    void load(String key, Config config) throws Exception {
-        Set<String> roots = CarefreeAssistance.getConfigRoots(config);
+    /**
+     * 加载一个配置 key 中的所有 root，parallelism 大于 1 时各 root 并行创建，
+     * 此时监听器可能在多个线程中被同时调用（每个 root 仍然只在一个线程中处理）
+     *
+     * @param beanFactory 所在应用上下文，用于解析声明中引用的 bean
+     */
+    void load(String key, CarefreeConfigIndex index, int parallelism, BeanFactory beanFactory) throws Exception {
+        CarefreeArchetypeFactory archetypeFactory = new CarefreeArchetypeFactory(index);
+        List<CarefreeDruidPayload> loaded = CarefreeRootMaterializer.materialize("druid", key, index.roots(), parallelism,
+                root -> load(key, root, archetypeFactory, beanFactory), this::release);
+
+        // 缓存 payload
+        loaded.forEach(payload -> this.payloads.put(payload.root, payload));
+    }
 
-        for (String root : roots) {
-            CarefreeDruidPayload payload = new CarefreeDruidPayload();
-            payload.key = key;
-            payload.root = root;
+    private CarefreeDruidPayload load(String key, String root, CarefreeArchetypeFactory archetypeFactory, BeanFactory beanFactory) throws Exception {
+        CarefreeStartupRecorder recorder = CarefreeStartupRecorder.getInstance();
+        CarefreeDruidPayload payload = new CarefreeDruidPayload();
+        payload.key = key;
+        payload.root = root;
 
-            String referenceRoot = null;
-            String referencePath;
-            if (config.hasPath(referencePath = root.concat(".reference"))) {
-                referenceRoot = config.getString(referencePath);
-            }
+        // 解析加载配置数据
+        CarefreeStartupRecorder.Step bindingStep = recorder.start(CarefreeStartupRecorder.PHASE_BINDING, key, root);
+        payload.druidArchetype = archetypeFactory.create(CarefreeDruidArchetype.class, root);
+        bindingStep.end();
 
-            // 解析加载配置数据
-            payload.druidArchetype = CarefreeAssistance.fromConfig(CarefreeDruidArchetype.class, config, root, referenceRoot);
+        // 创建配置数据中指定的监听器
+        CarefreeClassDeclaration declaration = payload.druidArchetype.getConfigureListener();
+        CarefreeDruidConfigureListener listener = declaration == null ? null : declaration.instance(beanFactory);
+
+        if (listener != null) {
+            recorder.run(CarefreeStartupRecorder.PHASE_LISTENER, key, root, () -> listener.archetype(payload.toConfigureEvent()));
+        }
 
-            // 创建配置数据中指定的监听器
-            CarefreeClassDeclaration declaration = payload.druidArchetype.getConfigureListener();
-            CarefreeDruidConfigureListener listener = declaration == null ? null : declaration.instance();
+        if (TempCarefreeAide.isNotFalse(payload.druidArchetype.getEnabled())) {
+            // 如果该配置启用
+            // 创建 DataSource 对象
+            payload.dataSource = recorder.call(CarefreeStartupRecorder.PHASE_DATASOURCE, key, root, () -> createDataSource(payload.druidArchetype));
 
             if (listener != null) {
-                listener.archetype(payload.toConfigureEvent());
+                recorder.run(CarefreeStartupRecorder.PHASE_LISTENER, key, root, () -> listener.dataSource(payload.toConfigureEvent()));
             }
+        }
 
-            if (TempCarefreeAide.isNotFalse(payload.druidArchetype.getEnabled())) {
-                // 如果该配置启用
-                // 创建 DataSource 对象
-                payload.dataSource = createDataSource(payload.druidArchetype);
-
-                if (listener != null) {
-                    listener.dataSource(payload.toConfigureEvent());
-                }
-            }
+        return payload;
+    }
 
-            // 缓存 payload
-            this.payloads.put(payload.root, payload);
+    /**
+     * 释放加载失败时其他 root 已创建的资源
+     */
+    private void release(CarefreeDruidPayload payload) {
+        if (payload.dataSource != null) {
+            payload.dataSource.close();
         }
     }
 
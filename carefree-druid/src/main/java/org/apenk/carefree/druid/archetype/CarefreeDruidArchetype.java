@@ -17,6 +17,7 @@
 package org.apenk.carefree.druid.archetype;
 
 import org.apenk.carefree.archetype.CarefreeArchetype;
+import org.apenk.carefree.helper.CarefreeBindable;
 
 import java.util.List;
 
@@ -26,6 +27,7 @@ import java.util.List;
  * @author Kweny
  * @since 0.0.1
  */
+@CarefreeBindable
 public class CarefreeDruidArchetype extends CarefreeArchetype {
     /**
      * 配置这个属性的意义在于，
@@ -0,0 +1,320 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree.processor;
+
+import javax.annotation.processing.*;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.*;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * <p>
+ *     为标注了 org.apenk.carefree.helper.CarefreeBindable 的类生成 CarefreeBindingPlanProvider 实现，
+ *     生成的绑定计划通过构造方法引用和 lambda 直接调用 setter、getter，运行时不需要反射。
+ * </p>
+ * <p>
+ *     属性规则与 CarefreeBindingPlan 的反射实现一致（包括从父类继承的 public 方法），
+ *     所有生成的类在最后一轮统一登记到 META-INF/services 中。
+ * </p>
+ * <p>
+ *     处理器只依赖 javax.lang.model，通过类名引用 carefree-core 中的类型，
+ *     因此 carefree-core 自身也可以使用它。
+ * </p>
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+@SupportedAnnotationTypes(CarefreeBindingProcessor.BINDABLE)
+public class CarefreeBindingProcessor extends AbstractProcessor {
+
+    static final String BINDABLE = "org.apenk.carefree.helper.CarefreeBindable";
+    private static final String PLAN = "org.apenk.carefree.helper.CarefreeBindingPlan";
+    private static final String PROVIDER = "org.apenk.carefree.helper.CarefreeBindingPlanProvider";
+    private static final String SERVICE_FILE = "META-INF/services/" + PROVIDER;
+    private static final String BINDER_SUFFIX = "_CarefreeBinder";
+
+    private Elements elements;
+    private Types types;
+    private Messager messager;
+    private Filer filer;
+
+    private final Set<String> providers = new TreeSet<>();
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        this.elements = processingEnv.getElementUtils();
+        this.types = processingEnv.getTypeUtils();
+        this.messager = processingEnv.getMessager();
+        this.filer = processingEnv.getFiler();
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            writeServiceFile();
+            return false;
+        }
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() != ElementKind.CLASS) {
+                    this.messager.printMessage(Diagnostic.Kind.ERROR, "@CarefreeBindable can only be used on classes", element);
+                    continue;
+                }
+                TypeElement type = (TypeElement) element;
+                if (type.getModifiers().contains(Modifier.PRIVATE)) {
+                    this.messager.printMessage(Diagnostic.Kind.ERROR, "@CarefreeBindable can not be used on private classes", element);
+                    continue;
+                }
+                try {
+                    this.providers.add(generate(type));
+                } catch (IOException e) {
+                    this.messager.printMessage(Diagnostic.Kind.ERROR, "error to generate binding plan: " + e, element);
+                }
+            }
+        }
+        return false;
+    }
+
+    private String generate(TypeElement type) throws IOException {
+        String packageName = this.elements.getPackageOf(type).getQualifiedName().toString();
+        String binaryName = this.elements.getBinaryName(type).toString();
+        String simpleName = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1)).replace('$', '_') + BINDER_SUFFIX;
+        String qualifiedName = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+        String typeName = this.types.erasure(type.asType()).toString();
+
+        StringBuilder source = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("// 由 carefree-processor 根据 ").append(typeName).append(" 生成，请勿修改\n");
+        source.append("public final class ").append(simpleName).append(" implements ").append(PROVIDER).append(" {\n\n");
+        source.append("    @Override\n");
+        source.append("    public Class<?> getType() {\n");
+        source.append("        return ").append(typeName).append(".class;\n");
+        source.append("    }\n\n");
+        List<Property> properties = collectProperties(type);
+        source.append("    @Override\n");
+        if (properties.stream().anyMatch(property -> isParameterized(property.genericType))) {
+            // 参数化类型的属性按原始类型转换后传给 setter
+            source.append("    @SuppressWarnings(\"unchecked\")\n");
+        }
+        source.append("    public ").append(PLAN).append(" getPlan() {\n");
+        source.append("        return ").append(PLAN).append(".builder(").append(typeName).append(".class)\n");
+        if (isInstantiable(type)) {
+            source.append("                .instantiator(").append(typeName).append("::new)\n");
+        }
+        for (Property property : properties) {
+            String propertyType = typeName(property.type);
+            source.append("                .property(\"").append(property.name).append("\", ")
+                    .append(propertyType).append(".class, ")
+                    .append(genericType(property.genericType)).append(",\n");
+            source.append("                        (bean, value) -> ((").append(typeName).append(") bean).")
+                    .append(property.setter.getSimpleName()).append("((").append(boxedTypeName(property.type)).append(") value),\n");
+            if (property.getter != null) {
+                source.append("                        bean -> ((").append(typeName).append(") bean).")
+                        .append(property.getter.getSimpleName()).append("())\n");
+            } else {
+                source.append("                        null)\n");
+            }
+        }
+        source.append("                .build();\n");
+        source.append("    }\n");
+        source.append("}\n");
+
+        JavaFileObject file = this.filer.createSourceFile(qualifiedName, type);
+        try (Writer writer = file.openWriter()) {
+            writer.write(source.toString());
+        }
+        return qualifiedName;
+    }
+
+    private void writeServiceFile() {
+        if (this.providers.isEmpty()) {
+            return;
+        }
+        try {
+            FileObject file = this.filer.createResource(StandardLocation.CLASS_OUTPUT, "", SERVICE_FILE);
+            try (Writer writer = file.openWriter()) {
+                for (String provider : this.providers) {
+                    writer.write(provider);
+                    writer.write('\n');
+                }
+            }
+        } catch (IOException e) {
+            this.messager.printMessage(Diagnostic.Kind.ERROR, "error to write " + SERVICE_FILE + ": " + e);
+        }
+    }
+
+    private boolean isInstantiable(TypeElement type) {
+        if (type.getModifiers().contains(Modifier.ABSTRACT)) {
+            return false;
+        }
+        // 非静态内部类没有无参构造方法
+        if (type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(Modifier.STATIC)) {
+            return false;
+        }
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty() && constructor.getModifiers().contains(Modifier.PUBLIC)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // ---------- 属性，规则与 CarefreeBindingPlan.reflect 一致 ----------
+
+    private List<Property> collectProperties(TypeElement type) {
+        Map<String, ExecutableElement> getters = new HashMap<>();
+        Map<String, List<ExecutableElement>> setters = new TreeMap<>();
+        for (ExecutableElement method : ElementFilter.methodsIn(this.elements.getAllMembers(type))) {
+            Set<Modifier> modifiers = method.getModifiers();
+            if (!modifiers.contains(Modifier.PUBLIC) || modifiers.contains(Modifier.STATIC)
+                    || ((TypeElement) method.getEnclosingElement()).getQualifiedName().contentEquals("java.lang.Object")) {
+                continue;
+            }
+            String methodName = method.getSimpleName().toString();
+            int parameterCount = method.getParameters().size();
+            TypeKind returnKind = method.getReturnType().getKind();
+            if (parameterCount == 1 && methodName.length() > 3 && methodName.startsWith("set") && returnKind == TypeKind.VOID) {
+                setters.computeIfAbsent(decapitalize(methodName.substring(3)), k -> new ArrayList<>()).add(method);
+            } else if (parameterCount == 0 && methodName.length() > 3 && methodName.startsWith("get") && returnKind != TypeKind.VOID) {
+                getters.putIfAbsent(decapitalize(methodName.substring(3)), method);
+            } else if (parameterCount == 0 && methodName.length() > 2 && methodName.startsWith("is") && returnKind == TypeKind.BOOLEAN) {
+                getters.put(decapitalize(methodName.substring(2)), method);
+            }
+        }
+
+        List<Property> properties = new ArrayList<>(setters.size());
+        setters.forEach((name, candidates) -> {
+            ExecutableElement getter = getters.get(name);
+            ExecutableElement setter = chooseSetter(candidates, getter);
+            TypeMirror parameterType = setter.getParameters().get(0).asType();
+            if (getter != null && !this.types.isSameType(this.types.erasure(getter.getReturnType()), this.types.erasure(parameterType))) {
+                getter = null;
+            }
+            properties.add(new Property(name, this.types.erasure(parameterType), parameterType, setter, getter));
+        });
+        return properties;
+    }
+
+    private ExecutableElement chooseSetter(List<ExecutableElement> candidates, ExecutableElement getter) {
+        if (candidates.size() > 1) {
+            if (getter != null) {
+                TypeMirror getterType = this.types.erasure(getter.getReturnType());
+                for (ExecutableElement candidate : candidates) {
+                    if (this.types.isSameType(this.types.erasure(candidate.getParameters().get(0).asType()), getterType)) {
+                        return candidate;
+                    }
+                }
+            }
+            candidates.sort(Comparator.comparing(candidate -> typeName(this.types.erasure(candidate.getParameters().get(0).asType()))));
+        }
+        return candidates.get(0);
+    }
+
+    // ---------- 类型名 ----------
+
+    private String typeName(TypeMirror type) {
+        return this.types.erasure(type).toString();
+    }
+
+    private static boolean isParameterized(TypeMirror type) {
+        return type.getKind() == TypeKind.DECLARED && !((DeclaredType) type).getTypeArguments().isEmpty();
+    }
+
+    private String boxedTypeName(TypeMirror type) {
+        if (type.getKind().isPrimitive()) {
+            return this.types.boxedClass((PrimitiveType) type).getQualifiedName().toString();
+        }
+        return typeName(type);
+    }
+
+    /**
+     * 参数化类型的实参都是具体类型时生成 CarefreeBindingPlan.parameterizedType(...)，
+     * 含类型变量或通配符时退化为原始类型
+     */
+    private String genericType(TypeMirror type) {
+        if (type.getKind() == TypeKind.DECLARED) {
+            List<? extends TypeMirror> arguments = ((DeclaredType) type).getTypeArguments();
+            if (!arguments.isEmpty() && isConcrete(type)) {
+                StringJoiner joiner = new StringJoiner(", ", PLAN + ".parameterizedType(" + typeName(type) + ".class, ", ")");
+                for (TypeMirror argument : arguments) {
+                    joiner.add(genericType(argument));
+                }
+                return joiner.toString();
+            }
+        }
+        return typeName(type) + ".class";
+    }
+
+    private boolean isConcrete(TypeMirror type) {
+        switch (type.getKind()) {
+            case DECLARED:
+                for (TypeMirror argument : ((DeclaredType) type).getTypeArguments()) {
+                    if (!isConcrete(argument)) {
+                        return false;
+                    }
+                }
+                return true;
+            case ARRAY:
+                return ((ArrayType) type).getComponentType().getKind() != TypeKind.TYPEVAR;
+            default:
+                return type.getKind().isPrimitive();
+        }
+    }
+
+    private static String decapitalize(String name) {
+        if (name.length() > 1 && Character.isUpperCase(name.charAt(1)) && Character.isUpperCase(name.charAt(0))) {
+            return name;
+        }
+        char[] chars = name.toCharArray();
+        chars[0] = Character.toLowerCase(chars[0]);
+        return new String(chars);
+    }
+
+    private static class Property {
+        private final String name;
+        private final TypeMirror type;
+        private final TypeMirror genericType;
+        private final ExecutableElement setter;
+        private final ExecutableElement getter;
+
+        private Property(String name, TypeMirror type, TypeMirror genericType, ExecutableElement setter, ExecutableElement getter) {
+            this.name = name;
+            this.type = type;
+            this.genericType = genericType;
+            this.setter = setter;
+            this.getter = getter;
+        }
+    }
+}
@@ -16,15 +16,17 @@
 
 package org.apenk.carefree.redis;
 
-import com.typesafe.config.Config;
 import org.apenk.carefree.CarefreeOrdered;
 import org.apenk.carefree.CarefreeRegistry;
+import org.apenk.carefree.helper.CarefreeConfigIndex;
 import org.apenk.carefree.helper.CarefreeLogger;
+import org.apenk.carefree.helper.CarefreeRootMaterializer;
 import org.apenk.carefree.helper.TempCarefreeAide;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.beans.factory.BeanFactory;
 import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
 import org.springframework.beans.factory.support.BeanDefinitionRegistry;
 import org.springframework.beans.factory.support.BeanDefinitionRegistryPostProcessor;
@@ -50,6 +52,8 @@ import java.util.Arrays;
 public class CarefreeRedisAutoConfiguration implements ApplicationContextAware, EnvironmentAware, BeanDefinitionRegistryPostProcessor, Ordered {
     public static final String PropertyName_enabled = "carefree.redis.enabled";
     public static final String PropertyName_Config = "carefree.redis.config-key";
+    public static final String PropertyName_Parallel = "carefree.redis.parallel";
+    public static final String PropertyName_Parallelism = "carefree.redis.parallelism";
 
     public static final CarefreeLogger logger = CarefreeLogger.getLogger("carefree.redis");
 
@@ -58,8 +62,8 @@ public class CarefreeRedisAutoConfiguration implements ApplicationContextAware,
 
     @Bean(CarefreeRedisRegistry.BEAN_NAME)
     @ConditionalOnProperty(name = PropertyName_enabled)
-    public CarefreeRedisRegistry carefreeRedisRegistry(@Nullable ResourceLoader resourceLoader) {
-        return new CarefreeRedisRegistry(resourceLoader);
+    public CarefreeRedisRegistry carefreeRedisRegistry(@Nullable ResourceLoader resourceLoader, BeanFactory beanFactory) {
+        return new CarefreeRedisRegistry(resourceLoader, beanFactory);
     }
 
     @Override
@@ -86,17 +90,18 @@ public class CarefreeRedisAutoConfiguration implements ApplicationContextAware,
 
         CarefreeRegistry carefreeRegistry = applicationContext.getBean(CarefreeRegistry.BEAN_NAME, CarefreeRegistry.class);
 
+        int parallelism = resolveParallelism();
         String[] keys = configKey.split(",");
         Arrays.stream(keys).filter(TempCarefreeAide::isNotBlank).forEach(key -> {
-            Config config = carefreeRegistry.get(key);
-            if (config == null) {
+            CarefreeConfigIndex index = carefreeRegistry.getIndex(key);
+            if (index == null) {
                 logger.warn("no redis config for key: {}", key);
                 return; // means continue
             }
 
             try {
                 // 加载配置并创建 ConnectionFactory、Serializer 等 Redis 相关资源
-                CarefreeRedisLathe.getInstance().load(key, config);
+                CarefreeRedisLathe.getInstance().load(key, index, parallelism, applicationContext);
             } catch (Exception e) {
                 throw new BeanCreationException("[Carefree] error to create the redis connection factory instance for config key: " + key, e);
             }
@@ -116,6 +121,17 @@ public class CarefreeRedisAutoConfiguration implements ApplicationContextAware,
         // do nothing
     }
 
+    /**
+     * 各 root 并行加载时的线程数，未开启并行加载时返回 1
+     */
+    private int resolveParallelism() {
+        if (!this.environment.getProperty(PropertyName_Parallel, Boolean.class, false)) {
+            return 1;
+        }
+        Integer parallelism = this.environment.getProperty(PropertyName_Parallelism, Integer.class);
+        return parallelism != null && parallelism > 0 ? parallelism : CarefreeRootMaterializer.DEFAULT_PARALLELISM;
+    }
+
     public boolean isRedisEnabled() {
         return this.environment.getProperty(PropertyName_enabled, Boolean.class, false);
     }
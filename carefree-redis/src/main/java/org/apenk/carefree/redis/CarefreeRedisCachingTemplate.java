@@ -0,0 +1,137 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree.redis;
+
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.time.Duration;
+
+/**
+ * <p>
+ *     带本地缓存的 Redis 模板，由 {@link CarefreeRedisRegistry#newCachingTemplate(String)} 创建，
+ *     只缓存字符串类型的读取（GET），命中时不访问 Redis。
+ * </p>
+ * <p>
+ *     其他 Redis 客户端对缓存 key 的修改通过失效跟踪连接通知本地缓存；经由本模板的写入在写入后立即失效本地条目。
+ *     其他数据类型及缓存未涉及的命令可通过 {@link #getTemplate()} 获取的模板执行，其修改同样会通过失效跟踪通知。
+ * </p>
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public class CarefreeRedisCachingTemplate<K, V> {
+
+    private final RedisTemplate<K, V> template;
+    private final CarefreeRedisNearCache nearCache;
+
+    CarefreeRedisCachingTemplate(RedisTemplate<K, V> template, CarefreeRedisNearCache nearCache) {
+        this.template = template;
+        this.nearCache = nearCache;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(K key) {
+        byte[] rawKey = rawKey(key);
+        String cacheKey = CarefreeRedisNearCache.keyOf(rawKey);
+        Object cached = nearCache.get(cacheKey);
+        if (cached != CarefreeRedisNearCache.MISS) {
+            return (V) cached;
+        }
+
+        long token = nearCache.begin(cacheKey);
+        byte[] rawValue = template.execute((RedisCallback<byte[]>) connection -> connection.get(rawKey));
+        V value = deserializeValue(rawValue);
+        nearCache.put(cacheKey, token, value, rawKey.length + (rawValue != null ? rawValue.length : 0));
+        return value;
+    }
+
+    public void set(K key, V value) {
+        byte[] rawKey = rawKey(key);
+        byte[] rawValue = rawValue(value);
+        try {
+            template.execute((RedisCallback<Boolean>) connection -> connection.set(rawKey, rawValue));
+        } finally {
+            nearCache.invalidate(CarefreeRedisNearCache.keyOf(rawKey));
+        }
+    }
+
+    public void set(K key, V value, Duration timeout) {
+        byte[] rawKey = rawKey(key);
+        byte[] rawValue = rawValue(value);
+        try {
+            template.execute((RedisCallback<Boolean>) connection -> connection.set(rawKey, rawValue,
+                    Expiration.from(timeout), RedisStringCommands.SetOption.upsert()));
+        } finally {
+            nearCache.invalidate(CarefreeRedisNearCache.keyOf(rawKey));
+        }
+    }
+
+    public Boolean delete(K key) {
+        byte[] rawKey = rawKey(key);
+        try {
+            Long count = template.execute((RedisCallback<Long>) connection -> connection.del(rawKey));
+            return count != null ? count > 0 : null;
+        } finally {
+            nearCache.invalidate(CarefreeRedisNearCache.keyOf(rawKey));
+        }
+    }
+
+    /**
+     * 获取底层的 Redis 模板，执行的命令不经过本地缓存
+     */
+    public RedisTemplate<K, V> getTemplate() {
+        return template;
+    }
+
+    public CarefreeRedisNearCache getNearCache() {
+        return nearCache;
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] rawKey(K key) {
+        RedisSerializer<K> serializer = (RedisSerializer<K>) template.getKeySerializer();
+        if (serializer == null && key instanceof byte[]) {
+            return (byte[]) key;
+        }
+        if (serializer == null) {
+            throw new IllegalArgumentException("[Carefree] no key serializer for non byte[] key: " + key);
+        }
+        return serializer.serialize(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] rawValue(V value) {
+        RedisSerializer<V> serializer = (RedisSerializer<V>) template.getValueSerializer();
+        if (serializer == null && value instanceof byte[]) {
+            return (byte[]) value;
+        }
+        if (serializer == null) {
+            throw new IllegalArgumentException("[Carefree] no value serializer for non byte[] value: " + value);
+        }
+        return serializer.serialize(value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private V deserializeValue(byte[] rawValue) {
+        RedisSerializer<V> serializer = (RedisSerializer<V>) template.getValueSerializer();
+        return serializer == null ? (V) rawValue : serializer.deserialize(rawValue);
+    }
+}
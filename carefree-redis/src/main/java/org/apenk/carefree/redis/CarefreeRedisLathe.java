@@ -16,17 +16,20 @@
 
 package org.apenk.carefree.redis;
 
-import com.typesafe.config.Config;
-import org.apenk.carefree.helper.CarefreeAssistance;
+import org.apenk.carefree.archetype.CarefreeArchetypeFactory;
 import org.apenk.carefree.helper.CarefreeClassDeclaration;
+import org.apenk.carefree.helper.CarefreeConfigIndex;
+import org.apenk.carefree.helper.CarefreeRootMaterializer;
+import org.apenk.carefree.helper.CarefreeStartupRecorder;
 import org.apenk.carefree.helper.TempCarefreeAide;
 import org.apenk.carefree.redis.archetype.*;
 import org.apenk.carefree.redis.listener.CarefreeRedisConfigureListener;
+import org.springframework.beans.factory.BeanFactory;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author Kweny
@@ -43,76 +46,88 @@ class CarefreeRedisLathe implements CarefreeRedisLatheClientConfiguration, Caref
     private final Map<String, CarefreeRedisPayload> payloads;
 
     private CarefreeRedisLathe() {
-        this.payloads = new ConcurrentHashMap<>();
+        // 按加载顺序保存，使注册顺序是确定的
+        this.payloads = new LinkedHashMap<>();
     }
 
-    void load(String key, Config config) throws Exception {
-        Set<String> roots = CarefreeAssistance.getConfigRoots(config);
-
-        for (String root : roots) {
-            CarefreeRedisPayload payload = new CarefreeRedisPayload();
-            payload.key = key;
-            payload.root = root;
-
-            String referenceRoot = null;
-            String referencePath;
-            if (config.hasPath(referencePath = root.concat(".reference"))) {
-                referenceRoot = config.getString(referencePath);
-            }
-
-            String poolPath = String.join(".", root, "pool");
-            String resourcesPath = String.join(".", root, "resources");
-            String optionsPath = String.join(".", root, "options");
-            String serializerPath = String.join(".", root, "serializer");
-
-            String refPoolPath = null;
-            String refResourcesPath = null;
-            String refOptionsPath = null;
-            String refSerializerPath = null;
-            if (TempCarefreeAide.isNotBlank(referenceRoot)) {
-                refPoolPath = String.join(".", referenceRoot, "pool");
-                refResourcesPath = String.join(".", referenceRoot, "resources");
-                refOptionsPath = String.join(".", referenceRoot, "options");
-                refSerializerPath = String.join(".", referenceRoot, "serializer");
-            }
-
-            // 解析加载配置数据
-            payload.redisArchetype = CarefreeAssistance.fromConfig(CarefreeRedisArchetype.class, config, root, referenceRoot);
-            payload.poolArchetype = CarefreeAssistance.fromConfig(CarefreeRedisArchetypePool.class, config, poolPath, refPoolPath);
-            payload.resourcesArchetype = CarefreeAssistance.fromConfig(CarefreeRedisArchetypeResources.class, config, resourcesPath, refResourcesPath);
-            payload.optionsArchetype = CarefreeAssistance.fromConfig(CarefreeRedisArchetypeOptions.class, config, optionsPath, refOptionsPath);
-            payload.serializerArchetype = CarefreeAssistance.fromConfig(CarefreeRedisArchetypeSerializer.class, config, serializerPath, refSerializerPath);
+    /**
+     * 加载一个配置 key 中的所有 root，parallelism 大于 1 时各 root 并行创建，
+     * 此时监听器可能在多个线程中被同时调用（每个 root 仍然只在一个线程中处理）
+     *
+     * @param beanFactory 所在应用上下文，用于解析声明中引用的 bean
+     */
+    void load(String key, CarefreeConfigIndex index, int parallelism, BeanFactory beanFactory) throws Exception {
+        CarefreeArchetypeFactory archetypeFactory = new CarefreeArchetypeFactory(index);
+        List<CarefreeRedisPayload> loaded = CarefreeRootMaterializer.materialize("redis", key, index.roots(), parallelism,
+                root -> load(key, root, archetypeFactory, beanFactory), this::release);
+
+        // 缓存 payload
+        loaded.forEach(payload -> this.payloads.put(payload.root, payload));
+    }
 
-            // 创建配置数据中指定的监听器
-            CarefreeClassDeclaration declaration = payload.redisArchetype.getConfigureListener();
-            CarefreeRedisConfigureListener listener = declaration == null ? null : declaration.instance();
+    private CarefreeRedisPayload load(String key, String root, CarefreeArchetypeFactory archetypeFactory, BeanFactory beanFactory) throws Exception {
+        CarefreeStartupRecorder recorder = CarefreeStartupRecorder.getInstance();
+        CarefreeRedisPayload payload = new CarefreeRedisPayload();
+        payload.key = key;
+        payload.root = root;
+        payload.beanFactory = beanFactory;
+
+        // 解析加载配置数据
+        CarefreeStartupRecorder.Step bindingStep = recorder.start(CarefreeStartupRecorder.PHASE_BINDING, key, root);
+        payload.redisArchetype = archetypeFactory.create(CarefreeRedisArchetype.class, root);
+        payload.poolArchetype = archetypeFactory.create(CarefreeRedisArchetypePool.class, root, "pool");
+        payload.resourcesArchetype = archetypeFactory.create(CarefreeRedisArchetypeResources.class, root, "resources");
+        payload.optionsArchetype = archetypeFactory.create(CarefreeRedisArchetypeOptions.class, root, "options");
+        payload.serializerArchetype = archetypeFactory.create(CarefreeRedisArchetypeSerializer.class, root, "serializer");
+        payload.nearCacheArchetype = archetypeFactory.create(CarefreeRedisArchetypeNearCache.class, root, "near-cache");
+        payload.pipelineArchetype = archetypeFactory.create(CarefreeRedisArchetypePipeline.class, root, "pipeline");
+        bindingStep.end();
+
+        // 创建配置数据中指定的监听器
+        CarefreeClassDeclaration declaration = payload.redisArchetype.getConfigureListener();
+        CarefreeRedisConfigureListener listener = declaration == null ? null : declaration.instance(beanFactory);
+
+        if (listener != null) {
+            recorder.run(CarefreeStartupRecorder.PHASE_LISTENER, key, root, () -> listener.archetype(payload.toConfigureEvent()));
+        }
 
-            if (listener != null) {
-                listener.archetype(payload.toConfigureEvent());
-            }
+        if (TempCarefreeAide.isNotFalse(payload.redisArchetype.getEnabled())) {
+            // 如果该配置启用
+            try {
+                // 加入 ClientResources 分组，与资源配置相同或同名分组的 root 共用一个 ClientResources
+                payload.resourcesGroup = CarefreeRedisResourcesGroups.getInstance().acquire(root, payload.resourcesArchetype,
+                        resourcesArchetype -> createClientResources(resourcesArchetype, beanFactory));
 
-            if (TempCarefreeAide.isNotFalse(payload.redisArchetype.getEnabled())) {
-                // 如果该配置启用
                 // 创建 ClientConfiguration 和 RedisConfiguration 对象
                 payload.clientConfiguration = createClientConfiguration(payload);
                 payload.redisConfiguration = createRedisConfiguration(payload);
 
                 if (listener != null) {
-                    listener.configuration(payload.toConfigureEvent());
+                    recorder.run(CarefreeStartupRecorder.PHASE_LISTENER, key, root, () -> listener.configuration(payload.toConfigureEvent()));
                 }
 
                 // 创建 ConnectionFactory 对象
                 payload.connectionFactory = new LettuceConnectionFactory(payload.redisConfiguration, payload.clientConfiguration);
-                payload.connectionFactory.afterPropertiesSet();
+                recorder.run(CarefreeStartupRecorder.PHASE_CONNECTION_FACTORY, key, root, payload.connectionFactory::afterPropertiesSet);
 
                 if (listener != null) {
-                    listener.factory(payload.toConfigureEvent());
+                    recorder.run(CarefreeStartupRecorder.PHASE_LISTENER, key, root, () -> listener.factory(payload.toConfigureEvent()));
                 }
+            } catch (Exception e) {
+                // 释放该 root 已创建的资源
+                release(payload);
+                throw e;
             }
-
-            // 缓存 payload
-            this.payloads.put(payload.root, payload);
         }
+
+        return payload;
+    }
+
+    /**
+     * 释放加载失败时其他 root 已创建的资源
+     */
+    private void release(CarefreeRedisPayload payload) {
+        payload.release();
     }
 
     Map<String, CarefreeRedisPayload> payloads() {
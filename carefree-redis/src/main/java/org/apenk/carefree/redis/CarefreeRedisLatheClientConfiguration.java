@@ -27,6 +27,7 @@ import org.apenk.carefree.redis.archetype.CarefreeRedisArchetype;
 import org.apenk.carefree.redis.archetype.CarefreeRedisArchetypeOptions;
 import org.apenk.carefree.redis.archetype.CarefreeRedisArchetypePool;
 import org.apenk.carefree.redis.archetype.CarefreeRedisArchetypeResources;
+import org.springframework.beans.factory.BeanFactory;
 import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
 import org.springframework.data.redis.connection.lettuce.LettucePoolingClientConfiguration;
 
@@ -71,12 +72,12 @@ interface CarefreeRedisLatheClientConfiguration {
             builder.readFrom(ReadFrom.valueOf(payload.redisArchetype.getReadFrom()));
         }
 
-        ClientResources clientResources = createClientResources(payload.resourcesArchetype);
-        if (clientResources != null) {
-            builder.clientResources(clientResources);
+        if (payload.resourcesGroup != null) {
+            // 与同一分组的其他 root 共用 ClientResources
+            builder.clientResources(payload.resourcesGroup.getClientResources());
         }
 
-        ClientOptions clientOptions = createClientOptions(payload.redisArchetype, payload.optionsArchetype);
+        ClientOptions clientOptions = createClientOptions(payload.redisArchetype, payload.optionsArchetype, payload.beanFactory);
         ClusterClientOptions clusterClientOptions = createClusterClientOptions(clientOptions, payload.optionsArchetype);
         if (clusterClientOptions != null) {
             builder.clientOptions(clusterClientOptions);
@@ -165,67 +166,57 @@ interface CarefreeRedisLatheClientConfiguration {
         return poolConfig;
     }
 
-    default ClientResources createClientResources(CarefreeRedisArchetypeResources resourcesArchetype) {
-        boolean configured = false;
+    /**
+     * 按资源配置创建 ClientResources，未配置的选项使用 Lettuce 的默认值，
+     * 创建的 ClientResources 由 {@link CarefreeRedisResourcesGroup} 在多个 root 之间共享
+     */
+    default ClientResources createClientResources(CarefreeRedisArchetypeResources resourcesArchetype, BeanFactory beanFactory) {
         ClientResources.Builder builder = ClientResources.builder();
 
         if (TempCarefreeAide.isNotNull(resourcesArchetype.getIoThreadPoolSize())) {
-            configured = true;
             builder.ioThreadPoolSize(resourcesArchetype.getIoThreadPoolSize());
         }
         if (TempCarefreeAide.isNotNull(resourcesArchetype.getComputationThreadPoolSize())) {
-            configured = true;
             builder.computationThreadPoolSize(resourcesArchetype.getComputationThreadPoolSize());
         }
         if (TempCarefreeAide.isNotNull(resourcesArchetype.getEventLoopGroupProvider())) {
-            configured = true;
-            builder.eventLoopGroupProvider(resourcesArchetype.getEventLoopGroupProvider().instance());
+            builder.eventLoopGroupProvider(resourcesArchetype.getEventLoopGroupProvider().instance(beanFactory));
         }
         if (TempCarefreeAide.isNotNull(resourcesArchetype.getEventExecutorGroup())) {
-            configured = true;
-            builder.eventExecutorGroup(resourcesArchetype.getEventExecutorGroup().instance());
+            builder.eventExecutorGroup(resourcesArchetype.getEventExecutorGroup().instance(beanFactory));
         }
         if (TempCarefreeAide.isNotNull(resourcesArchetype.getTimer())) {
-            configured = true;
-            builder.timer(resourcesArchetype.getTimer().instance());
+            builder.timer(resourcesArchetype.getTimer().instance(beanFactory));
         }
         if (TempCarefreeAide.isNotNull(resourcesArchetype.getEventBus())) {
-            configured = true;
-            builder.eventBus(resourcesArchetype.getEventBus().instance());
+            builder.eventBus(resourcesArchetype.getEventBus().instance(beanFactory));
         }
         if (TempCarefreeAide.isNotNull(resourcesArchetype.getCommandLatencyPublisherOptions())) {
-            configured = true;
-            builder.commandLatencyPublisherOptions(resourcesArchetype.getCommandLatencyPublisherOptions().instance());
+            builder.commandLatencyPublisherOptions(resourcesArchetype.getCommandLatencyPublisherOptions().instance(beanFactory));
         }
         if (TempCarefreeAide.isNotNull(resourcesArchetype.getCommandLatencyCollectorOptions())) {
-            configured = true;
-            builder.commandLatencyCollectorOptions(resourcesArchetype.getCommandLatencyCollectorOptions().instance());
+            builder.commandLatencyCollectorOptions(resourcesArchetype.getCommandLatencyCollectorOptions().instance(beanFactory));
         }
         if (TempCarefreeAide.isNotNull(resourcesArchetype.getCommandLatencyCollector())) {
-            configured = true;
-            builder.commandLatencyCollector(resourcesArchetype.getCommandLatencyCollector().instance());
+            builder.commandLatencyCollector(resourcesArchetype.getCommandLatencyCollector().instance(beanFactory));
         }
         if (TempCarefreeAide.isNotNull(resourcesArchetype.getDnsResolver())) {
-            configured = true;
-            builder.dnsResolver(resourcesArchetype.getDnsResolver().instance());
+            builder.dnsResolver(resourcesArchetype.getDnsResolver().instance(beanFactory));
         }
         if (TempCarefreeAide.isNotNull(resourcesArchetype.getReconnectDelay())) {
-            configured = true;
-            builder.reconnectDelay(() -> resourcesArchetype.getReconnectDelay().instance());
+            builder.reconnectDelay(() -> resourcesArchetype.getReconnectDelay().instance(beanFactory));
         }
         if (TempCarefreeAide.isNotNull(resourcesArchetype.getNettyCustomizer())) {
-            configured = true;
-            builder.nettyCustomizer(resourcesArchetype.getNettyCustomizer().instance());
+            builder.nettyCustomizer(resourcesArchetype.getNettyCustomizer().instance(beanFactory));
         }
         if (TempCarefreeAide.isNotNull(resourcesArchetype.getTracing())) {
-            configured = true;
-            builder.tracing(resourcesArchetype.getTracing().instance());
+            builder.tracing(resourcesArchetype.getTracing().instance(beanFactory));
         }
 
-        return configured ? builder.build() : null;
+        return builder.build();
     }
 
-    default ClientOptions createClientOptions(CarefreeRedisArchetype archetype, CarefreeRedisArchetypeOptions optionsArchetype) {
+    default ClientOptions createClientOptions(CarefreeRedisArchetype archetype, CarefreeRedisArchetypeOptions optionsArchetype, BeanFactory beanFactory) {
         // ClientOptions
         boolean configured = false;
         ClientOptions.Builder builder = ClientOptions.builder();
@@ -333,7 +324,7 @@ interface CarefreeRedisLatheClientConfiguration {
                 // 若未配置 TimeoutSource，则根据基础配置中的 commandTimeout 构建 FixedTimeoutSource
                 // 若基础配置中未设置 commandTimeout，则使用默认的 DefaultTimeoutSource
                 if (TempCarefreeAide.isNotNull(optionsArchetype.getTimeoutSource())) {
-                    timeoutBuilder.timeoutSource(optionsArchetype.getTimeoutSource().instance());
+                    timeoutBuilder.timeoutSource(optionsArchetype.getTimeoutSource().instance(beanFactory));
                 } else {
                     if (TempCarefreeAide.isNotNull(archetype.getCommandTimeout()) && archetype.getCommandTimeout() > 0) {
                         timeoutBuilder.fixedTimeout(Duration.ofMillis(archetype.getCommandTimeout()));
@@ -0,0 +1,576 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree.redis;
+
+import io.lettuce.core.ClientOptions;
+import org.apenk.carefree.helper.TempCarefreeAide;
+import org.apenk.carefree.redis.archetype.CarefreeRedisArchetypeNearCache;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>
+ *     一个 redis root 的本地缓存，由 {@link CarefreeRedisCachingTemplate} 使用，同一 root 的多个模板共用。
+ * </p>
+ * <p>
+ *     缓存的 key 为序列化后的 Redis key（按 ISO-8859-1 一一映射为字符串），值为反序列化后的对象（调用方不应修改）。
+ *     容量按条目数和权重（key 与 value 序列化后的字节数）限制，超出时按 CLOCK（二次机会）淘汰近期未访问的条目，
+ *     但新条目的访问频率低于被淘汰者时不予缓存（TinyLFU 准入），以免偶发的读取冲掉热点数据。
+ *     访问频率由一个定期减半的 count-min sketch 估计。
+ * </p>
+ * <p>
+ *     命中时不加锁：条目保存在 {@link ConcurrentHashMap} 中，访问只设置条目的访问标记，
+ *     访问记录先写入按线程分散的有损缓冲区，缓冲区满或写入新条目时再由一个线程批量计入 sketch，
+ *     缓冲区满且正在批量计入时丢弃记录，这只会略微降低频率估计的精度。
+ *     写入、淘汰、失效仍由 this 同步。
+ * </p>
+ * <p>
+ *     只有失效跟踪连接（{@link CarefreeRedisTrackingConnection}）已连接时才使用缓存，连接断开时清空缓存；
+ *     Redis 不支持失效跟踪时，若设置了存活时间则只按存活时间失效，否则不使用缓存。
+ *     读取与失效之间的竞争通过 {@link #begin(String)} 返回的令牌处理：读取期间 key 被失效时，读取结果不会被缓存。
+ * </p>
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public final class CarefreeRedisNearCache implements AutoCloseable {
+
+    /** {@link #get(String)} 未命中时的返回值 */
+    static final Object MISS = new Object();
+    private static final Object NULL = new Object();
+
+    private static final long DEFAULT_MAXIMUM_SIZE = 10000;
+    private static final long DEFAULT_HEARTBEAT_INTERVAL = 30000;
+    /** 访问记录缓冲区的个数，按线程分散以减少竞争 */
+    private static final int READ_BUFFER_STRIPES = Math.min(Integer.highestOneBit(Runtime.getRuntime().availableProcessors()) * 2, 64);
+
+    private final String root;
+    private final long maximumSize;
+    private final long maximumWeight;
+    private final long expireAfterWriteNanos;
+    private final boolean cacheNulls;
+    private final List<String> prefixes;
+
+    /** 读取不加锁，修改由 this 同步 */
+    private final ConcurrentHashMap<String, Entry> entries;
+    /** CLOCK 淘汰顺序，可能含有已被移除或替换的条目，淘汰时跳过，由 this 同步 */
+    private final ArrayDeque<Entry> clock;
+    /** 正在从 Redis 读取的 key 及其令牌，由 this 同步 */
+    private final Map<String, Long> pending;
+    /** 由 sketchLock 同步 */
+    private final FrequencySketch sketch;
+    private final ReentrantLock sketchLock = new ReentrantLock();
+    private final ReadBuffer[] readBuffers;
+    private long weight;
+    private long sequence;
+
+    private volatile boolean active;
+    private volatile boolean tracking;
+    private CarefreeRedisTrackingConnection trackingConnection;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    private CarefreeRedisNearCache(String root, CarefreeRedisArchetypeNearCache archetype) {
+        this.root = root;
+        this.maximumSize = TempCarefreeAide.isNotNull(archetype.getMaximumSize()) && archetype.getMaximumSize() > 0
+                ? archetype.getMaximumSize() : DEFAULT_MAXIMUM_SIZE;
+        this.maximumWeight = TempCarefreeAide.isNotNull(archetype.getMaximumWeight()) ? archetype.getMaximumWeight() : 0;
+        this.expireAfterWriteNanos = TempCarefreeAide.isNotNull(archetype.getExpireAfterWrite())
+                ? TimeUnit.MILLISECONDS.toNanos(archetype.getExpireAfterWrite()) : 0;
+        this.cacheNulls = TempCarefreeAide.isNotFalse(archetype.getCacheNulls());
+        this.prefixes = new ArrayList<>();
+        if (TempCarefreeAide.isNotEmpty(archetype.getPrefixes())) {
+            archetype.getPrefixes().forEach(prefix -> this.prefixes.add(keyOf(prefix.getBytes(StandardCharsets.UTF_8))));
+        }
+        this.entries = new ConcurrentHashMap<>();
+        this.clock = new ArrayDeque<>();
+        this.pending = new HashMap<>();
+        this.sketch = new FrequencySketch(this.maximumSize);
+        this.readBuffers = new ReadBuffer[READ_BUFFER_STRIPES];
+        for (int i = 0; i < READ_BUFFER_STRIPES; i++) {
+            this.readBuffers[i] = new ReadBuffer();
+        }
+    }
+
+    /**
+     * 按 root 的配置创建本地缓存并启动失效跟踪
+     */
+    static CarefreeRedisNearCache create(CarefreeRedisPayload payload) {
+        CarefreeRedisArchetypeNearCache archetype = payload.nearCacheArchetype;
+        if (archetype == null || TempCarefreeAide.isNotTrue(archetype.getEnabled())) {
+            throw new IllegalArgumentException("[Carefree] near cache is not enabled for redis root: " + payload.root);
+        }
+        CarefreeRedisNearCache nearCache = new CarefreeRedisNearCache(payload.root, archetype);
+
+        if (!(payload.redisConfiguration instanceof RedisStandaloneConfiguration)) {
+            nearCache.unsupported("invalidation tracking only supports standalone mode");
+            return nearCache;
+        }
+        RedisStandaloneConfiguration configuration = (RedisStandaloneConfiguration) payload.redisConfiguration;
+        Duration connectTimeout = payload.clientConfiguration.getClientOptions()
+                .map(options -> options.getSocketOptions().getConnectTimeout()).orElse(Duration.ofSeconds(10));
+        long heartbeatInterval = TempCarefreeAide.isNotNull(archetype.getHeartbeatInterval()) && archetype.getHeartbeatInterval() > 0
+                ? archetype.getHeartbeatInterval() : DEFAULT_HEARTBEAT_INTERVAL;
+
+        nearCache.trackingConnection = new CarefreeRedisTrackingConnection(payload.root,
+                configuration.getHostName(), configuration.getPort(),
+                configuration.getPassword().toOptional().map(String::new).orElse(null),
+                payload.clientConfiguration.isUseSsl(), payload.clientConfiguration.isVerifyPeer(),
+                payload.clientConfiguration.getClientOptions().map(ClientOptions::getSslOptions).orElse(null),
+                (int) connectTimeout.toMillis(), (int) heartbeatInterval,
+                TempCarefreeAide.isNotEmpty(archetype.getPrefixes()) ? archetype.getPrefixes() : Collections.emptyList(),
+                nearCache.new TrackingListener());
+        nearCache.trackingConnection.start();
+        return nearCache;
+    }
+
+    static String keyOf(byte[] rawKey) {
+        return new String(rawKey, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * @return 缓存的值（可能为 null），未命中时返回 {@link #MISS}
+     */
+    Object get(String key) {
+        if (!active) {
+            return MISS;
+        }
+        recordAccess(key);
+        Object value = null;
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            if (expireAfterWriteNanos > 0 && System.nanoTime() - entry.expireAt > 0) {
+                synchronized (this) {
+                    remove(key, entry);
+                }
+            } else {
+                if (!entry.referenced) {
+                    entry.referenced = true;
+                }
+                value = entry.value;
+            }
+        }
+        if (value == null) {
+            misses.increment();
+            return MISS;
+        }
+        hits.increment();
+        return value == NULL ? null : value;
+    }
+
+    /**
+     * 开始从 Redis 读取 key，返回的令牌用于 {@link #put(String, long, Object, int)}，为 0 时表示读取结果不应缓存
+     */
+    long begin(String key) {
+        if (!active || !isTracked(key)) {
+            return 0;
+        }
+        synchronized (this) {
+            long token = ++sequence;
+            pending.put(key, token);
+            return token;
+        }
+    }
+
+    /**
+     * 缓存从 Redis 读取的值，若读取期间 key 已被失效则放弃
+     *
+     * @param weight key 与 value 序列化后的字节数
+     */
+    void put(String key, long token, Object value, int weight) {
+        if (token == 0 || (value == null && !cacheNulls)) {
+            synchronized (this) {
+                pending.remove(key, token);
+            }
+            return;
+        }
+        long expireAt = expireAfterWriteNanos > 0 ? System.nanoTime() + expireAfterWriteNanos : 0;
+        synchronized (this) {
+            if (!pending.remove(key, token)) {
+                return;
+            }
+            if (maximumWeight > 0 && weight > maximumWeight) {
+                rejections.increment();
+                return;
+            }
+            remove(key);
+            if (entries.size() >= maximumSize || (maximumWeight > 0 && this.weight + weight > maximumWeight)) {
+                // 缓存已满，新条目的访问频率不高于将被淘汰的条目时不予缓存
+                Entry victim = victim();
+                sketchLock.lock();
+                try {
+                    drainReadBuffers();
+                    if (sketch.frequency(key) <= sketch.frequency(victim.key)) {
+                        rejections.increment();
+                        return;
+                    }
+                } finally {
+                    sketchLock.unlock();
+                }
+            }
+            Entry entry = new Entry(key, value == null ? NULL : value, weight, expireAt);
+            entries.put(key, entry);
+            clock.add(entry);
+            this.weight += weight;
+            while (entries.size() > maximumSize || (maximumWeight > 0 && this.weight > maximumWeight)) {
+                Entry evicted = victim();
+                clock.poll();
+                entries.remove(evicted.key);
+                this.weight -= evicted.weight;
+                evictions.increment();
+            }
+            if (clock.size() > entries.size() * 2 + 16) {
+                // 被失效的条目只在淘汰时跳过，大量失效后清理一次
+                clock.removeIf(candidate -> entries.get(candidate.key) != candidate);
+            }
+        }
+    }
+
+    /**
+     * 将 CLOCK 指针移动到下一个淘汰的条目（留在队首）：跳过已移除的条目，
+     * 近期访问过的条目清除访问标记后移到队尾；读取可能并发地重新设置标记，因此最多转两圈
+     */
+    private Entry victim() {
+        int rotations = clock.size() * 2;
+        while (true) {
+            Entry head = clock.peek();
+            if (entries.get(head.key) != head) {
+                clock.poll();
+                continue;
+            }
+            if (!head.referenced || rotations-- <= 0) {
+                return head;
+            }
+            head.referenced = false;
+            clock.add(clock.poll());
+        }
+    }
+
+    /**
+     * 记录一次访问，所在缓冲区已满时尝试批量计入 sketch 后再记录一次，仍失败则丢弃
+     */
+    private void recordAccess(String key) {
+        ReadBuffer buffer = readBuffers[(int) Thread.currentThread().getId() & (READ_BUFFER_STRIPES - 1)];
+        if (!buffer.offer(key) && sketchLock.tryLock()) {
+            try {
+                drainReadBuffers();
+            } finally {
+                sketchLock.unlock();
+            }
+            buffer.offer(key);
+        }
+    }
+
+    /**
+     * 将所有缓冲区中的访问记录计入 sketch，须持有 sketchLock
+     */
+    private void drainReadBuffers() {
+        for (ReadBuffer buffer : readBuffers) {
+            buffer.drainTo(sketch);
+        }
+    }
+
+    void invalidate(String key) {
+        synchronized (this) {
+            pending.remove(key);
+            if (remove(key)) {
+                invalidations.increment();
+            }
+        }
+    }
+
+    void invalidateAll() {
+        synchronized (this) {
+            pending.clear();
+            invalidations.add(entries.size());
+            entries.clear();
+            clock.clear();
+            weight = 0;
+        }
+    }
+
+    private boolean remove(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            weight -= removed.weight;
+            return true;
+        }
+        return false;
+    }
+
+    private void remove(String key, Entry entry) {
+        if (entries.remove(key, entry)) {
+            weight -= entry.weight;
+        }
+    }
+
+    private boolean isTracked(String key) {
+        if (prefixes.isEmpty()) {
+            return true;
+        }
+        for (String prefix : prefixes) {
+            if (key.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void unsupported(String reason) {
+        this.tracking = false;
+        if (expireAfterWriteNanos > 0) {
+            this.active = true;
+            CarefreeRedisAutoConfiguration.logger.warn("{} for redis root: {}, near cache entries expire only by expireAfterWrite", reason, root);
+        } else {
+            this.active = false;
+            CarefreeRedisAutoConfiguration.logger.warn("{} for redis root: {}, near cache is disabled, set expireAfterWrite to use it without tracking", reason, root);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (trackingConnection != null) {
+            trackingConnection.close();
+        }
+        active = false;
+        invalidateAll();
+    }
+
+    public String getRoot() {
+        return root;
+    }
+
+    /**
+     * @return 是否正在使用缓存
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * @return 失效跟踪连接是否已连接
+     */
+    public boolean isTracking() {
+        return tracking;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public synchronized long weight() {
+        return weight;
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return 因访问频率低于被淘汰条目或超过最大权重而未缓存的次数
+     */
+    public long rejectionCount() {
+        return rejections.sum();
+    }
+
+    public long invalidationCount() {
+        return invalidations.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "CarefreeRedisNearCache{root=" + root + ", active=" + active + ", tracking=" + tracking + ", size=" + size()
+                + ", weight=" + weight() + ", hits=" + hitCount() + ", misses=" + missCount() + ", evictions=" + evictionCount()
+                + ", rejections=" + rejectionCount() + ", invalidations=" + invalidationCount() + "}";
+    }
+
+    private static final class Entry {
+        private final String key;
+        private final Object value;
+        private final int weight;
+        /** System.nanoTime() 的过期时刻，未设置存活时间时无意义 */
+        private final long expireAt;
+        /** 上次被 CLOCK 指针经过后是否被访问过 */
+        private volatile boolean referenced;
+
+        Entry(String key, Object value, int weight, long expireAt) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+            this.expireAt = expireAt;
+        }
+    }
+
+    /**
+     * 失效跟踪连接的回调，在跟踪线程中调用
+     */
+    private final class TrackingListener implements CarefreeRedisTrackingConnection.Listener {
+        @Override
+        public void connected() {
+            invalidateAll();
+            tracking = true;
+            active = true;
+        }
+
+        @Override
+        public void disconnected() {
+            // 断开期间可能错过失效消息
+            tracking = false;
+            active = false;
+            invalidateAll();
+        }
+
+        @Override
+        public void invalidated(List<byte[]> keys) {
+            if (keys == null) {
+                invalidateAll();
+                return;
+            }
+            for (byte[] key : keys) {
+                invalidate(keyOf(key));
+            }
+        }
+
+        @Override
+        public void unsupported(String reason) {
+            CarefreeRedisNearCache.this.unsupported(reason);
+        }
+    }
+
+    /**
+     * 一个有损的访问记录环形缓冲区，多个线程写入，持有 sketchLock 的线程读取
+     */
+    private static final class ReadBuffer {
+        private static final int SIZE = 32;
+        private static final int MASK = SIZE - 1;
+
+        private final AtomicReferenceArray<String> keys = new AtomicReferenceArray<>(SIZE);
+        private final AtomicLong writeIndex = new AtomicLong();
+        private volatile long readIndex;
+
+        /**
+         * @return 缓冲区已满时返回 false；与其他线程竞争写入失败时直接丢弃记录，仍返回 true
+         */
+        boolean offer(String key) {
+            long index = writeIndex.get();
+            if (index - readIndex >= SIZE) {
+                return false;
+            }
+            if (writeIndex.compareAndSet(index, index + 1)) {
+                keys.lazySet((int) index & MASK, key);
+            }
+            return true;
+        }
+
+        void drainTo(FrequencySketch sketch) {
+            long index = readIndex;
+            long end = writeIndex.get();
+            for (; index < end; index++) {
+                int slot = (int) index & MASK;
+                String key = keys.get(slot);
+                if (key == null) {
+                    // 写入者已占位但尚未写入，下次再读
+                    break;
+                }
+                keys.lazySet(slot, null);
+                sketch.increment(key);
+            }
+            readIndex = index;
+        }
+    }
+
+    /**
+     * 4 位计数器的 count-min sketch，计数总量达到阈值时全部减半，使频率估计偏向近期的访问
+     */
+    static final class FrequencySketch {
+        private static final int MAXIMUM_WIDTH = 1 << 22;
+        private static final int[] SEEDS = {0x97cb3127, 0xb8f5d2c1, 0x6c8e9cf5, 0x2b2b8f4d};
+
+        private final byte[] table;
+        private final int mask;
+        private final int resetThreshold;
+        private int additions;
+
+        FrequencySketch(long maximumSize) {
+            int width = Integer.highestOneBit((int) Math.min(Math.max(maximumSize * 2, 64), MAXIMUM_WIDTH) - 1) << 1;
+            this.table = new byte[width];
+            this.mask = width - 1;
+            this.resetThreshold = width * 5;
+        }
+
+        void increment(Object key) {
+            int hash = spread(key.hashCode());
+            boolean added = false;
+            for (int seed : SEEDS) {
+                int index = index(hash, seed);
+                if (table[index] < 15) {
+                    table[index]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= resetThreshold) {
+                for (int i = 0; i < table.length; i++) {
+                    table[i] = (byte) (table[i] >>> 1);
+                }
+                additions /= 2;
+            }
+        }
+
+        int frequency(Object key) {
+            int hash = spread(key.hashCode());
+            int frequency = 15;
+            for (int seed : SEEDS) {
+                frequency = Math.min(frequency, table[index(hash, seed)]);
+            }
+            return frequency;
+        }
+
+        private int index(int hash, int seed) {
+            int h = hash * seed;
+            h ^= h >>> 16;
+            return h & mask;
+        }
+
+        private static int spread(int hash) {
+            hash ^= hash >>> 17;
+            hash *= 0xed5ad4bb;
+            hash ^= hash >>> 11;
+            return hash;
+        }
+    }
+}
@@ -18,6 +18,7 @@ package org.apenk.carefree.redis;
 
 import org.apenk.carefree.redis.archetype.*;
 import org.apenk.carefree.redis.listener.CarefreeRedisConfigureEvent;
+import org.springframework.beans.factory.BeanFactory;
 import org.springframework.data.redis.connection.RedisConfiguration;
 import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
@@ -30,13 +31,19 @@ class CarefreeRedisPayload {
 
     String key;
     String root;
+    /** 所在应用上下文，用于解析声明中引用的 bean */
+    BeanFactory beanFactory;
 
     CarefreeRedisArchetype redisArchetype;
     CarefreeRedisArchetypePool poolArchetype;
     CarefreeRedisArchetypeResources resourcesArchetype;
     CarefreeRedisArchetypeOptions optionsArchetype;
     CarefreeRedisArchetypeSerializer serializerArchetype;
+    CarefreeRedisArchetypeNearCache nearCacheArchetype;
+    CarefreeRedisArchetypePipeline pipelineArchetype;
 
+    /** 该 root 所在的 ClientResources 分组 */
+    CarefreeRedisResourcesGroup resourcesGroup;
     LettuceClientConfiguration clientConfiguration;
     RedisConfiguration redisConfiguration;
 
@@ -51,9 +58,25 @@ class CarefreeRedisPayload {
         event.setResourcesArchetype(resourcesArchetype);
         event.setOptionsArchetype(optionsArchetype);
         event.setSerializerArchetype(serializerArchetype);
+        event.setNearCacheArchetype(nearCacheArchetype);
+        event.setPipelineArchetype(pipelineArchetype);
         event.setClientConfiguration(clientConfiguration);
         event.setRedisConfiguration(redisConfiguration);
         event.setConnectionFactory(connectionFactory);
         return event;
     }
+
+    /**
+     * 释放该 root 创建的资源：关闭 ConnectionFactory，并释放对 ClientResources 分组的引用
+     * （最后一个引用释放时关闭 ClientResources 及其引用的声明实例）
+     */
+    void release() {
+        if (connectionFactory != null) {
+            connectionFactory.destroy();
+        }
+        if (resourcesGroup != null) {
+            CarefreeRedisResourcesGroups.getInstance().release(resourcesGroup, root);
+            resourcesGroup = null;
+        }
+    }
 }
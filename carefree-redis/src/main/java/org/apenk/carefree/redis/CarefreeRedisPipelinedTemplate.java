@@ -0,0 +1,383 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree.redis;
+
+import io.lettuce.core.RedisCommandTimeoutException;
+import io.lettuce.core.api.StatefulConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.cluster.api.async.RedisAdvancedClusterAsyncCommands;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.output.*;
+import io.lettuce.core.protocol.AsyncCommand;
+import io.lettuce.core.protocol.Command;
+import io.lettuce.core.protocol.CommandArgs;
+import io.lettuce.core.protocol.CommandType;
+import io.lettuce.core.protocol.RedisCommand;
+import io.lettuce.core.resource.ClientResources;
+import io.netty.util.concurrent.EventExecutorGroup;
+import io.netty.util.concurrent.ScheduledFuture;
+import org.apenk.carefree.helper.TempCarefreeAide;
+import org.apenk.carefree.redis.archetype.CarefreeRedisArchetypePipeline;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * <p>
+ *     合并并发命令的 Redis 模板，由 {@link CarefreeRedisRegistry#newPipelinedTemplate(String)} 创建，
+ *     各方法立即返回命令结果的 future，不等待 Redis 响应。
+ * </p>
+ * <p>
+ *     提交的命令进入队列，由后台线程每次取出至多 maxBatchSize 个（设置了 flushInterval 时最多等待该时长凑满一批），
+ *     通过 Lettuce 的批量写入一次写入连接并刷新，从而把多个线程的命令合并为一次网络写入，
+ *     而不需要调用方自行使用 executePipelined。命令使用该 root 连接工厂的原生连接（共享连接时与其他模板共用），
+ *     因此与同一连接上的其他命令一样按提交顺序执行；集群模式下由 Lettuce 按 slot 分发到各节点。
+ * </p>
+ * <p>
+ *     结果在 Lettuce 的 I/O 线程中反序列化，命令失败时 future 以转换后的 {@link DataAccessException} 异常完成；
+ *     自提交起超过该 root 的 commandTimeout 仍未完成的命令以超时异常完成（{@link org.springframework.dao.QueryTimeoutException}），
+ *     超时检查调度在 ClientResources 的 EventExecutorGroup 上。
+ *     不再使用时应调用 {@link #close()}，关闭前已提交的命令仍会被写入；容器关闭时未关闭的模板由 {@link CarefreeRedisRegistry} 关闭。
+ * </p>
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public class CarefreeRedisPipelinedTemplate<K, V> implements AutoCloseable {
+
+    private static final int DEFAULT_MAX_BATCH_SIZE = 128;
+    private static final int DEFAULT_QUEUE_CAPACITY = 16384;
+    private static final AtomicInteger SEQUENCE = new AtomicInteger();
+
+    private final String root;
+    private final RedisTemplate<K, V> template;
+    private final LettuceConnectionFactory factory;
+    private final RedisConnection connection;
+    private final StatefulConnection<byte[], byte[]> nativeConnection;
+    private final int maxBatchSize;
+    private final long flushIntervalNanos;
+    /** 命令超时，不大于 0 时不检查超时 */
+    private final Duration commandTimeout;
+    private final EventExecutorGroup timeoutExecutor;
+    private final BlockingQueue<RedisCommand<byte[], byte[], ?>> queue;
+    private final Thread flusher;
+    private final Consumer<CarefreeRedisPipelinedTemplate<?, ?>> closeHook;
+
+    private volatile boolean closed;
+
+    private final LongAdder commands = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+
+    @SuppressWarnings("unchecked")
+    CarefreeRedisPipelinedTemplate(String root, RedisTemplate<K, V> template, LettuceConnectionFactory factory,
+                                   CarefreeRedisArchetypePipeline archetype, Consumer<CarefreeRedisPipelinedTemplate<?, ?>> closeHook) {
+        this.root = root;
+        this.template = template;
+        this.factory = factory;
+        this.maxBatchSize = archetype != null && TempCarefreeAide.isNotNull(archetype.getMaxBatchSize()) && archetype.getMaxBatchSize() > 0
+                ? archetype.getMaxBatchSize() : DEFAULT_MAX_BATCH_SIZE;
+        this.flushIntervalNanos = archetype != null && TempCarefreeAide.isNotNull(archetype.getFlushInterval())
+                ? TimeUnit.MICROSECONDS.toNanos(archetype.getFlushInterval()) : 0;
+        int queueCapacity = archetype != null && TempCarefreeAide.isNotNull(archetype.getQueueCapacity()) && archetype.getQueueCapacity() > 0
+                ? archetype.getQueueCapacity() : DEFAULT_QUEUE_CAPACITY;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.closeHook = closeHook;
+        this.commandTimeout = factory.getClientConfiguration().getCommandTimeout();
+        ClientResources clientResources = factory.getClientResources();
+        this.timeoutExecutor = clientResources != null ? clientResources.eventExecutorGroup() : null;
+
+        // 共享原生连接时得到的是共享连接，否则是该 RedisConnection 独占的连接，关闭模板时释放
+        this.connection = factory.getConnection();
+        Object commands = this.connection.getNativeConnection();
+        if (commands instanceof RedisAsyncCommands) {
+            this.nativeConnection = ((RedisAsyncCommands<byte[], byte[]>) commands).getStatefulConnection();
+        } else if (commands instanceof RedisAdvancedClusterAsyncCommands) {
+            this.nativeConnection = ((RedisAdvancedClusterAsyncCommands<byte[], byte[]>) commands).getStatefulConnection();
+        } else {
+            this.connection.close();
+            throw new IllegalArgumentException("[Carefree] unsupported native redis connection of root: " + root + ", " + commands);
+        }
+
+        this.flusher = new Thread(this::run, "carefree-redis-pipeline-" + root + "-" + SEQUENCE.incrementAndGet());
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    public CompletableFuture<V> get(K key) {
+        return submit(CommandType.GET, new ValueOutput<>(ByteArrayCodec.INSTANCE), args().addKey(rawKey(key)), this::deserializeValue);
+    }
+
+    public CompletableFuture<Boolean> set(K key, V value) {
+        return submit(CommandType.SET, new StatusOutput<>(ByteArrayCodec.INSTANCE), args().addKey(rawKey(key)).addValue(rawValue(value)),
+                "OK"::equals);
+    }
+
+    public CompletableFuture<Boolean> set(K key, V value, Duration timeout) {
+        return submit(CommandType.SET, new StatusOutput<>(ByteArrayCodec.INSTANCE),
+                args().addKey(rawKey(key)).addValue(rawValue(value)).add("PX").add(timeout.toMillis()), "OK"::equals);
+    }
+
+    public CompletableFuture<Boolean> delete(K key) {
+        return submit(CommandType.DEL, new IntegerOutput<>(ByteArrayCodec.INSTANCE), args().addKey(rawKey(key)), count -> count > 0);
+    }
+
+    public CompletableFuture<Boolean> expire(K key, Duration timeout) {
+        return submit(CommandType.PEXPIRE, new BooleanOutput<>(ByteArrayCodec.INSTANCE), args().addKey(rawKey(key)).add(timeout.toMillis()),
+                Function.identity());
+    }
+
+    public CompletableFuture<Long> increment(K key, long delta) {
+        return submit(CommandType.INCRBY, new IntegerOutput<>(ByteArrayCodec.INSTANCE), args().addKey(rawKey(key)).add(delta),
+                Function.identity());
+    }
+
+    public CompletableFuture<Long> rightPush(K key, V value) {
+        return submit(CommandType.RPUSH, new IntegerOutput<>(ByteArrayCodec.INSTANCE), args().addKey(rawKey(key)).addValue(rawValue(value)),
+                Function.identity());
+    }
+
+    @SuppressWarnings("unchecked")
+    public <HK, HV> CompletableFuture<HV> hashGet(K key, HK hashKey) {
+        return submit(CommandType.HGET, new ValueOutput<>(ByteArrayCodec.INSTANCE),
+                args().addKey(rawKey(key)).add(serialize((RedisSerializer<HK>) template.getHashKeySerializer(), hashKey)),
+                value -> deserialize((RedisSerializer<HV>) template.getHashValueSerializer(), value));
+    }
+
+    /**
+     * @return hashKey 是否为新增的字段
+     */
+    @SuppressWarnings("unchecked")
+    public <HK, HV> CompletableFuture<Boolean> hashPut(K key, HK hashKey, HV value) {
+        return submit(CommandType.HSET, new BooleanOutput<>(ByteArrayCodec.INSTANCE),
+                args().addKey(rawKey(key))
+                        .add(serialize((RedisSerializer<HK>) template.getHashKeySerializer(), hashKey))
+                        .add(serialize((RedisSerializer<HV>) template.getHashValueSerializer(), value)),
+                Function.identity());
+    }
+
+    /**
+     * 获取序列化程序相同的 Redis 模板，执行的命令不经过合并
+     */
+    public RedisTemplate<K, V> getTemplate() {
+        return template;
+    }
+
+    public String getRoot() {
+        return root;
+    }
+
+    /**
+     * @return 已写入的命令数
+     */
+    public long getCommandCount() {
+        return commands.sum();
+    }
+
+    /**
+     * @return 已执行的批量写入次数，{@link #getCommandCount()} 与之的比值即平均每批合并的命令数
+     */
+    public long getFlushCount() {
+        return flushes.sum();
+    }
+
+    /**
+     * 停止接受新命令，等待已提交的命令写入后释放连接
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 与 close 并发提交、未被后台线程取出的命令
+        List<RedisCommand<byte[], byte[], ?>> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        remaining.forEach(command -> command.completeExceptionally(closedException()));
+        connection.close();
+        if (closeHook != null) {
+            closeHook.accept(this);
+        }
+    }
+
+    private <T, R> CompletableFuture<R> submit(CommandType type, CommandOutput<byte[], byte[], T> output,
+                                              CommandArgs<byte[], byte[]> args, Function<T, R> converter) {
+        if (closed) {
+            throw closedException();
+        }
+        AsyncCommand<byte[], byte[], T> command = new AsyncCommand<>(new Command<>(type, output, args));
+        CompletableFuture<R> result = new CompletableFuture<>();
+        command.whenComplete((value, error) -> {
+            if (error != null) {
+                result.completeExceptionally(translate(error));
+                return;
+            }
+            try {
+                result.complete(converter.apply(value));
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        scheduleTimeout(command);
+
+        try {
+            queue.put(command);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            command.completeExceptionally(e);
+        }
+        if (closed && queue.remove(command)) {
+            // 后台线程已退出
+            command.completeExceptionally(closedException());
+        }
+        return result;
+    }
+
+    /**
+     * 超时后以 {@link RedisCommandTimeoutException} 完成命令，尚未写入的命令不再写入（Lettuce 不写入已完成的命令）
+     */
+    private void scheduleTimeout(AsyncCommand<byte[], byte[], ?> command) {
+        if (timeoutExecutor == null || commandTimeout == null || commandTimeout.isZero() || commandTimeout.isNegative()) {
+            return;
+        }
+        ScheduledFuture<?> timeout = timeoutExecutor.schedule(() -> {
+            command.completeExceptionally(new RedisCommandTimeoutException("Command timed out after " + commandTimeout.toMillis() + " ms"));
+        }, commandTimeout.toNanos(), TimeUnit.NANOSECONDS);
+        command.whenComplete((value, error) -> timeout.cancel(false));
+    }
+
+    private void run() {
+        List<RedisCommand<byte[], byte[], ?>> batch = new ArrayList<>(maxBatchSize);
+        while (true) {
+            RedisCommand<byte[], byte[], ?> first;
+            try {
+                first = queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                first = null;
+            }
+            if (first == null) {
+                if (closed) {
+                    return;
+                }
+                continue;
+            }
+
+            batch.add(first);
+            queue.drainTo(batch, maxBatchSize - 1);
+            if (flushIntervalNanos > 0 && batch.size() < maxBatchSize) {
+                // 在 flushInterval 内继续等待，直到凑满一批
+                long deadline = System.nanoTime() + flushIntervalNanos;
+                long remaining;
+                while (batch.size() < maxBatchSize && (remaining = deadline - System.nanoTime()) > 0) {
+                    RedisCommand<byte[], byte[], ?> next;
+                    try {
+                        next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                }
+            }
+
+            flush(batch);
+            batch.clear();
+        }
+    }
+
+    private void flush(List<RedisCommand<byte[], byte[], ?>> batch) {
+        try {
+            nativeConnection.dispatch(batch);
+            commands.add(batch.size());
+            flushes.increment();
+        } catch (RuntimeException e) {
+            batch.forEach(command -> command.completeExceptionally(e));
+        }
+    }
+
+    private Throwable translate(Throwable error) {
+        if (error instanceof RuntimeException) {
+            DataAccessException translated = factory.translateExceptionIfPossible((RuntimeException) error);
+            if (translated != null) {
+                return translated;
+            }
+        }
+        return error;
+    }
+
+    private IllegalStateException closedException() {
+        return new IllegalStateException("[Carefree] pipelined template of redis root: " + root + " is closed");
+    }
+
+    private static CommandArgs<byte[], byte[]> args() {
+        return new CommandArgs<>(ByteArrayCodec.INSTANCE);
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] rawKey(K key) {
+        return serialize((RedisSerializer<K>) template.getKeySerializer(), key);
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] rawValue(V value) {
+        return serialize((RedisSerializer<V>) template.getValueSerializer(), value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private V deserializeValue(byte[] rawValue) {
+        return deserialize((RedisSerializer<V>) template.getValueSerializer(), rawValue);
+    }
+
+    /**
+     * 未设置序列化程序时（enableDefaultSerializer 为 false），只接受 byte[]
+     */
+    private static <T> byte[] serialize(RedisSerializer<T> serializer, T value) {
+        if (serializer != null) {
+            return serializer.serialize(value);
+        }
+        if (value instanceof byte[]) {
+            return (byte[]) value;
+        }
+        throw new IllegalArgumentException("[Carefree] no serializer for non byte[] value: " + value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T deserialize(RedisSerializer<T> serializer, byte[] value) {
+        return serializer != null ? serializer.deserialize(value) : (T) value;
+    }
+}
@@ -19,6 +19,10 @@ package org.apenk.carefree.redis;
 import org.apenk.carefree.helper.CarefreeClassDeclaration;
 import org.apenk.carefree.helper.TempCarefreeAide;
 import org.apenk.carefree.redis.archetype.CarefreeRedisArchetypeSerializer;
+import org.apenk.carefree.redis.serializer.CarefreeCompressingRedisSerializer;
+import org.apenk.carefree.redis.serializer.CarefreeRedisSerializers;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.core.io.ResourceLoader;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.core.ReactiveRedisTemplate;
@@ -28,8 +32,13 @@ import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
 import org.springframework.data.redis.serializer.RedisSerializer;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -38,28 +47,78 @@ import java.util.concurrent.ConcurrentHashMap;
  *     以 carefreeRedisRegistry 为 bean name 存在 Spring 于容器，
  *     可注入到应用程序中，用于创建 Redis 模板对象。
  * </p>
+ * <p>
+ *     容器关闭时关闭各 root 的连接工厂和客户端资源，并释放其引用的共享实例。
+ * </p>
  *
  * @author Kweny
  * @since 0.0.1
  */
-public class CarefreeRedisRegistry {
+public class CarefreeRedisRegistry implements DisposableBean {
     public static final String BEAN_NAME = "carefreeRedisRegistry";
 
     private ClassLoader classLoader;
+    /** 所在应用上下文，用于解析序列化程序声明中引用的 bean */
+    private BeanFactory beanFactory;
     private Map<String, LettuceConnectionFactory> factoryHolder;
     private Map<String, CarefreeRedisArchetypeSerializer> serializerHolder;
+    private Map<String, CarefreeRedisPayload> payloadHolder;
+    private Map<String, CarefreeRedisNearCache> nearCacheHolder;
+    private Set<CarefreeRedisPipelinedTemplate<?, ?>> pipelinedTemplates;
+    /** 以简称指定的内置序列化程序，各 root 共用 */
+    private Map<String, RedisSerializer<?>> namedSerializers;
 
     public CarefreeRedisRegistry(ResourceLoader resourceLoader) {
+        this(resourceLoader, null);
+    }
+
+    public CarefreeRedisRegistry(ResourceLoader resourceLoader, BeanFactory beanFactory) {
+        this.beanFactory = beanFactory;
         if (resourceLoader != null) {
             this.classLoader = resourceLoader.getClassLoader();
         }
         this.factoryHolder = new ConcurrentHashMap<>();
         this.serializerHolder = new ConcurrentHashMap<>();
+        this.payloadHolder = new ConcurrentHashMap<>();
+        this.nearCacheHolder = new ConcurrentHashMap<>();
+        this.pipelinedTemplates = ConcurrentHashMap.newKeySet();
+        this.namedSerializers = new ConcurrentHashMap<>();
     }
 
     public void register(String root, CarefreeRedisPayload payload) {
         this.factoryHolder.put(root, payload.connectionFactory);
         this.serializerHolder.put(root, payload.serializerArchetype);
+        this.payloadHolder.put(root, payload);
+    }
+
+    @Override
+    public void destroy() {
+        new ArrayList<>(this.pipelinedTemplates).forEach(CarefreeRedisPipelinedTemplate::close);
+        this.nearCacheHolder.values().forEach(CarefreeRedisNearCache::close);
+        this.nearCacheHolder.clear();
+        this.payloadHolder.forEach((root, payload) -> {
+            try {
+                payload.release();
+            } catch (Exception e) {
+                CarefreeRedisAutoConfiguration.logger.warn("error to release redis resources of root: {}, {}", root, e.toString());
+            }
+        });
+        this.payloadHolder.clear();
+    }
+
+    /**
+     * 获取当前所有 ClientResources 分组，可用于查看各分组的 root 及线程数
+     */
+    public List<CarefreeRedisResourcesGroup> getResourcesGroups() {
+        return CarefreeRedisResourcesGroups.getInstance().groups();
+    }
+
+    /**
+     * 获取 root 的本地缓存，首次获取时创建并启动失效跟踪，该 root 须在 near-cache 配置中启用本地缓存
+     */
+    public CarefreeRedisNearCache getNearCache(String root) {
+        assertConnectionFactory(getConnectionFactory(root), root);
+        return this.nearCacheHolder.computeIfAbsent(root, key -> CarefreeRedisNearCache.create(this.payloadHolder.get(key)));
     }
 
     public LettuceConnectionFactory getConnectionFactory(String root) {
@@ -82,7 +141,7 @@ public class CarefreeRedisRegistry {
             return null;
         }
         CarefreeClassDeclaration declaration = serializerArchetype.getDefaultSerializer();
-        return declaration != null ? declaration.instance() : null;
+        return serializerOf(declaration);
     }
 
     public <T extends RedisSerializer<?>> T getKeySerializer(String root) {
@@ -91,7 +150,7 @@ public class CarefreeRedisRegistry {
             return null;
         }
         CarefreeClassDeclaration declaration = serializerArchetype.getKeySerializer();
-        return declaration != null ? declaration.instance() : null;
+        return serializerOf(declaration);
     }
 
     public <T extends RedisSerializer<?>> T getValueSerializer(String root) {
@@ -100,7 +159,7 @@ public class CarefreeRedisRegistry {
             return null;
         }
         CarefreeClassDeclaration declaration = serializerArchetype.getValueSerializer();
-        return declaration != null ? declaration.instance() : null;
+        return serializerOf(declaration);
     }
 
     public <T extends RedisSerializer<?>> T getHashKeySerializer(String root) {
@@ -109,7 +168,7 @@ public class CarefreeRedisRegistry {
             return null;
         }
         CarefreeClassDeclaration declaration = serializerArchetype.getHashKeySerializer();
-        return declaration != null ? declaration.instance() : null;
+        return serializerOf(declaration);
     }
 
     public <T extends RedisSerializer<?>> T getHashValueSerializer(String root) {
@@ -118,7 +177,27 @@ public class CarefreeRedisRegistry {
             return null;
         }
         CarefreeClassDeclaration declaration = serializerArchetype.getHashValueSerializer();
-        return declaration != null ? declaration.instance() : null;
+        return serializerOf(declaration);
+    }
+
+    /**
+     * 声明中只有 className 且为内置序列化程序的简称（见 {@link CarefreeRedisSerializers}）时使用内置程序，否则按声明创建
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends RedisSerializer<?>> T serializerOf(CarefreeClassDeclaration declaration) {
+        if (declaration == null) {
+            return null;
+        }
+        String name = declaration.getClassName();
+        if (TempCarefreeAide.isNotBlank(name) && name.indexOf('.') < 0
+                && TempCarefreeAide.isBlank(declaration.getBean()) && TempCarefreeAide.isBlank(declaration.getShared())) {
+            RedisSerializer<?> serializer = this.namedSerializers.computeIfAbsent(name.trim().toLowerCase(),
+                    key -> CarefreeRedisSerializers.named(key, classLoader));
+            if (serializer != null) {
+                return (T) serializer;
+            }
+        }
+        return declaration.instance(beanFactory);
     }
 
     public <K, V> ReactiveRedisTemplate<K, V> newReactiveRedisTemplate(String root) {
@@ -146,13 +225,13 @@ public class CarefreeRedisRegistry {
         builder.key(keySerializer != null ? keySerializer : (RedisSerializer<K>) defaultSerializer);
 
         RedisSerializer<V> valueSerializer = getValueSerializer(root);
-        builder.value(valueSerializer != null ? valueSerializer : (RedisSerializer<V>) defaultSerializer);
+        builder.value(compressed(root, valueSerializer != null ? valueSerializer : (RedisSerializer<V>) defaultSerializer));
 
         RedisSerializer<?> hashKeySerializer = getHashKeySerializer(root);
         builder.hashKey(hashKeySerializer != null ? hashKeySerializer : defaultSerializer);
 
-        RedisSerializer<?> hashValueSerializer = getHashValueSerializer(root);
-        builder.hashValue(hashValueSerializer != null ? hashValueSerializer : defaultSerializer);
+        RedisSerializer<Object> hashValueSerializer = getHashValueSerializer(root);
+        builder.hashValue(compressed(root, hashValueSerializer != null ? hashValueSerializer : (RedisSerializer<Object>) defaultSerializer));
 
         return builder.build();
     }
@@ -166,6 +245,7 @@ public class CarefreeRedisRegistry {
         setSerializer(template, root);
 
         template.afterPropertiesSet();
+        setCompression(template, root);
 
         return template;
     }
@@ -179,10 +259,70 @@ public class CarefreeRedisRegistry {
         setSerializer(template, root);
 
         template.afterPropertiesSet();
+        setCompression(template, root);
 
         return template;
     }
 
+    /**
+     * 创建带本地缓存的模板，序列化器同 {@link #newTemplate(String)}，同一 root 的模板共用一个本地缓存
+     */
+    public <K, V> CarefreeRedisCachingTemplate<K, V> newCachingTemplate(String root) {
+        CarefreeRedisNearCache nearCache = getNearCache(root);
+        RedisTemplate<K, V> template = newTemplate(root);
+        checkPrefixes(root, template.getKeySerializer());
+        return new CarefreeRedisCachingTemplate<>(template, nearCache);
+    }
+
+    /**
+     * near-cache.prefixes 按 UTF-8 编码的字节与序列化后的 key 比较（Redis 的 BCAST PREFIX 同样如此），
+     * 若 key 序列化程序不是按 UTF-8 直接写出字符串（如 JDK 序列化），则任何 key 都不会匹配，本地缓存不会生效
+     */
+    @SuppressWarnings("unchecked")
+    private void checkPrefixes(String root, RedisSerializer<?> keySerializer) {
+        CarefreeRedisPayload payload = this.payloadHolder.get(root);
+        List<String> prefixes = payload.nearCacheArchetype.getPrefixes();
+        if (TempCarefreeAide.isEmpty(prefixes) || keySerializer == null) {
+            return;
+        }
+        for (String prefix : prefixes) {
+            byte[] serialized;
+            try {
+                serialized = ((RedisSerializer<Object>) keySerializer).serialize(prefix);
+            } catch (RuntimeException e) {
+                serialized = null;
+            }
+            if (!Arrays.equals(serialized, prefix.getBytes(StandardCharsets.UTF_8))) {
+                CarefreeRedisAutoConfiguration.logger.warn("near cache prefixes of redis root: {} are matched against serialized keys, "
+                        + "but the key serializer {} does not write strings as UTF-8, no key will be cached, use a string key serializer",
+                        root, keySerializer.getClass().getName());
+                return;
+            }
+        }
+    }
+
+    /**
+     * 创建合并并发命令的模板，序列化器同 {@link #newTemplate(String)}，合并方式由 pipeline 配置指定
+     */
+    public <K, V> CarefreeRedisPipelinedTemplate<K, V> newPipelinedTemplate(String root) {
+        return newPipelinedTemplate(root, newTemplate(root));
+    }
+
+    /**
+     * 创建合并并发命令的字符串模板，序列化器同 {@link #newStringTemplate(String)}
+     */
+    public CarefreeRedisPipelinedTemplate<String, String> newStringPipelinedTemplate(String root) {
+        return newPipelinedTemplate(root, newStringTemplate(root));
+    }
+
+    private <K, V> CarefreeRedisPipelinedTemplate<K, V> newPipelinedTemplate(String root, RedisTemplate<K, V> template) {
+        CarefreeRedisPayload payload = this.payloadHolder.get(root);
+        CarefreeRedisPipelinedTemplate<K, V> pipelinedTemplate = new CarefreeRedisPipelinedTemplate<>(root, template, getConnectionFactory(root),
+                payload != null ? payload.pipelineArchetype : null, this.pipelinedTemplates::remove);
+        this.pipelinedTemplates.add(pipelinedTemplate);
+        return pipelinedTemplate;
+    }
+
     private void setSerializer(RedisTemplate<?, ?> template, String root) {
         if (TempCarefreeAide.isFalse(getEnableDefaultSerializer(root))) {
             template.setEnableDefaultSerializer(false);
@@ -214,6 +354,25 @@ public class CarefreeRedisRegistry {
         }
     }
 
+    /**
+     * 启用压缩时包装模板最终使用的 value 和 hash value 序列化程序，须在 afterPropertiesSet 之后调用，此时默认程序已经确定
+     */
+    private void setCompression(RedisTemplate<?, ?> template, String root) {
+        template.setValueSerializer(compressed(root, template.getValueSerializer()));
+        template.setHashValueSerializer(compressed(root, template.getHashValueSerializer()));
+    }
+
+    private <T> RedisSerializer<T> compressed(String root, RedisSerializer<T> serializer) {
+        CarefreeRedisArchetypeSerializer serializerArchetype = this.serializerHolder.get(root);
+        if (serializer == null || serializer instanceof CarefreeCompressingRedisSerializer
+                || serializerArchetype == null || TempCarefreeAide.isNotTrue(serializerArchetype.getCompression())) {
+            return serializer;
+        }
+        Integer threshold = serializerArchetype.getCompressionThreshold();
+        return new CarefreeCompressingRedisSerializer<>(serializer,
+                TempCarefreeAide.isNotNull(threshold) ? threshold : CarefreeCompressingRedisSerializer.DEFAULT_THRESHOLD);
+    }
+
     private void assertConnectionFactory(LettuceConnectionFactory factory, String root) {
         if (factory == null) {
             throw new IllegalArgumentException("[Carefree] no redis connection factory: " + root);
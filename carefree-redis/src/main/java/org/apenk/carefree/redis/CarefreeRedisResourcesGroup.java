@@ -0,0 +1,150 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree.redis;
+
+import io.lettuce.core.resource.ClientResources;
+import io.netty.util.concurrent.Future;
+import org.apenk.carefree.helper.CarefreeClassDeclaration;
+import org.apenk.carefree.redis.archetype.CarefreeRedisArchetypeResources;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ *     多个 root 共用的一个 Lettuce {@link ClientResources}，按引用计数管理，最后一个 root 的连接工厂关闭时关闭。
+ * </p>
+ * <p>
+ *     ClientResources 由第一个加入分组的 root 的资源配置创建，
+ *     其中声明的 EventLoopGroupProvider、Timer 等实例也随分组一起释放。
+ * </p>
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public final class CarefreeRedisResourcesGroup {
+
+    /** 等待 ClientResources 关闭的最长时间，之后才释放其引用的声明实例 */
+    private static final long SHUTDOWN_AWAIT_SECONDS = 15;
+
+    private final String name;
+    final String key;
+    /** 创建该分组的资源配置的描述，用于发现同一分组中配置不同的 root */
+    final String settings;
+    /** 实际使用的网络传输方式 */
+    private final String transport;
+    private final CarefreeRedisArchetypeResources resourcesArchetype;
+    private final ClientResources clientResources;
+    /** 引用该分组的 root，按加入顺序，由 {@link CarefreeRedisResourcesGroups} 同步访问 */
+    final List<String> roots;
+
+    CarefreeRedisResourcesGroup(String name, String key, String settings, String transport,
+                                CarefreeRedisArchetypeResources resourcesArchetype, ClientResources clientResources) {
+        this.name = name;
+        this.key = key;
+        this.settings = settings;
+        this.transport = transport;
+        this.resourcesArchetype = resourcesArchetype;
+        this.clientResources = clientResources;
+        this.roots = new ArrayList<>();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return 实际使用的网络传输方式：epoll、kqueue 或 nio
+     */
+    public String getTransport() {
+        return transport;
+    }
+
+    public ClientResources getClientResources() {
+        return clientResources;
+    }
+
+    /**
+     * @return 引用该分组的 root
+     */
+    public List<String> getRoots() {
+        synchronized (CarefreeRedisResourcesGroups.getInstance()) {
+            return Collections.unmodifiableList(new ArrayList<>(roots));
+        }
+    }
+
+    public int getReferences() {
+        synchronized (CarefreeRedisResourcesGroups.getInstance()) {
+            return roots.size();
+        }
+    }
+
+    /**
+     * @return I/O 线程数
+     */
+    public int getIoThreadPoolSize() {
+        return clientResources.ioThreadPoolSize();
+    }
+
+    /**
+     * @return 计算线程数
+     */
+    public int getComputationThreadPoolSize() {
+        return clientResources.computationThreadPoolSize();
+    }
+
+    /**
+     * 关闭 ClientResources，若其引用了声明的实例，则等待关闭完成后再释放这些实例
+     */
+    void shutdown() {
+        Future<Boolean> future = clientResources.shutdown();
+        List<CarefreeClassDeclaration> declarations = declarations();
+        if (declarations.isEmpty()) {
+            return;
+        }
+        future.awaitUninterruptibly(SHUTDOWN_AWAIT_SECONDS, TimeUnit.SECONDS);
+        declarations.forEach(CarefreeClassDeclaration::release);
+    }
+
+    private List<CarefreeClassDeclaration> declarations() {
+        List<CarefreeClassDeclaration> declarations = new ArrayList<>();
+        Arrays.asList(
+                resourcesArchetype.getEventLoopGroupProvider(),
+                resourcesArchetype.getEventExecutorGroup(),
+                resourcesArchetype.getTimer(),
+                resourcesArchetype.getEventBus(),
+                resourcesArchetype.getCommandLatencyPublisherOptions(),
+                resourcesArchetype.getCommandLatencyCollectorOptions(),
+                resourcesArchetype.getCommandLatencyCollector(),
+                resourcesArchetype.getDnsResolver(),
+                resourcesArchetype.getReconnectDelay(),
+                resourcesArchetype.getNettyCustomizer(),
+                resourcesArchetype.getTracing()
+        ).stream().filter(Objects::nonNull).forEach(declarations::add);
+        return declarations;
+    }
+
+    @Override
+    public String toString() {
+        return "CarefreeRedisResourcesGroup{name=" + name + ", roots=" + getRoots() + ", transport=" + transport
+                + ", ioThreadPoolSize=" + getIoThreadPoolSize() + ", computationThreadPoolSize=" + getComputationThreadPoolSize() + "}";
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree.redis;
+
+import io.lettuce.core.resource.ClientResources;
+import org.apenk.carefree.helper.CarefreeBindingPlan;
+import org.apenk.carefree.helper.CarefreeClassDeclaration;
+import org.apenk.carefree.helper.TempCarefreeAide;
+import org.apenk.carefree.redis.archetype.CarefreeRedisArchetypeResources;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * <p>
+ *     管理各 root 共用的 {@link CarefreeRedisResourcesGroup}。
+ * </p>
+ * <p>
+ *     指定了 group 的 root 按分组名称共用，否则资源配置相同的 root 共用，
+ *     资源配置按 {@link CarefreeRedisArchetypeResources} 的各属性值（声明则按其各属性值）比较，
+ *     transport 不参与比较：Lettuce 为整个进程选择同一种传输方式，不同的 transport 配置得到的 ClientResources 并无区别。
+ * </p>
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+class CarefreeRedisResourcesGroups {
+
+    private static final CarefreeRedisResourcesGroups INSTANCE = new CarefreeRedisResourcesGroups();
+
+    static CarefreeRedisResourcesGroups getInstance() {
+        return INSTANCE;
+    }
+
+    private final Map<String, CarefreeRedisResourcesGroup> groups;
+    private int autoGroupCounter;
+
+    private CarefreeRedisResourcesGroups() {
+        this.groups = new LinkedHashMap<>();
+    }
+
+    /**
+     * 为 root 获取一个分组并使其引用数加一，分组不存在时使用 creator 按该 root 的资源配置创建 ClientResources
+     */
+    synchronized CarefreeRedisResourcesGroup acquire(String root, CarefreeRedisArchetypeResources resourcesArchetype,
+                                                     Function<CarefreeRedisArchetypeResources, ClientResources> creator) {
+        String settings = describe(resourcesArchetype);
+        String groupName = TempCarefreeAide.trim(resourcesArchetype.getGroup());
+        String key = TempCarefreeAide.isNotBlank(groupName) ? "group:" + groupName : "settings:" + settings;
+
+        CarefreeRedisResourcesGroup group = this.groups.get(key);
+        if (group == null) {
+            String name = TempCarefreeAide.isNotBlank(groupName) ? groupName : "auto-" + (++autoGroupCounter);
+            String transport = CarefreeRedisTransport.resolve(resourcesArchetype.getTransport(), name);
+            group = new CarefreeRedisResourcesGroup(name, key, settings, transport, resourcesArchetype, creator.apply(resourcesArchetype));
+            this.groups.put(key, group);
+        } else if (!group.settings.equals(settings)) {
+            CarefreeRedisAutoConfiguration.logger.warn("redis root: {} joins resources group: {} with different resources settings, settings of root: {} are used",
+                    root, group.getName(), group.roots.isEmpty() ? null : group.roots.get(0));
+        }
+        group.roots.add(root);
+        return group;
+    }
+
+    /**
+     * 释放 root 对分组的引用，最后一个引用释放时关闭分组
+     */
+    void release(CarefreeRedisResourcesGroup group, String root) {
+        synchronized (this) {
+            group.roots.remove(root);
+            if (!group.roots.isEmpty() || !this.groups.remove(group.key, group)) {
+                return;
+            }
+        }
+        group.shutdown();
+    }
+
+    synchronized List<CarefreeRedisResourcesGroup> groups() {
+        return new ArrayList<>(this.groups.values());
+    }
+
+    /**
+     * 将资源配置描述为字符串，除 group、transport 以外的属性都参与比较
+     */
+    private static String describe(Object bean) {
+        StringBuilder builder = new StringBuilder();
+        for (CarefreeBindingPlan.Property property : CarefreeBindingPlan.of(bean.getClass()).getProperties()) {
+            if (!property.isReadable() || (bean instanceof CarefreeRedisArchetypeResources && isIgnored(property.getName()))) {
+                continue;
+            }
+            Object value = property.get(bean);
+            if (value == null) {
+                continue;
+            }
+            builder.append(property.getName()).append('=');
+            if (value instanceof CarefreeClassDeclaration) {
+                builder.append('{').append(describe(value)).append('}');
+            } else if (value instanceof Object[]) {
+                builder.append(Arrays.deepToString((Object[]) value));
+            } else {
+                builder.append(value);
+            }
+            builder.append(';');
+        }
+        return builder.toString();
+    }
+
+    private static boolean isIgnored(String property) {
+        return "group".equals(property) || "transport".equals(property);
+    }
+}
@@ -0,0 +1,471 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree.redis;
+
+import io.lettuce.core.SslOptions;
+
+import javax.net.ssl.*;
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ *     本地缓存的失效跟踪连接：一个独立于连接池的 RESP3 连接，
+ *     以 HELLO 3 切换协议后执行 CLIENT TRACKING ON BCAST [PREFIX ...]，在同一连接上接收 invalidate 推送消息。
+ * </p>
+ * <p>
+ *     所使用的 Lettuce 版本不能解析 RESP3 推送消息（RESP2 的 __redis__:invalidate 频道消息中的 key 数组也会被截断），
+ *     因此这里直接实现所需的最小 RESP3 协议。连接在后台线程中运行，断开后按指数退避重新连接；
+ *     超过一个心跳间隔没有消息时发送 PING，两个间隔都没有响应时视为断开。
+ *     Redis 不支持 HELLO 3 或 CLIENT TRACKING（低于 6.0）时不再重试。
+ * </p>
+ * <p>
+ *     启用 SSL 时与 Lettuce 一样使用 root 的 {@link SslOptions} 中的 keystore 和 truststore，
+ *     verifyPeer 时校验证书链及主机名。
+ * </p>
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+final class CarefreeRedisTrackingConnection implements Closeable {
+
+    private static final long MAXIMUM_BACKOFF_MILLIS = 30000;
+
+    /**
+     * 跟踪状态回调，均在跟踪线程中调用
+     */
+    interface Listener {
+        void connected();
+
+        void disconnected();
+
+        /**
+         * @param keys 被失效的 key，为 null 时表示全部失效（如 FLUSHALL）
+         */
+        void invalidated(List<byte[]> keys);
+
+        void unsupported(String reason);
+    }
+
+    private final String root;
+    private final String host;
+    private final int port;
+    private final String password;
+    private final boolean ssl;
+    private final boolean verifyPeer;
+    private final SslOptions sslOptions;
+    private final int connectTimeout;
+    private final int heartbeatInterval;
+    private final List<String> prefixes;
+    private final Listener listener;
+    private final Thread thread;
+
+    private volatile boolean closed;
+    private volatile Socket socket;
+    /** 首次建立 SSL 连接时创建，只在跟踪线程中访问 */
+    private SSLSocketFactory sslSocketFactory;
+
+    /**
+     * @param sslOptions 可为 null，此时使用 JVM 默认的 keystore 和 truststore
+     */
+    CarefreeRedisTrackingConnection(String root, String host, int port, String password, boolean ssl, boolean verifyPeer, SslOptions sslOptions,
+                                    int connectTimeout, int heartbeatInterval, List<String> prefixes, Listener listener) {
+        this.root = root;
+        this.host = host;
+        this.port = port;
+        this.password = password;
+        this.ssl = ssl;
+        this.verifyPeer = verifyPeer;
+        this.sslOptions = sslOptions;
+        this.connectTimeout = connectTimeout;
+        this.heartbeatInterval = heartbeatInterval;
+        this.prefixes = prefixes;
+        this.listener = listener;
+        this.thread = new Thread(this::run, "carefree-redis-tracking-" + root);
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        this.thread.start();
+    }
+
+    @Override
+    public void close() {
+        this.closed = true;
+        Socket socket = this.socket;
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // 关闭时忽略
+            }
+        }
+        this.thread.interrupt();
+    }
+
+    private void run() {
+        long backoff = 1000;
+        while (!closed) {
+            boolean connected = false;
+            try (Socket socket = connect()) {
+                this.socket = socket;
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+
+                if (!handshake(in, out)) {
+                    return;
+                }
+                connected = true;
+                backoff = 1000;
+                listener.connected();
+                receive(in, out);
+            } catch (IOException | RuntimeException e) {
+                if (!closed) {
+                    CarefreeRedisAutoConfiguration.logger.warn("near cache tracking connection of redis root: {} is broken, reconnect in {} ms, {}",
+                            root, backoff, e.toString());
+                }
+            } finally {
+                this.socket = null;
+                if (connected) {
+                    listener.disconnected();
+                }
+            }
+
+            if (!closed) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(backoff);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                backoff = Math.min(backoff * 2, MAXIMUM_BACKOFF_MILLIS);
+            }
+        }
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+            socket.connect(new InetSocketAddress(host, port), connectTimeout);
+            if (ssl) {
+                socket = startTls(socket);
+            }
+            socket.setSoTimeout(heartbeatInterval);
+            return socket;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 在已建立的连接上完成 SSL 握手，verifyPeer 时按 HTTPS 规则校验主机名
+     */
+    private Socket startTls(Socket plain) throws IOException {
+        if (sslSocketFactory == null) {
+            sslSocketFactory = createSslSocketFactory();
+        }
+        SSLSocket socket = (SSLSocket) sslSocketFactory.createSocket(plain, host, port, true);
+        try {
+            if (verifyPeer) {
+                SSLParameters parameters = socket.getSSLParameters();
+                parameters.setEndpointIdentificationAlgorithm("HTTPS");
+                socket.setSSLParameters(parameters);
+            }
+            socket.setSoTimeout(connectTimeout);
+            socket.startHandshake();
+            return socket;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 切换到 RESP3 并开启 BCAST 模式的失效跟踪
+     *
+     * @return Redis 不支持时返回 false
+     */
+    private boolean handshake(InputStream in, OutputStream out) throws IOException {
+        List<String> hello = new ArrayList<>();
+        hello.add("HELLO");
+        hello.add("3");
+        if (password != null) {
+            hello.add("AUTH");
+            hello.add("default");
+            hello.add(password);
+        }
+        write(out, hello);
+        Object reply = read(in);
+        if (reply instanceof Error) {
+            String message = ((Error) reply).getMessage();
+            if (message.startsWith("ERR") || message.startsWith("NOPROTO")) {
+                listener.unsupported("redis server does not support RESP3 (" + message + ")");
+                return false;
+            }
+            throw new IOException("HELLO failed: " + message);
+        }
+
+        List<String> tracking = new ArrayList<>();
+        tracking.add("CLIENT");
+        tracking.add("TRACKING");
+        tracking.add("ON");
+        tracking.add("BCAST");
+        for (String prefix : prefixes) {
+            tracking.add("PREFIX");
+            tracking.add(prefix);
+        }
+        write(out, tracking);
+        reply = read(in);
+        if (reply instanceof Error) {
+            listener.unsupported("redis server does not support client tracking (" + ((Error) reply).getMessage() + ")");
+            return false;
+        }
+        return true;
+    }
+
+    private void receive(InputStream in, OutputStream out) throws IOException {
+        boolean awaitingPong = false;
+        while (!closed) {
+            int type;
+            try {
+                type = in.read();
+            } catch (SocketTimeoutException e) {
+                if (awaitingPong) {
+                    throw new IOException("no heartbeat reply in " + heartbeatInterval * 2 + " ms");
+                }
+                write(out, java.util.Collections.singletonList("PING"));
+                awaitingPong = true;
+                continue;
+            }
+            if (type == -1) {
+                throw new EOFException("connection closed by server");
+            }
+            awaitingPong = false;
+            Object frame = read(in, type);
+            if (frame instanceof Push) {
+                onPush(((Push) frame).elements);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void onPush(List<Object> elements) {
+        if (elements.size() < 2 || !"invalidate".equals(text(elements.get(0)))) {
+            return;
+        }
+        Object keys = elements.get(1);
+        if (keys == null) {
+            listener.invalidated(null);
+        } else if (keys instanceof List) {
+            List<byte[]> invalidated = new ArrayList<>();
+            for (Object key : (List<Object>) keys) {
+                if (key instanceof byte[]) {
+                    invalidated.add((byte[]) key);
+                }
+            }
+            listener.invalidated(invalidated);
+        }
+    }
+
+    // ---------- RESP ----------
+
+    private static void write(OutputStream out, List<String> args) throws IOException {
+        StringBuilder header = new StringBuilder();
+        out.write(("*" + args.size() + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        for (String arg : args) {
+            byte[] bytes = arg.getBytes(StandardCharsets.UTF_8);
+            header.setLength(0);
+            header.append('$').append(bytes.length).append("\r\n");
+            out.write(header.toString().getBytes(StandardCharsets.US_ASCII));
+            out.write(bytes);
+            out.write('\r');
+            out.write('\n');
+        }
+        out.flush();
+    }
+
+    private static Object read(InputStream in) throws IOException {
+        int type = in.read();
+        if (type == -1) {
+            throw new EOFException("connection closed by server");
+        }
+        return read(in, type);
+    }
+
+    /**
+     * 读取一个 RESP3 值：简单字符串、数字、布尔等返回字符串或数字，批量字符串返回 byte[]，
+     * 数组、集合、映射（按键值交替）返回 List，推送返回 {@link Push}，错误返回 {@link Error}，null 返回 null
+     */
+    private static Object read(InputStream in, int type) throws IOException {
+        switch (type) {
+            case '+':
+            case ',':
+            case '(':
+                return line(in);
+            case '-':
+                return new Error(line(in));
+            case ':':
+                return Long.parseLong(line(in));
+            case '#':
+                return "t".equals(line(in));
+            case '_':
+                line(in);
+                return null;
+            case '$':
+            case '=':
+            case '!': {
+                int length = Integer.parseInt(line(in));
+                if (length < 0) {
+                    return null;
+                }
+                byte[] bytes = new byte[length];
+                int offset = 0;
+                while (offset < length) {
+                    int count = in.read(bytes, offset, length - offset);
+                    if (count < 0) {
+                        throw new EOFException("connection closed by server");
+                    }
+                    offset += count;
+                }
+                line(in);
+                return type == '!' ? new Error(new String(bytes, StandardCharsets.UTF_8)) : bytes;
+            }
+            case '*':
+            case '~':
+            case '>':
+            case '%':
+            case '|': {
+                int count = Integer.parseInt(line(in));
+                if (count < 0) {
+                    return null;
+                }
+                if (type == '%' || type == '|') {
+                    count *= 2;
+                }
+                List<Object> elements = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    elements.add(read(in));
+                }
+                if (type == '|') {
+                    // 属性附加在下一个值之前，忽略
+                    return read(in);
+                }
+                return type == '>' ? new Push(elements) : elements;
+            }
+            default:
+                throw new IOException("unexpected RESP type: " + (char) type);
+        }
+    }
+
+    private static String line(InputStream in) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\r') {
+            if (c == -1) {
+                throw new EOFException("connection closed by server");
+            }
+            builder.append((char) c);
+        }
+        if (in.read() != '\n') {
+            throw new IOException("malformed RESP line");
+        }
+        return builder.toString();
+    }
+
+    private static String text(Object value) {
+        return value instanceof byte[] ? new String((byte[]) value, StandardCharsets.UTF_8) : String.valueOf(value);
+    }
+
+    private SSLSocketFactory createSslSocketFactory() throws IOException {
+        try {
+            KeyManager[] keyManagers = null;
+            TrustManager[] trustManagers = null;
+            if (sslOptions != null && sslOptions.getKeystore() != null) {
+                char[] password = sslOptions.getKeystorePassword();
+                KeyManagerFactory factory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+                factory.init(loadKeyStore(sslOptions.getKeystore(), password), password);
+                keyManagers = factory.getKeyManagers();
+            }
+            if (!verifyPeer) {
+                trustManagers = new TrustManager[] {new X509TrustManager() {
+                    @Override
+                    public void checkClientTrusted(X509Certificate[] chain, String authType) {
+                    }
+
+                    @Override
+                    public void checkServerTrusted(X509Certificate[] chain, String authType) {
+                    }
+
+                    @Override
+                    public X509Certificate[] getAcceptedIssuers() {
+                        return new X509Certificate[0];
+                    }
+                }};
+            } else if (sslOptions != null && sslOptions.getTruststore() != null) {
+                TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+                factory.init(loadKeyStore(sslOptions.getTruststore(), sslOptions.getTruststorePassword()));
+                trustManagers = factory.getTrustManagers();
+            }
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(keyManagers, trustManagers, null);
+            return context.getSocketFactory();
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("error to create ssl context", e);
+        }
+    }
+
+    private static KeyStore loadKeyStore(URL url, char[] password) throws Exception {
+        KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+        try (InputStream in = url.openStream()) {
+            keyStore.load(in, password != null && password.length > 0 ? password : null);
+        }
+        return keyStore;
+    }
+
+    private static final class Push {
+        private final List<Object> elements;
+
+        Push(List<Object> elements) {
+            this.elements = elements;
+        }
+    }
+
+    private static final class Error {
+        private final String message;
+
+        Error(String message) {
+            this.message = message;
+        }
+
+        String getMessage() {
+            return message;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree.redis;
+
+import io.lettuce.core.EpollProvider;
+import io.lettuce.core.KqueueProvider;
+import org.apenk.carefree.helper.TempCarefreeAide;
+
+/**
+ * <p>
+ *     解析 Redis 客户端使用的网络传输方式：epoll、io_uring、kqueue、nio，或 auto（默认，选择可用的原生传输方式，否则为 nio）。
+ * </p>
+ * <p>
+ *     Lettuce 5.2 在进程范围内选择传输方式：只要原生库可用（且未通过 io.lettuce.core.epoll / io.lettuce.core.kqueue 系统属性禁用）就使用原生传输方式，
+ *     并且不支持 io_uring，因此这里根据运行时实际可用的传输方式回退，并记录最终使用的传输方式：
+ *     <ul>
+ *         <li>epoll、kqueue 不可用时回退到可用的传输方式，通常为 nio；</li>
+ *         <li>io_uring 回退到 epoll（若可用）或 nio；</li>
+ *         <li>原生传输方式可用时无法为单个 root 选择 nio，需要通过 -Dio.lettuce.core.epoll=false 在进程范围内禁用。</li>
+ *     </ul>
+ * </p>
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+final class CarefreeRedisTransport {
+    static final String AUTO = "auto";
+    static final String EPOLL = "epoll";
+    static final String IO_URING = "io_uring";
+    static final String KQUEUE = "kqueue";
+    static final String NIO = "nio";
+
+    private CarefreeRedisTransport() {
+    }
+
+    /**
+     * @return 当前进程中 Lettuce 实际使用的传输方式
+     */
+    static String available() {
+        if (EpollProvider.isAvailable()) {
+            return EPOLL;
+        }
+        if (KqueueProvider.isAvailable()) {
+            return KQUEUE;
+        }
+        return NIO;
+    }
+
+    /**
+     * 解析 group 所要求的传输方式，返回实际使用的传输方式，无法满足时记录警告
+     *
+     * @param requested 可为 null，表示 auto
+     */
+    static String resolve(String requested, String group) {
+        String transport = TempCarefreeAide.isBlank(requested) ? AUTO : TempCarefreeAide.trim(requested).toLowerCase().replace('-', '_');
+        String available = available();
+
+        switch (transport) {
+            case AUTO:
+                break;
+            case EPOLL:
+            case KQUEUE:
+                if (!transport.equals(available)) {
+                    CarefreeRedisAutoConfiguration.logger.warn("{} transport is not available for redis resources group: {}, falls back to {}. "
+                            + "native transports need the netty-transport-native-{} library of the current platform and must not be disabled by -Dio.lettuce.core.{}=false",
+                            transport, group, available, transport, transport);
+                }
+                break;
+            case IO_URING:
+                CarefreeRedisAutoConfiguration.logger.warn("io_uring transport is not supported by the lettuce client in use, redis resources group: {} falls back to {}",
+                        group, available);
+                break;
+            case NIO:
+                if (!NIO.equals(available)) {
+                    CarefreeRedisAutoConfiguration.logger.warn("nio transport can not be selected for redis resources group: {} while {} is available, "
+                            + "lettuce selects the transport for the whole process, disable it by -Dio.lettuce.core.{}=false", group, available, available);
+                }
+                break;
+            default:
+                CarefreeRedisAutoConfiguration.logger.warn("unknown transport: {} for redis resources group: {}, expected one of auto, epoll, io_uring, kqueue, nio, uses {}",
+                        requested, group, available);
+        }
+
+        CarefreeRedisAutoConfiguration.logger.info("redis resources group: {} uses {} transport", group, available);
+        return available;
+    }
+}
@@ -17,6 +17,7 @@
 package org.apenk.carefree.redis.archetype;
 
 import org.apenk.carefree.archetype.CarefreeArchetype;
+import org.apenk.carefree.helper.CarefreeBindable;
 
 import java.util.Set;
 
@@ -38,6 +39,7 @@ import java.util.Set;
  * @author Kweny
  * @since 0.0.1
  */
+@CarefreeBindable
 public class CarefreeRedisArchetype extends CarefreeArchetype {
     /**
      * Redis 服务高可用及连接方式
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree.redis.archetype;
+
+import org.apenk.carefree.helper.CarefreeBindable;
+
+import java.util.List;
+
+/**
+ * <p>客户端本地缓存（near cache）描述。</p>
+ *
+ * <p>
+ *     启用后可以通过 CarefreeRedisRegistry#newCachingTemplate(root) 创建带本地缓存的模板，
+ *     读取的值缓存在本地，由 Redis 6 的 CLIENT TRACKING（BCAST 模式，RESP3 推送）在 key 被修改时失效。
+ *     失效跟踪只支持 Standalone 模式，跟踪连接断开期间不使用本地缓存，重新连接后清空缓存。
+ * </p>
+ *
+ * <p>
+ *     参考：
+ *     <a href="https://redis.io/topics/client-side-caching">https://redis.io/topics/client-side-caching</a>
+ * </p>
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+@CarefreeBindable
+public class CarefreeRedisArchetypeNearCache {
+    /**
+     * 是否启用本地缓存，默认 false
+     */
+    private Boolean enabled;
+    /**
+     * 最大缓存条目数，默认 10000
+     */
+    private Long maximumSize;
+    /**
+     * 最大缓存权重（字节数，按 key 与 value 序列化后的长度计算），默认不限制
+     */
+    private Long maximumWeight;
+    /**
+     * 缓存条目写入后的存活时间（毫秒），默认不过期，完全依赖失效跟踪。
+     * 若失效跟踪不可用（Redis 版本低于 6 或非 Standalone 模式），则只有设置了该项时才使用本地缓存
+     */
+    private Long expireAfterWrite;
+    /**
+     * 只跟踪并缓存这些前缀的 key（BCAST 模式的 PREFIX），默认所有 key。
+     * 前缀按 UTF-8 编码后与序列化后的 key 比较，因此 key 序列化程序须按 UTF-8 写出字符串（如 string），JDK 序列化的 key 不会匹配
+     */
+    private List<String> prefixes;
+    /**
+     * 是否缓存不存在的 key，默认 true
+     */
+    private Boolean cacheNulls;
+    /**
+     * 失效跟踪连接的心跳间隔（毫秒），超过两个间隔没有响应时重新连接，默认 30000
+     */
+    private Long heartbeatInterval;
+
+    public Boolean getEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(Boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Long getMaximumSize() {
+        return maximumSize;
+    }
+
+    public void setMaximumSize(Long maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+
+    public Long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    public void setMaximumWeight(Long maximumWeight) {
+        this.maximumWeight = maximumWeight;
+    }
+
+    public Long getExpireAfterWrite() {
+        return expireAfterWrite;
+    }
+
+    public void setExpireAfterWrite(Long expireAfterWrite) {
+        this.expireAfterWrite = expireAfterWrite;
+    }
+
+    public List<String> getPrefixes() {
+        return prefixes;
+    }
+
+    public void setPrefixes(List<String> prefixes) {
+        this.prefixes = prefixes;
+    }
+
+    public Boolean getCacheNulls() {
+        return cacheNulls;
+    }
+
+    public void setCacheNulls(Boolean cacheNulls) {
+        this.cacheNulls = cacheNulls;
+    }
+
+    public Long getHeartbeatInterval() {
+        return heartbeatInterval;
+    }
+
+    public void setHeartbeatInterval(Long heartbeatInterval) {
+        this.heartbeatInterval = heartbeatInterval;
+    }
+}
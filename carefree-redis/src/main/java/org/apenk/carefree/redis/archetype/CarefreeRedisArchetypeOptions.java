@@ -16,6 +16,7 @@
 
 package org.apenk.carefree.redis.archetype;
 
+import org.apenk.carefree.helper.CarefreeBindable;
 import org.apenk.carefree.helper.CarefreeClassDeclaration;
 
 import java.util.Set;
@@ -35,6 +36,7 @@ import java.util.Set;
  * @author Kweny
  * @since 0.0.1
  */
+@CarefreeBindable
 public class CarefreeRedisArchetypeOptions {
     // ----- ClientOptions
     /**
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree.redis.archetype;
+
+import org.apenk.carefree.helper.CarefreeBindable;
+
+/**
+ * <p>命令合并（pipelined template）描述。</p>
+ *
+ * <p>
+ *     CarefreeRedisRegistry#newPipelinedTemplate(root) 创建的模板将多个线程并发提交的命令放入队列，
+ *     由一个后台线程按批取出，每批一次写入连接，各命令的结果通过各自的 future 返回。
+ * </p>
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+@CarefreeBindable
+public class CarefreeRedisArchetypePipeline {
+    /**
+     * 每批最多合并的命令数，默认 128
+     */
+    private Integer maxBatchSize;
+    /**
+     * 等待凑满一批的最长时间（微秒），默认 0，即不等待，取出队列中已有的命令后立即写入。
+     * 设置后可以在并发较低时合并更多命令，代价是相应增加的延迟
+     */
+    private Long flushInterval;
+    /**
+     * 等待写入的命令队列容量，队列已满时提交命令的线程将阻塞，默认 16384
+     */
+    private Integer queueCapacity;
+
+    public Integer getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public void setMaxBatchSize(Integer maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public Long getFlushInterval() {
+        return flushInterval;
+    }
+
+    public void setFlushInterval(Long flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    public Integer getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(Integer queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+}
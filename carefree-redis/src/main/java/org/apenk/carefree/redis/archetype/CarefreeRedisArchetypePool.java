@@ -16,6 +16,8 @@
 
 package org.apenk.carefree.redis.archetype;
 
+import org.apenk.carefree.helper.CarefreeBindable;
+
 /**
  * <p>Redis 连接池描述。</p>
  *
@@ -24,6 +26,7 @@ package org.apenk.carefree.redis.archetype;
  * @author Kweny
  * @since 0.0.1
  */
+@CarefreeBindable
 public class CarefreeRedisArchetypePool {
     /**
      * 池中可分配的最大连接数，
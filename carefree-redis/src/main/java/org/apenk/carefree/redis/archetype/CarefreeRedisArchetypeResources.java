@@ -16,6 +16,7 @@
 
 package org.apenk.carefree.redis.archetype;
 
+import org.apenk.carefree.helper.CarefreeBindable;
 import org.apenk.carefree.helper.CarefreeClassDeclaration;
 
 /**
@@ -33,7 +34,22 @@ import org.apenk.carefree.helper.CarefreeClassDeclaration;
  * @author Kweny
  * @since 0.0.1
  */
+@CarefreeBindable
 public class CarefreeRedisArchetypeResources {
+    /**
+     * 共享 ClientResources 的分组名称。
+     * 同一分组的 root 共用一个 ClientResources（及其 I/O、计算线程池），使用第一个加入该分组的 root 的资源配置；
+     * 未指定时，资源配置相同（包括未配置任何资源选项）的 root 共用一个 ClientResources。
+     * 若某个 root 需要独立的 ClientResources，可以为其指定一个不与其他 root 相同的分组名称。
+     */
+    private String group;
+    /**
+     * 网络传输方式：auto（默认）、epoll、io_uring、kqueue、nio。
+     * 指定的传输方式不可用时回退到可用的传输方式（原生传输方式需要相应平台的 netty-transport-native-* 库），
+     * 最终使用的传输方式会记录在日志中，也可以通过 CarefreeRedisResourcesGroup#getTransport() 获取。
+     * 注意所使用的 Lettuce 版本在进程范围内选择传输方式且不支持 io_uring，参见 CarefreeRedisTransport。
+     */
+    private String transport;
     /**
      * 用于 I/O 操作的线程池大小，默认为可用 CPU 数量，必须大于 0
      */
@@ -48,7 +64,8 @@ public class CarefreeRedisArchetypeResources {
      * 可以在 RedisClient 和 RedisClusterClient 的不同实例之间使用的共享事件执行程序提供者。
      * 如果要对线程池进行总体控制，或者要重用已经构建好的 Netty 框架，则可以配置该项。
      * 这是一个高级配置，请在清楚自己意图的情况下使用。
-     * 客户端资源关闭时不会释放 EventLoopGroupProvider 实例，若不再需要则应手动释放。
+     * 客户端资源关闭时不会释放 EventLoopGroupProvider 实例，可以通过 shared 在多个 root 之间共享，
+     * 并通过 destroyMethod 在最后一个引用释放时（应用关闭时）关闭，参见 {@link CarefreeClassDeclaration}。
      */
     private CarefreeClassDeclaration eventLoopGroupProvider;
 
@@ -56,7 +73,8 @@ public class CarefreeRedisArchetypeResources {
      * {@link io.netty.util.concurrent.EventExecutorGroup} 接口的实现类的构造描述符。
      * 如果要对线程池进行总体控制，或者要重用已经构建好的 Netty 框架，则可以配置该项。
      * 这是一个高级配置，请在清楚自己意图的情况下使用。
-     * 客户端资源关闭时不会释放 EventExecutorGroup 实例，若不再需要则应手动释放。
+     * 客户端资源关闭时不会释放 EventExecutorGroup 实例，可以通过 shared 在多个 root 之间共享，
+     * 并通过 destroyMethod 在最后一个引用释放时（应用关闭时）关闭，参见 {@link CarefreeClassDeclaration}。
      */
     private CarefreeClassDeclaration eventExecutorGroup;
 
@@ -64,7 +82,8 @@ public class CarefreeRedisArchetypeResources {
      * {@link io.netty.util.Timer} 接口的实现类的构造描述符。
      * 可以在 RedisClient 和 RedisClusterClient 的不同实例之间使用的共享 Timer。
      * 这是一个高级配置，请在清楚自己意图的情况下使用。
-     * 客户端资源关闭时不会释放 Timer 实例，若不再需要则应手动释放。
+     * 客户端资源关闭时不会释放 Timer 实例，可以通过 shared 在多个 root 之间共享，
+     * 并通过 destroyMethod 在最后一个引用释放时（应用关闭时）关闭，参见 {@link CarefreeClassDeclaration}。
      */
     private CarefreeClassDeclaration timer;
 
@@ -116,6 +135,22 @@ public class CarefreeRedisArchetypeResources {
      */
     private CarefreeClassDeclaration tracing;
 
+    public String getGroup() {
+        return group;
+    }
+
+    public void setGroup(String group) {
+        this.group = group;
+    }
+
+    public String getTransport() {
+        return transport;
+    }
+
+    public void setTransport(String transport) {
+        this.transport = transport;
+    }
+
     public Integer getIoThreadPoolSize() {
         return ioThreadPoolSize;
     }
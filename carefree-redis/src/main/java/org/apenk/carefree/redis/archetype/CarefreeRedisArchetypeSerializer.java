@@ -16,16 +16,22 @@
 
 package org.apenk.carefree.redis.archetype;
 
+import org.apenk.carefree.helper.CarefreeBindable;
 import org.apenk.carefree.helper.CarefreeClassDeclaration;
 
 /**
  * <p>
  *     描述 Redis 读写使用的序列化程序。
  * </p>
+ * <p>
+ *     各序列化程序除了类声明外，还可以用内置序列化程序的简称指定，如 value-serializer = binary，
+ *     可用的简称见 {@link org.apenk.carefree.redis.serializer.CarefreeRedisSerializers}。
+ * </p>
  *
  * @author Kweny
  * @since 0.0.1
  */
+@CarefreeBindable
 public class CarefreeRedisArchetypeSerializer {
     /**
      * 是否使用默认的序列化程序，如果不使用，则任何未明确设置的序列化程序都将保持为空，并且不会对值进行序列化和反序列化，
@@ -62,6 +68,15 @@ public class CarefreeRedisArchetypeSerializer {
      * 默认根据 {@link #enableDefaultSerializer} 和 {@link #defaultSerializer} 确定
      */
     private CarefreeClassDeclaration hashValueSerializer;
+    /**
+     * 是否压缩 value 和 hash value（包装最终使用的序列化程序，达到阈值的结果以 LZF 压缩），默认 false，
+     * 见 {@link org.apenk.carefree.redis.serializer.CarefreeCompressingRedisSerializer}
+     */
+    private Boolean compression;
+    /**
+     * 压缩阈值（字节），序列化结果达到该长度时才压缩，默认 1024
+     */
+    private Integer compressionThreshold;
 
     public Boolean getEnableDefaultSerializer() {
         return enableDefaultSerializer;
@@ -118,4 +133,20 @@ public class CarefreeRedisArchetypeSerializer {
     public void setHashValueSerializer(CarefreeClassDeclaration hashValueSerializer) {
         this.hashValueSerializer = hashValueSerializer;
     }
+
+    public Boolean getCompression() {
+        return compression;
+    }
+
+    public void setCompression(Boolean compression) {
+        this.compression = compression;
+    }
+
+    public Integer getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    public void setCompressionThreshold(Integer compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
 }
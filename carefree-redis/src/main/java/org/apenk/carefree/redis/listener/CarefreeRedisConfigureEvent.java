@@ -36,6 +36,8 @@ public class CarefreeRedisConfigureEvent {
     private CarefreeRedisArchetypeResources resourcesArchetype;
     private CarefreeRedisArchetypeOptions optionsArchetype;
     private CarefreeRedisArchetypeSerializer serializerArchetype;
+    private CarefreeRedisArchetypeNearCache nearCacheArchetype;
+    private CarefreeRedisArchetypePipeline pipelineArchetype;
 
     private LettuceClientConfiguration clientConfiguration;
     private RedisConfiguration redisConfiguration;
@@ -98,6 +100,22 @@ public class CarefreeRedisConfigureEvent {
         this.serializerArchetype = serializerArchetype;
     }
 
+    public CarefreeRedisArchetypeNearCache getNearCacheArchetype() {
+        return nearCacheArchetype;
+    }
+
+    public void setNearCacheArchetype(CarefreeRedisArchetypeNearCache nearCacheArchetype) {
+        this.nearCacheArchetype = nearCacheArchetype;
+    }
+
+    public CarefreeRedisArchetypePipeline getPipelineArchetype() {
+        return pipelineArchetype;
+    }
+
+    public void setPipelineArchetype(CarefreeRedisArchetypePipeline pipelineArchetype) {
+        this.pipelineArchetype = pipelineArchetype;
+    }
+
     public LettuceClientConfiguration getClientConfiguration() {
         return clientConfiguration;
     }
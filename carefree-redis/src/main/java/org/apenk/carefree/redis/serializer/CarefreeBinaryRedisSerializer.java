@@ -0,0 +1,295 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree.redis.serializer;
+
+import org.springframework.core.serializer.support.DeserializingConverter;
+import org.springframework.core.serializer.support.SerializingConverter;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+
+/**
+ * <p>
+ *     无需 schema 的紧凑二进制序列化程序，可在序列化配置中以 binary 指定，用于替代默认的 JDK 序列化。
+ * </p>
+ * <p>
+ *     每个值以一个类型标记开头：整数为 zigzag varint，浮点数为定长 IEEE 754，字符串和字节数组为长度前缀加内容，
+ *     List、Set、Map 为元素个数加各元素（分别还原为 ArrayList、LinkedHashSet、LinkedHashMap），
+ *     另支持其他基本类型的包装类及 BigDecimal、BigInteger、Date。
+ *     类型按 {@link Object#getClass()} 直接判断，不使用反射；
+ *     其他类型（包括 SortedSet、SortedMap 和自定义类）以 JDK 序列化写入，因此仍须实现 {@link java.io.Serializable}。
+ *     List、Set、Map 最多嵌套 {@link #MAX_DEPTH} 层，超出时（如集合包含自身）抛出 {@link SerializationException}。
+ * </p>
+ * <p>
+ *     反序列化时可以识别 JDK 序列化的数据（以 0xACED 开头），因此可以直接替换已在使用的 JDK 序列化程序，
+ *     旧数据仍然可读，被重新写入后即为新格式。
+ * </p>
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public class CarefreeBinaryRedisSerializer implements RedisSerializer<Object> {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private static final int NULL = 0x00;
+    private static final int TRUE = 0x01;
+    private static final int FALSE = 0x02;
+    private static final int INT = 0x03;
+    private static final int LONG = 0x04;
+    private static final int DOUBLE = 0x05;
+    private static final int FLOAT = 0x06;
+    private static final int STRING = 0x07;
+    private static final int BYTES = 0x08;
+    private static final int LIST = 0x09;
+    private static final int SET = 0x0A;
+    private static final int MAP = 0x0B;
+    private static final int SHORT = 0x0C;
+    private static final int BYTE = 0x0D;
+    private static final int CHAR = 0x0E;
+    private static final int BIG_DECIMAL = 0x0F;
+    private static final int BIG_INTEGER = 0x10;
+    private static final int DATE = 0x11;
+    private static final int JAVA = 0x12;
+
+    /** List、Set、Map 的最大嵌套层数，以免包含自身的集合或恶意构造的数据递归到栈溢出 */
+    static final int MAX_DEPTH = 256;
+
+    /** JDK 序列化流的第一个字节（STREAM_MAGIC 0xACED） */
+    private static final int JAVA_STREAM_MAGIC = 0xAC;
+
+    private final SerializingConverter serializer;
+    private final DeserializingConverter deserializer;
+
+    public CarefreeBinaryRedisSerializer() {
+        this(null);
+    }
+
+    /**
+     * @param classLoader JDK 序列化的对象反序列化时使用的类加载器，为 null 时使用默认类加载器
+     */
+    public CarefreeBinaryRedisSerializer(ClassLoader classLoader) {
+        this.serializer = new SerializingConverter();
+        this.deserializer = classLoader != null ? new DeserializingConverter(classLoader) : new DeserializingConverter();
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value == null) {
+            return EMPTY;
+        }
+        CarefreeSerializerBuffer buffer = CarefreeSerializerBuffer.acquire();
+        try {
+            write(buffer, value, 0);
+            return buffer.toByteArray();
+        } catch (SerializationException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new SerializationException("[Carefree] cannot serialize " + value.getClass().getName(), e);
+        } finally {
+            buffer.release();
+        }
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if ((bytes[0] & 0xFF) == JAVA_STREAM_MAGIC) {
+            return readJava(bytes);
+        }
+        try {
+            CarefreeSerializerBuffer.Reader reader = new CarefreeSerializerBuffer.Reader(bytes, 0);
+            Object value = read(reader, 0);
+            if (reader.position != bytes.length) {
+                throw new SerializationException("[Carefree] " + (bytes.length - reader.position) + " trailing bytes after serialized value");
+            }
+            return value;
+        } catch (SerializationException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new SerializationException("[Carefree] cannot deserialize binary value", e);
+        }
+    }
+
+    private void write(CarefreeSerializerBuffer buffer, Object value, int depth) {
+        if (value == null) {
+            buffer.write(NULL);
+            return;
+        }
+        Class<?> type = value.getClass();
+        if (type == String.class) {
+            buffer.write(STRING);
+            buffer.writeString((String) value);
+        } else if (type == Integer.class) {
+            buffer.write(INT);
+            buffer.writeSignedVarLong((Integer) value);
+        } else if (type == Long.class) {
+            buffer.write(LONG);
+            buffer.writeSignedVarLong((Long) value);
+        } else if (type == Boolean.class) {
+            buffer.write((Boolean) value ? TRUE : FALSE);
+        } else if (type == Double.class) {
+            buffer.write(DOUBLE);
+            buffer.writeFixedLong(Double.doubleToRawLongBits((Double) value));
+        } else if (type == byte[].class) {
+            byte[] bytes = (byte[]) value;
+            buffer.write(BYTES);
+            buffer.writeVarInt(bytes.length);
+            buffer.write(bytes, 0, bytes.length);
+        } else if (value instanceof List) {
+            checkDepth(depth);
+            List<?> list = (List<?>) value;
+            buffer.write(LIST);
+            buffer.writeVarInt(list.size());
+            for (Object element : list) {
+                write(buffer, element, depth + 1);
+            }
+        } else if (value instanceof Set && !(value instanceof SortedSet)) {
+            checkDepth(depth);
+            Set<?> set = (Set<?>) value;
+            buffer.write(SET);
+            buffer.writeVarInt(set.size());
+            for (Object element : set) {
+                write(buffer, element, depth + 1);
+            }
+        } else if (value instanceof Map && !(value instanceof SortedMap)) {
+            checkDepth(depth);
+            Map<?, ?> map = (Map<?, ?>) value;
+            buffer.write(MAP);
+            buffer.writeVarInt(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                write(buffer, entry.getKey(), depth + 1);
+                write(buffer, entry.getValue(), depth + 1);
+            }
+        } else if (type == Float.class) {
+            buffer.write(FLOAT);
+            buffer.writeFixedInt(Float.floatToRawIntBits((Float) value));
+        } else if (type == Short.class) {
+            buffer.write(SHORT);
+            buffer.writeSignedVarLong((Short) value);
+        } else if (type == Byte.class) {
+            buffer.write(BYTE);
+            buffer.write((Byte) value);
+        } else if (type == Character.class) {
+            buffer.write(CHAR);
+            buffer.writeVarInt((Character) value);
+        } else if (type == BigDecimal.class) {
+            buffer.write(BIG_DECIMAL);
+            buffer.writeString(value.toString());
+        } else if (type == BigInteger.class) {
+            byte[] bytes = ((BigInteger) value).toByteArray();
+            buffer.write(BIG_INTEGER);
+            buffer.writeVarInt(bytes.length);
+            buffer.write(bytes, 0, bytes.length);
+        } else if (type == Date.class) {
+            buffer.write(DATE);
+            buffer.writeSignedVarLong(((Date) value).getTime());
+        } else {
+            byte[] bytes = serializer.convert(value);
+            buffer.write(JAVA);
+            buffer.writeVarInt(bytes.length);
+            buffer.write(bytes, 0, bytes.length);
+        }
+    }
+
+    private Object read(CarefreeSerializerBuffer.Reader reader, int depth) {
+        int tag = reader.read();
+        switch (tag) {
+            case NULL:
+                return null;
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case INT:
+                return (int) reader.readSignedVarLong();
+            case LONG:
+                return reader.readSignedVarLong();
+            case DOUBLE:
+                return Double.longBitsToDouble(reader.readFixedLong());
+            case FLOAT:
+                return Float.intBitsToFloat(reader.readFixedInt());
+            case STRING:
+                return reader.readString();
+            case BYTES:
+                return reader.read(reader.readLength());
+            case LIST: {
+                checkDepth(depth);
+                int size = reader.readLength();
+                List<Object> list = new ArrayList<>(Math.min(size, 1024));
+                for (int i = 0; i < size; i++) {
+                    list.add(read(reader, depth + 1));
+                }
+                return list;
+            }
+            case SET: {
+                checkDepth(depth);
+                int size = reader.readLength();
+                Set<Object> set = new LinkedHashSet<>(Math.min(size, 1024) * 4 / 3 + 1);
+                for (int i = 0; i < size; i++) {
+                    set.add(read(reader, depth + 1));
+                }
+                return set;
+            }
+            case MAP: {
+                checkDepth(depth);
+                int size = reader.readLength();
+                Map<Object, Object> map = new LinkedHashMap<>(Math.min(size, 1024) * 4 / 3 + 1);
+                for (int i = 0; i < size; i++) {
+                    Object key = read(reader, depth + 1);
+                    map.put(key, read(reader, depth + 1));
+                }
+                return map;
+            }
+            case SHORT:
+                return (short) reader.readSignedVarLong();
+            case BYTE:
+                return (byte) reader.read();
+            case CHAR:
+                return (char) reader.readVarInt();
+            case BIG_DECIMAL:
+                return new BigDecimal(reader.readString());
+            case BIG_INTEGER:
+                return new BigInteger(reader.read(reader.readLength()));
+            case DATE:
+                return new Date(reader.readSignedVarLong());
+            case JAVA:
+                return readJava(reader.read(reader.readLength()));
+            default:
+                throw new SerializationException("[Carefree] unknown binary type tag: " + tag);
+        }
+    }
+
+    private static void checkDepth(int depth) {
+        if (depth >= MAX_DEPTH) {
+            throw new SerializationException("[Carefree] collections nested deeper than " + MAX_DEPTH + " levels, a collection may contain itself");
+        }
+    }
+
+    private Object readJava(byte[] bytes) {
+        try {
+            return deserializer.convert(bytes);
+        } catch (Exception e) {
+            throw new SerializationException("[Carefree] cannot deserialize java serialized value", e);
+        }
+    }
+}
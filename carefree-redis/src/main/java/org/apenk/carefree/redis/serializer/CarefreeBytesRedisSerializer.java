@@ -0,0 +1,92 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree.redis.serializer;
+
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+/**
+ * <p>
+ *     字符串与字节数组的序列化程序，可在序列化配置中以 bytes 指定。
+ * </p>
+ * <p>
+ *     值以一个类型标记开头，其后为长度前缀和内容（字符串为 UTF-8），反序列化时按标记还原为 String 或 byte[]，
+ *     适用于值只有这两种类型、又需要区分二者的场景。只需要字符串时应使用 string（{@link RedisSerializer#string()}），
+ *     其结果可被其他客户端直接读取。
+ * </p>
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public class CarefreeBytesRedisSerializer implements RedisSerializer<Object> {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private static final int STRING = 's';
+    private static final int BYTES = 'b';
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value == null) {
+            return EMPTY;
+        }
+        int tag;
+        if (value instanceof String) {
+            tag = STRING;
+        } else if (value instanceof byte[]) {
+            tag = BYTES;
+        } else {
+            throw new SerializationException("[Carefree] bytes serializer only accepts String and byte[], but got: " + value.getClass().getName());
+        }
+
+        CarefreeSerializerBuffer buffer = CarefreeSerializerBuffer.acquire();
+        try {
+            buffer.write(tag);
+            if (tag == STRING) {
+                buffer.writeString((String) value);
+            } else {
+                byte[] bytes = (byte[]) value;
+                buffer.writeVarInt(bytes.length);
+                buffer.write(bytes, 0, bytes.length);
+            }
+            return buffer.toByteArray();
+        } finally {
+            buffer.release();
+        }
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        CarefreeSerializerBuffer.Reader reader = new CarefreeSerializerBuffer.Reader(bytes, 0);
+        int tag = reader.read();
+        Object value;
+        if (tag == STRING) {
+            value = reader.readString();
+        } else if (tag == BYTES) {
+            value = reader.read(reader.readLength());
+        } else {
+            throw new SerializationException("[Carefree] unknown bytes type tag: " + tag);
+        }
+        if (reader.position != bytes.length) {
+            throw new SerializationException("[Carefree] " + (bytes.length - reader.position) + " trailing bytes after serialized value");
+        }
+        return value;
+    }
+}
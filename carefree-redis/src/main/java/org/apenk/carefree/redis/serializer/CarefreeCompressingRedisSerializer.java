@@ -0,0 +1,139 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree.redis.serializer;
+
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ *     压缩另一个序列化程序结果的序列化程序，由序列化配置中的 compression 启用，包装 value 和 hash value 的序列化程序。
+ * </p>
+ * <p>
+ *     序列化结果达到阈值时以 LZF（{@link CarefreeLzfCodec}）压缩，压缩结果以标记字节 0xFE 和编码 'L' 开头，
+ *     其后为原始长度（varint）和压缩数据；压缩后没有变小时保留原始结果。
+ *     0xFE 不会出现在 UTF-8 文本、JSON、JDK 序列化或 {@link CarefreeBinaryRedisSerializer} 结果的开头，
+ *     因此未压缩的结果原样写入，启用压缩前写入的数据仍可读取；
+ *     极少数以 0xFE 开头的未压缩结果（如原始字节数组）写入时在前面加上 0xFE 0x00 转义。
+ * </p>
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public class CarefreeCompressingRedisSerializer<T> implements RedisSerializer<T> {
+
+    /** 默认的压缩阈值（字节） */
+    public static final int DEFAULT_THRESHOLD = 1024;
+
+    private static final byte MARKER = (byte) 0xFE;
+    private static final byte LZF = 'L';
+    private static final byte ESCAPED = 0x00;
+
+    private final RedisSerializer<T> delegate;
+    private final int threshold;
+
+    public CarefreeCompressingRedisSerializer(RedisSerializer<T> delegate) {
+        this(delegate, DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * @param threshold 序列化结果达到该字节数时压缩
+     */
+    public CarefreeCompressingRedisSerializer(RedisSerializer<T> delegate, int threshold) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("[Carefree] delegate serializer of compression must not be null");
+        }
+        this.delegate = delegate;
+        this.threshold = Math.max(threshold, 16);
+    }
+
+    @Override
+    public byte[] serialize(T value) throws SerializationException {
+        byte[] raw = delegate.serialize(value);
+        if (raw == null || raw.length == 0) {
+            return raw;
+        }
+        if (raw.length >= threshold) {
+            byte[] compressed = compress(raw);
+            if (compressed != null) {
+                return compressed;
+            }
+        }
+        if (raw[0] == MARKER) {
+            byte[] escaped = new byte[raw.length + 2];
+            escaped[0] = MARKER;
+            escaped[1] = ESCAPED;
+            System.arraycopy(raw, 0, escaped, 2, raw.length);
+            return escaped;
+        }
+        return raw;
+    }
+
+    @Override
+    public T deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length < 2 || bytes[0] != MARKER) {
+            return delegate.deserialize(bytes);
+        }
+        if (bytes[1] == ESCAPED) {
+            return delegate.deserialize(Arrays.copyOfRange(bytes, 2, bytes.length));
+        }
+        if (bytes[1] == LZF) {
+            CarefreeSerializerBuffer.Reader reader = new CarefreeSerializerBuffer.Reader(bytes, 2);
+            int length = reader.readLength();
+            return delegate.deserialize(CarefreeLzfCodec.decompress(bytes, reader.position, length));
+        }
+        throw new SerializationException("[Carefree] unknown compression: " + (bytes[1] & 0xFF));
+    }
+
+    public RedisSerializer<T> getDelegate() {
+        return delegate;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * @return 压缩后的结果，没有变小时返回 null
+     */
+    private static byte[] compress(byte[] raw) {
+        // 标记、编码和最多 5 字节的长度
+        int header = 2;
+        for (int length = raw.length; length >= 0x80; length >>>= 7) {
+            header++;
+        }
+        header++;
+        byte[] output = CarefreeLzfCodec.buffer(raw.length);
+        // 至少小一个字节，否则保存原始数据
+        int end = CarefreeLzfCodec.compress(raw, output, header, raw.length - 1);
+        if (end < 0) {
+            return null;
+        }
+        output[0] = MARKER;
+        output[1] = LZF;
+        int position = 2;
+        int length = raw.length;
+        while ((length & ~0x7F) != 0) {
+            output[position++] = (byte) ((length & 0x7F) | 0x80);
+            length >>>= 7;
+        }
+        output[position] = (byte) length;
+        return Arrays.copyOf(output, end);
+    }
+}
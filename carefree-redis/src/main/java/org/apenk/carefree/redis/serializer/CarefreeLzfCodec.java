@@ -0,0 +1,216 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree.redis.serializer;
+
+import org.springframework.data.redis.serializer.SerializationException;
+
+/**
+ * <p>
+ *     纯 Java 实现的 LZF 压缩，数据格式与 liblzf 相同：
+ *     控制字节小于 32 时其后为 (控制字节 + 1) 个字面字节，否则为回溯引用，
+ *     高 3 位为匹配长度 - 2（为 7 时再读一个字节累加），低 5 位与下一个字节为回溯距离 - 1。
+ * </p>
+ * <p>
+ *     压缩速度优先，适合对较大的文本（如 JSON）降低内存和带宽占用。
+ *     哈希表和输出缓冲区按线程复用；哈希表不需要在每次压缩前清空，因为候选位置总是会与当前输入比较后才使用。
+ * </p>
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+final class CarefreeLzfCodec {
+
+    private static final int HASH_LOG = 14;
+    private static final int HASH_SIZE = 1 << HASH_LOG;
+    private static final int MAX_LITERAL = 1 << 5;
+    private static final int MAX_OFFSET = 1 << 13;
+    private static final int MAX_REFERENCE = (1 << 8) + (1 << 3);
+    private static final int RETAINED_CAPACITY = 256 * 1024;
+    /** 每个压缩字节最多解压出的字节数：3 字节的回溯引用最多匹配 {@link #MAX_REFERENCE}（264）字节 */
+    private static final int MAX_EXPANSION = MAX_REFERENCE / 3;
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private CarefreeLzfCodec() {
+    }
+
+    /**
+     * 压缩 input，在 output 的 offset 处开始写入，最多写到 limit（不含）
+     *
+     * @return 写入结束的位置，压缩结果超出 limit 时返回 -1
+     */
+    static int compress(byte[] input, byte[] output, int offset, int limit) {
+        int[] table = SCRATCH.get().table;
+        int length = input.length;
+        int ip = 0;
+        int op = offset;
+        int literals = 0;
+
+        if (op >= limit) {
+            return -1;
+        }
+        // 字面字节数的占位
+        op++;
+        while (ip < length - 2) {
+            int hash = ((input[ip] & 0xFF) << 16) | ((input[ip + 1] & 0xFF) << 8) | (input[ip + 2] & 0xFF);
+            int slot = ((hash >>> (24 - HASH_LOG)) - hash * 5) & (HASH_SIZE - 1);
+            int reference = table[slot];
+            table[slot] = ip;
+            int distance = ip - reference - 1;
+
+            if (reference < ip && distance >= 0 && distance < MAX_OFFSET
+                    && input[reference] == input[ip] && input[reference + 1] == input[ip + 1] && input[reference + 2] == input[ip + 2]) {
+                if (op + 4 > limit) {
+                    return -1;
+                }
+                int maximum = Math.min(length - ip - 2, MAX_REFERENCE);
+                int matched = 2;
+                do {
+                    matched++;
+                } while (matched < maximum && input[reference + matched] == input[ip + matched]);
+                matched -= 2;
+
+                // 结束当前的字面字节段，为空时去掉其占位
+                output[op - literals - 1] = (byte) (literals - 1);
+                if (literals == 0) {
+                    op--;
+                }
+                if (matched < 7) {
+                    output[op++] = (byte) ((distance >>> 8) + (matched << 5));
+                } else {
+                    output[op++] = (byte) ((distance >>> 8) + (7 << 5));
+                    output[op++] = (byte) (matched - 7);
+                }
+                output[op++] = (byte) distance;
+                literals = 0;
+                op++;
+
+                ip += matched + 2;
+                if (ip >= length - 2) {
+                    break;
+                }
+                // 匹配段末尾的位置也加入哈希表
+                int last = ip - 1;
+                hash = ((input[last] & 0xFF) << 16) | ((input[last + 1] & 0xFF) << 8) | (input[last + 2] & 0xFF);
+                table[((hash >>> (24 - HASH_LOG)) - hash * 5) & (HASH_SIZE - 1)] = last;
+            } else {
+                if (op >= limit) {
+                    return -1;
+                }
+                literals++;
+                output[op++] = input[ip++];
+                if (literals == MAX_LITERAL) {
+                    output[op - literals - 1] = (byte) (literals - 1);
+                    literals = 0;
+                    op++;
+                }
+            }
+        }
+        while (ip < length) {
+            if (op >= limit) {
+                return -1;
+            }
+            literals++;
+            output[op++] = input[ip++];
+            if (literals == MAX_LITERAL) {
+                output[op - literals - 1] = (byte) (literals - 1);
+                literals = 0;
+                op++;
+            }
+        }
+        output[op - literals - 1] = (byte) (literals - 1);
+        if (literals == 0) {
+            op--;
+        }
+        return op;
+    }
+
+    /**
+     * 解压 input 中 offset 之后的内容，解压后的长度必须为 length，
+     * length 超出压缩数据可能解压出的最大长度时视为数据损坏，以免按伪造的长度分配内存
+     */
+    static byte[] decompress(byte[] input, int offset, int length) {
+        if (length < 0 || offset > input.length || (long) length > (long) (input.length - offset) * MAX_EXPANSION) {
+            throw corrupted();
+        }
+        byte[] output = new byte[length];
+        int ip = offset;
+        int op = 0;
+        int end = input.length;
+        while (ip < end) {
+            int control = input[ip++] & 0xFF;
+            if (control < MAX_LITERAL) {
+                int count = control + 1;
+                if (op + count > length || ip + count > end) {
+                    throw corrupted();
+                }
+                System.arraycopy(input, ip, output, op, count);
+                ip += count;
+                op += count;
+            } else {
+                int matched = control >>> 5;
+                int reference = op - ((control & 0x1F) << 8) - 1;
+                if (ip >= end) {
+                    throw corrupted();
+                }
+                if (matched == 7) {
+                    matched += input[ip++] & 0xFF;
+                    if (ip >= end) {
+                        throw corrupted();
+                    }
+                }
+                reference -= input[ip++] & 0xFF;
+                matched += 2;
+                if (reference < 0 || op + matched > length) {
+                    throw corrupted();
+                }
+                // 引用可能与输出重叠，逐字节复制
+                for (int i = 0; i < matched; i++) {
+                    output[op++] = output[reference++];
+                }
+            }
+        }
+        if (op != length) {
+            throw corrupted();
+        }
+        return output;
+    }
+
+    /**
+     * 获取当前线程的输出缓冲区，至少 capacity 字节
+     */
+    static byte[] buffer(int capacity) {
+        Scratch scratch = SCRATCH.get();
+        if (scratch.output.length < capacity) {
+            byte[] output = new byte[capacity];
+            if (capacity <= RETAINED_CAPACITY) {
+                scratch.output = output;
+            }
+            return output;
+        }
+        return scratch.output;
+    }
+
+    private static SerializationException corrupted() {
+        return new SerializationException("[Carefree] corrupted lzf compressed data");
+    }
+
+    private static final class Scratch {
+        private final int[] table = new int[HASH_SIZE];
+        private byte[] output = new byte[4096];
+    }
+}
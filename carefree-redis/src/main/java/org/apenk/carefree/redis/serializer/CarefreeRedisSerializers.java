@@ -0,0 +1,65 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree.redis.serializer;
+
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+/**
+ * <p>
+ *     序列化配置中可用的简称：
+ *     <ul>
+ *         <li>binary：{@link CarefreeBinaryRedisSerializer}，紧凑的二进制格式，可读取 JDK 序列化的旧数据；</li>
+ *         <li>bytes：{@link CarefreeBytesRedisSerializer}，带长度前缀的字符串与字节数组；</li>
+ *         <li>string：{@link RedisSerializer#string()}，UTF-8 字符串；</li>
+ *         <li>jdk：{@link RedisSerializer#java(ClassLoader)}，即未配置时的默认程序。</li>
+ *     </ul>
+ * </p>
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public final class CarefreeRedisSerializers {
+
+    public static final String BINARY = "binary";
+    public static final String BYTES = "bytes";
+    public static final String STRING = "string";
+    public static final String JDK = "jdk";
+
+    private CarefreeRedisSerializers() {
+    }
+
+    /**
+     * @return 简称对应的序列化程序，name 不是简称时返回 null
+     */
+    public static RedisSerializer<?> named(String name, ClassLoader classLoader) {
+        if (name == null) {
+            return null;
+        }
+        switch (name.trim().toLowerCase()) {
+            case BINARY:
+                return new CarefreeBinaryRedisSerializer(classLoader);
+            case BYTES:
+                return new CarefreeBytesRedisSerializer();
+            case STRING:
+                return RedisSerializer.string();
+            case JDK:
+                return RedisSerializer.java(classLoader);
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree.redis.serializer;
+
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * <p>
+ *     内置序列化程序使用的写缓冲区和读游标，整数按 varint（有符号数先 zigzag）编码。
+ * </p>
+ * <p>
+ *     写缓冲区按线程复用，序列化结束时复制出结果；扩容到 {@link #RETAINED_CAPACITY} 以上的缓冲区用后丢弃，
+ *     以免偶尔的大值使每个线程长期占用大块内存。
+ * </p>
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+final class CarefreeSerializerBuffer {
+
+    private static final int INITIAL_CAPACITY = 256;
+    private static final int RETAINED_CAPACITY = 64 * 1024;
+    private static final ThreadLocal<CarefreeSerializerBuffer> POOL = ThreadLocal.withInitial(CarefreeSerializerBuffer::new);
+
+    private byte[] bytes;
+    private int position;
+    private boolean inUse;
+
+    private CarefreeSerializerBuffer() {
+        this.bytes = new byte[INITIAL_CAPACITY];
+    }
+
+    /**
+     * 获取当前线程的缓冲区，嵌套使用时（如 JDK 序列化中又调用了序列化程序）返回一个新的缓冲区
+     */
+    static CarefreeSerializerBuffer acquire() {
+        CarefreeSerializerBuffer buffer = POOL.get();
+        if (buffer.inUse) {
+            return new CarefreeSerializerBuffer();
+        }
+        buffer.inUse = true;
+        buffer.position = 0;
+        return buffer;
+    }
+
+    /**
+     * 复制出已写入的内容
+     */
+    byte[] toByteArray() {
+        return Arrays.copyOf(bytes, position);
+    }
+
+    /**
+     * 归还缓冲区，无论序列化是否成功（包括抛出 Error）都须在 finally 中调用，否则当前线程之后只能使用新的缓冲区
+     */
+    void release() {
+        if (bytes.length > RETAINED_CAPACITY) {
+            bytes = new byte[INITIAL_CAPACITY];
+        }
+        inUse = false;
+    }
+
+    void write(int value) {
+        ensure(1);
+        bytes[position++] = (byte) value;
+    }
+
+    void write(byte[] value, int offset, int length) {
+        ensure(length);
+        System.arraycopy(value, offset, bytes, position, length);
+        position += length;
+    }
+
+    void writeVarInt(int value) {
+        ensure(5);
+        while ((value & ~0x7F) != 0) {
+            bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[position++] = (byte) value;
+    }
+
+    void writeVarLong(long value) {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[position++] = (byte) value;
+    }
+
+    void writeSignedVarLong(long value) {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    void writeFixedLong(long value) {
+        ensure(8);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            bytes[position++] = (byte) (value >>> shift);
+        }
+    }
+
+    void writeFixedInt(int value) {
+        ensure(4);
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            bytes[position++] = (byte) (value >>> shift);
+        }
+    }
+
+    /**
+     * 写入长度前缀和 UTF-8 编码的字符串，纯 ASCII 字符串直接写入，不创建中间数组
+     */
+    void writeString(String value) {
+        int length = value.length();
+        ensure(length + 5);
+        int start = position;
+        writeVarInt(length);
+        int offset = position;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                position = start;
+                byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+                writeVarInt(encoded.length);
+                write(encoded, 0, encoded.length);
+                return;
+            }
+            bytes[offset + i] = (byte) c;
+        }
+        position = offset + length;
+    }
+
+    private void ensure(int count) {
+        if (position + count > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length << 1, position + count));
+        }
+    }
+
+    /**
+     * 读取序列化结果的游标
+     */
+    static final class Reader {
+        final byte[] bytes;
+        int position;
+
+        Reader(byte[] bytes, int position) {
+            this.bytes = bytes;
+            this.position = position;
+        }
+
+        int read() {
+            check(1);
+            return bytes[position++] & 0xFF;
+        }
+
+        byte[] read(int length) {
+            check(length);
+            byte[] result = Arrays.copyOfRange(bytes, position, position + length);
+            position += length;
+            return result;
+        }
+
+        int readVarInt() {
+            int result = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                int b = read();
+                result |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new SerializationException("[Carefree] malformed varint");
+        }
+
+        long readVarLong() {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = read();
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new SerializationException("[Carefree] malformed varint");
+        }
+
+        long readSignedVarLong() {
+            long value = readVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        long readFixedLong() {
+            check(8);
+            long result = 0;
+            for (int i = 0; i < 8; i++) {
+                result = (result << 8) | (bytes[position++] & 0xFF);
+            }
+            return result;
+        }
+
+        int readFixedInt() {
+            check(4);
+            int result = 0;
+            for (int i = 0; i < 4; i++) {
+                result = (result << 8) | (bytes[position++] & 0xFF);
+            }
+            return result;
+        }
+
+        int readLength() {
+            int length = readVarInt();
+            if (length < 0) {
+                throw new SerializationException("[Carefree] malformed length: " + length);
+            }
+            return length;
+        }
+
+        String readString() {
+            int length = readLength();
+            check(length);
+            String result = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return result;
+        }
+
+        private void check(int count) {
+            if (count > bytes.length - position) {
+                throw new SerializationException("[Carefree] unexpected end of serialized data");
+            }
+        }
+    }
+}
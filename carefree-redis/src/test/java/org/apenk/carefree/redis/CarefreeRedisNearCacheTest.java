@@ -0,0 +1,361 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree.redis;
+
+import org.apenk.carefree.redis.archetype.CarefreeRedisArchetypeNearCache;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * 以一个最小的 RESP3 服务端代替 Redis，测试 {@link CarefreeRedisNearCache} 及其失效跟踪连接
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public class CarefreeRedisNearCacheTest {
+
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private StandInServer server;
+    private CarefreeRedisNearCache nearCache;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new StandInServer();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (nearCache != null) {
+            nearCache.close();
+        }
+        server.close();
+    }
+
+    @Test
+    public void handshake() throws Exception {
+        nearCache = create(3, Collections.singletonList("user:"));
+        awaitTracking();
+
+        assertEquals("HELLO 3", server.commands.get(0));
+        assertEquals("CLIENT TRACKING ON BCAST PREFIX user:", server.commands.get(1));
+        assertTrue(nearCache.isActive());
+    }
+
+    @Test
+    public void untrackedPrefixIsNotCached() throws Exception {
+        nearCache = create(3, Collections.singletonList("user:"));
+        awaitTracking();
+
+        assertEquals(0, nearCache.begin("order:1"));
+        nearCache.put("order:1", 0, "v", 10);
+        assertSame(CarefreeRedisNearCache.MISS, nearCache.get("order:1"));
+    }
+
+    @Test
+    public void invalidatePush() throws Exception {
+        nearCache = create(3, Collections.emptyList());
+        awaitTracking();
+        cache("user:1", "v1");
+        cache("user:2", "v2");
+        assertEquals("v1", nearCache.get("user:1"));
+
+        server.push(">2\r\n$10\r\ninvalidate\r\n*1\r\n$6\r\nuser:1\r\n");
+        await(() -> nearCache.get("user:1") == CarefreeRedisNearCache.MISS);
+        assertEquals("v2", nearCache.get("user:2"));
+    }
+
+    @Test
+    public void flushAllPush() throws Exception {
+        nearCache = create(3, Collections.emptyList());
+        awaitTracking();
+        cache("user:1", "v1");
+        cache("user:2", null);
+        assertEquals(2, nearCache.size());
+
+        // FLUSHALL、FLUSHDB 的推送消息中 key 数组为 null
+        server.push(">2\r\n$10\r\ninvalidate\r\n_\r\n");
+        await(() -> nearCache.size() == 0);
+    }
+
+    @Test
+    public void clearOnReconnect() throws Exception {
+        nearCache = create(3, Collections.emptyList());
+        awaitTracking();
+        cache("user:1", "v1");
+
+        server.disconnect();
+        await(() -> !nearCache.isTracking());
+        assertEquals(0, nearCache.size());
+        assertSame(CarefreeRedisNearCache.MISS, nearCache.get("user:1"));
+
+        awaitTracking();
+        assertEquals(2, server.commands.stream().filter("HELLO 3"::equals).count());
+        cache("user:1", "v2");
+        assertEquals("v2", nearCache.get("user:1"));
+    }
+
+    @Test
+    public void invalidatedDuringRead() throws Exception {
+        nearCache = create(3, Collections.emptyList());
+        awaitTracking();
+
+        cache("user:2", "v2");
+
+        long token = nearCache.begin("user:1");
+        server.push(">2\r\n$10\r\ninvalidate\r\n*1\r\n$6\r\nuser:1\r\n");
+        // 推送消息按顺序处理，user:2 被失效时 user:1 的失效也已处理
+        server.push(">2\r\n$10\r\ninvalidate\r\n*1\r\n$6\r\nuser:2\r\n");
+        await(() -> nearCache.get("user:2") == CarefreeRedisNearCache.MISS);
+        // 读取期间被失效，读到的旧值不能被缓存
+        nearCache.put("user:1", token, "stale", 10);
+        assertSame(CarefreeRedisNearCache.MISS, nearCache.get("user:1"));
+
+        token = nearCache.begin("user:1");
+        nearCache.put("user:1", token, "fresh", 10);
+        assertEquals("fresh", nearCache.get("user:1"));
+    }
+
+    @Test
+    public void tinyLfuAdmission() throws Exception {
+        nearCache = create(3, Collections.emptyList());
+        awaitTracking();
+        for (int i = 0; i < 3; i++) {
+            String key = "user:" + i;
+            for (int j = 0; j < 5; j++) {
+                nearCache.get(key);
+            }
+            cache(key, key);
+        }
+
+        cache("user:cold", "cold");
+        assertEquals(3, nearCache.size());
+        assertEquals(1, nearCache.rejectionCount());
+        assertSame(CarefreeRedisNearCache.MISS, nearCache.get("user:cold"));
+
+        for (int j = 0; j < 20; j++) {
+            nearCache.get("user:hot");
+        }
+        cache("user:hot", "hot");
+        assertEquals(3, nearCache.size());
+        assertEquals(1, nearCache.evictionCount());
+        assertEquals("hot", nearCache.get("user:hot"));
+    }
+
+    @Test
+    public void concurrentReadsAndWrites() throws Exception {
+        nearCache = create(64, Collections.emptyList());
+        awaitTracking();
+        for (int i = 0; i < 8; i++) {
+            for (int j = 0; j < 10; j++) {
+                nearCache.get("user:hot" + i);
+            }
+            cache("user:hot" + i, "hot" + i);
+        }
+
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            int seed = t;
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 20000; i++) {
+                        String hot = "user:hot" + (i & 7);
+                        Object value = nearCache.get(hot);
+                        if (value != CarefreeRedisNearCache.MISS && !("hot" + (i & 7)).equals(value)) {
+                            throw new AssertionError("unexpected value of " + hot + ": " + value);
+                        }
+                        if (i % 10 == seed) {
+                            String cold = "user:cold" + seed + ":" + i;
+                            nearCache.get(cold);
+                            cache(cold, cold);
+                        }
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(Collections.emptyList(), errors);
+        assertTrue(nearCache.size() <= 64);
+        // 频繁访问的条目不会被只读过一次的条目淘汰
+        for (int i = 0; i < 8; i++) {
+            assertEquals("hot" + i, nearCache.get("user:hot" + i));
+        }
+    }
+
+    private CarefreeRedisNearCache create(long maximumSize, List<String> prefixes) {
+        CarefreeRedisArchetypeNearCache archetype = new CarefreeRedisArchetypeNearCache();
+        archetype.setEnabled(true);
+        archetype.setMaximumSize(maximumSize);
+        archetype.setPrefixes(prefixes);
+
+        CarefreeRedisPayload payload = new CarefreeRedisPayload();
+        payload.root = "test";
+        payload.nearCacheArchetype = archetype;
+        payload.redisConfiguration = new RedisStandaloneConfiguration("127.0.0.1", server.getPort());
+        payload.clientConfiguration = LettuceClientConfiguration.defaultConfiguration();
+        return CarefreeRedisNearCache.create(payload);
+    }
+
+    private void cache(String key, Object value) {
+        long token = nearCache.begin(key);
+        nearCache.put(key, token, value, key.length());
+    }
+
+    private void awaitTracking() throws InterruptedException {
+        await(() -> nearCache.isTracking());
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("condition not met in " + TIMEOUT_MILLIS + " ms");
+            }
+            Thread.sleep(20);
+        }
+    }
+
+    /**
+     * 接受连接并对 HELLO、CLIENT TRACKING、PING 作出应答，记录收到的命令，可以向最近的连接发送推送消息
+     */
+    private static final class StandInServer implements Closeable {
+        private final ServerSocket serverSocket;
+        private final List<Socket> sockets = new CopyOnWriteArrayList<>();
+        private final List<String> commands = new CopyOnWriteArrayList<>();
+
+        StandInServer() throws IOException {
+            this.serverSocket = new ServerSocket(0);
+            Thread thread = new Thread(this::accept, "stand-in-redis");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        void push(String frame) throws IOException {
+            write(sockets.get(sockets.size() - 1), frame);
+        }
+
+        void disconnect() throws IOException {
+            sockets.get(sockets.size() - 1).close();
+        }
+
+        @Override
+        public void close() throws IOException {
+            serverSocket.close();
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+
+        private void accept() {
+            while (!serverSocket.isClosed()) {
+                try {
+                    Socket socket = serverSocket.accept();
+                    sockets.add(socket);
+                    Thread thread = new Thread(() -> serve(socket), "stand-in-redis-connection");
+                    thread.setDaemon(true);
+                    thread.start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+
+        private void serve(Socket socket) {
+            try {
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                while (true) {
+                    if (in.read() != '*') {
+                        return;
+                    }
+                    int count = Integer.parseInt(line(in));
+                    List<String> args = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        in.read();
+                        byte[] bytes = new byte[Integer.parseInt(line(in))];
+                        int offset = 0;
+                        while (offset < bytes.length) {
+                            offset += in.read(bytes, offset, bytes.length - offset);
+                        }
+                        line(in);
+                        args.add(new String(bytes, StandardCharsets.UTF_8));
+                    }
+                    commands.add(String.join(" ", args));
+                    switch (args.get(0)) {
+                        case "HELLO":
+                            write(socket, "%1\r\n+proto\r\n:3\r\n");
+                            break;
+                        case "PING":
+                            write(socket, "+PONG\r\n");
+                            break;
+                        default:
+                            write(socket, "+OK\r\n");
+                    }
+                }
+            } catch (IOException e) {
+                // 连接已关闭
+            }
+        }
+
+        private static void write(Socket socket, String frame) throws IOException {
+            synchronized (socket) {
+                OutputStream out = socket.getOutputStream();
+                out.write(frame.getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            }
+        }
+
+        private static String line(InputStream in) throws IOException {
+            StringBuilder builder = new StringBuilder();
+            int c;
+            while ((c = in.read()) != '\r') {
+                if (c == -1) {
+                    throw new EOFException();
+                }
+                builder.append((char) c);
+            }
+            in.read();
+            return builder.toString();
+        }
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree.redis.serializer;
+
+import org.junit.Test;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * 测试 {@link CarefreeBinaryRedisSerializer} 各类型标记的编码结果、往返及 JDK 序列化数据的兼容
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public class CarefreeBinaryRedisSerializerTest {
+
+    private final CarefreeBinaryRedisSerializer serializer = new CarefreeBinaryRedisSerializer();
+
+    @Test
+    public void nullIsEmpty() {
+        assertArrayEquals(new byte[0], serializer.serialize(null));
+        assertNull(serializer.deserialize(new byte[0]));
+        assertNull(serializer.deserialize(null));
+    }
+
+    @Test
+    public void scalars() {
+        assertGolden(new ArrayList<>(Collections.singletonList(null)), 0x09, 0x01, 0x00);
+        assertGolden(true, 0x01);
+        assertGolden(false, 0x02);
+        assertGolden(1, 0x03, 0x02);
+        assertGolden(-1, 0x03, 0x01);
+        assertGolden(300, 0x03, 0xD8, 0x04);
+        assertGolden(Integer.MIN_VALUE, 0x03, 0xFF, 0xFF, 0xFF, 0xFF, 0x0F);
+        assertGolden(1L, 0x04, 0x02);
+        assertGolden(Long.MIN_VALUE, 0x04, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0x01);
+        assertGolden(1.0d, 0x05, 0x3F, 0xF0, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00);
+        assertGolden(1.0f, 0x06, 0x3F, 0x80, 0x00, 0x00);
+        assertGolden((short) -3, 0x0C, 0x05);
+        assertGolden((byte) 7, 0x0D, 0x07);
+        assertGolden('x', 0x0E, 0x78);
+        assertGolden(new BigDecimal("1.5"), 0x0F, 0x03, 0x31, 0x2E, 0x35);
+        assertGolden(BigInteger.valueOf(256), 0x10, 0x02, 0x01, 0x00);
+        assertGolden(new Date(1000L), 0x11, 0xD0, 0x0F);
+    }
+
+    @Test
+    public void strings() {
+        assertGolden("", 0x07, 0x00);
+        assertGolden("ab", 0x07, 0x02, 0x61, 0x62);
+        // 非 ASCII 字符串的长度前缀为 UTF-8 字节数
+        assertGolden("aé", 0x07, 0x03, 0x61, 0xC3, 0xA9);
+
+        char[] chars = new char[200];
+        Arrays.fill(chars, 'z');
+        byte[] bytes = serializer.serialize(new String(chars));
+        assertEquals(203, bytes.length);
+        assertArrayEquals(bytes(0x07, 0xC8, 0x01), Arrays.copyOf(bytes, 3));
+        assertEquals(new String(chars), serializer.deserialize(bytes));
+    }
+
+    @Test
+    public void byteArrays() {
+        byte[] bytes = serializer.serialize(new byte[]{1, 2});
+        assertArrayEquals(bytes(0x08, 0x02, 0x01, 0x02), bytes);
+        assertArrayEquals(new byte[]{1, 2}, (byte[]) serializer.deserialize(bytes));
+    }
+
+    @Test
+    public void collections() {
+        assertGolden(new ArrayList<>(Collections.singletonList("a")), 0x09, 0x01, 0x07, 0x01, 0x61);
+        assertGolden(new LinkedHashSet<>(Collections.singletonList(1)), 0x0A, 0x01, 0x03, 0x02);
+        assertGolden(new LinkedHashMap<>(Collections.singletonMap("k", 1)), 0x0B, 0x01, 0x07, 0x01, 0x6B, 0x03, 0x02);
+
+        // 还原为 ArrayList、LinkedHashSet、LinkedHashMap
+        assertEquals(ArrayList.class, serializer.deserialize(serializer.serialize(Collections.singletonList("a"))).getClass());
+        assertEquals(LinkedHashSet.class, serializer.deserialize(serializer.serialize(new HashSet<>(Collections.singleton(1)))).getClass());
+        assertEquals(LinkedHashMap.class, serializer.deserialize(serializer.serialize(new HashMap<>(Collections.singletonMap("k", 1)))).getClass());
+    }
+
+    @Test
+    public void otherTypesUseJavaSerialization() {
+        TreeMap<String, Integer> value = new TreeMap<>(Collections.singletonMap("k", 1));
+        byte[] java = RedisSerializer.java().serialize(value);
+        byte[] bytes = serializer.serialize(value);
+
+        assertEquals(0x12, bytes[0]);
+        CarefreeSerializerBuffer.Reader reader = new CarefreeSerializerBuffer.Reader(bytes, 1);
+        assertEquals(java.length, reader.readLength());
+        assertArrayEquals(java, Arrays.copyOfRange(bytes, reader.position, bytes.length));
+
+        Object result = serializer.deserialize(bytes);
+        assertEquals(TreeMap.class, result.getClass());
+        assertEquals(value, result);
+    }
+
+    @Test
+    public void roundTrip() {
+        Map<String, Object> value = new LinkedHashMap<>();
+        value.put("id", 12345L);
+        value.put("name", "张三 abc");
+        value.put("tags", Arrays.asList("a", "b", null));
+        value.put("score", 9.5d);
+        value.put("nan", Double.NaN);
+        value.put("ok", true);
+        value.put("bd", new BigDecimal("3.14159"));
+        value.put("bi", new BigInteger("-123456789012345678901234567890"));
+        value.put("set", new LinkedHashSet<>(Arrays.asList(1, 2, 3)));
+        value.put("nested", Collections.singletonMap("tree", new TreeSet<>(Arrays.asList("x", "y"))));
+        value.put("max", Long.MAX_VALUE);
+
+        assertEquals(value, serializer.deserialize(serializer.serialize(value)));
+    }
+
+    @Test
+    public void readsJavaSerializedValues() {
+        Map<String, Object> value = new LinkedHashMap<>();
+        value.put("id", 1);
+        value.put("name", "carefree");
+        byte[] java = RedisSerializer.java().serialize(value);
+        assertEquals((byte) 0xAC, java[0]);
+        assertEquals((byte) 0xED, java[1]);
+
+        assertEquals(value, serializer.deserialize(java));
+        assertEquals("plain", serializer.deserialize(RedisSerializer.java().serialize("plain")));
+    }
+
+    @Test(expected = SerializationException.class)
+    public void nonSerializableValue() {
+        serializer.serialize(new Object());
+    }
+
+    @Test
+    public void malformedData() {
+        assertMalformed(0x7F);
+        assertMalformed(0x07, 0x05, 0x61);
+        assertMalformed(0x03, 0x02, 0x00);
+        assertMalformed(0x03, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF);
+        assertMalformed(0x09, 0x02, 0x01);
+        // 被截断的 JDK 序列化数据
+        byte[] java = RedisSerializer.java().serialize("value");
+        assertMalformed(Arrays.copyOf(java, java.length - 1));
+        // 序列化失败后缓冲区可以继续使用
+        assertEquals("after", serializer.deserialize(serializer.serialize("after")));
+    }
+
+    @Test
+    public void nestingDepth() {
+        List<Object> nested = new ArrayList<>();
+        List<Object> innermost = nested;
+        for (int i = 1; i < CarefreeBinaryRedisSerializer.MAX_DEPTH; i++) {
+            List<Object> list = new ArrayList<>();
+            innermost.add(list);
+            innermost = list;
+        }
+        assertEquals(nested, serializer.deserialize(serializer.serialize(nested)));
+
+        // 再嵌套一层即超出
+        innermost.add(new ArrayList<>());
+        try {
+            serializer.serialize(nested);
+            fail("too deep nesting should be rejected");
+        } catch (SerializationException expected) {
+            // expected
+        }
+        // 同样嵌套过深的数据
+        byte[] bytes = new byte[(CarefreeBinaryRedisSerializer.MAX_DEPTH + 1) * 2 + 1];
+        for (int i = 0; i <= CarefreeBinaryRedisSerializer.MAX_DEPTH; i++) {
+            bytes[i * 2] = 0x09;
+            bytes[i * 2 + 1] = 0x01;
+        }
+        assertMalformed(bytes);
+    }
+
+    @Test
+    public void selfReferenceReleasesBuffer() {
+        CarefreeSerializerBuffer pooled = CarefreeSerializerBuffer.acquire();
+        pooled.release();
+
+        List<Object> list = new ArrayList<>();
+        list.add(list);
+        try {
+            serializer.serialize(list);
+            fail("self reference should be rejected");
+        } catch (SerializationException expected) {
+            // expected
+        }
+        Map<Object, Object> map = new HashMap<>();
+        map.put("self", map);
+        try {
+            serializer.serialize(map);
+            fail("self reference should be rejected");
+        } catch (SerializationException expected) {
+            // expected
+        }
+
+        // 失败后当前线程的缓冲区已归还，仍可复用
+        CarefreeSerializerBuffer buffer = CarefreeSerializerBuffer.acquire();
+        buffer.release();
+        assertSame(pooled, buffer);
+    }
+
+    private void assertGolden(Object value, int... expected) {
+        byte[] bytes = serializer.serialize(value);
+        assertArrayEquals(String.valueOf(value), bytes(expected), bytes);
+        assertEquals(value, serializer.deserialize(bytes));
+        assertEquals(value.getClass(), serializer.deserialize(bytes).getClass());
+    }
+
+    private void assertMalformed(int... bytes) {
+        assertMalformed(bytes(bytes));
+    }
+
+    private void assertMalformed(byte[] bytes) {
+        try {
+            serializer.deserialize(bytes);
+            fail("malformed data should be rejected: " + new String(bytes, StandardCharsets.ISO_8859_1));
+        } catch (SerializationException expected) {
+            // expected
+        }
+    }
+
+    static byte[] bytes(int... values) {
+        byte[] result = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = (byte) values[i];
+        }
+        return result;
+    }
+}
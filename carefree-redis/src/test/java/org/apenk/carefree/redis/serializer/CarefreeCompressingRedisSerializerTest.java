@@ -0,0 +1,145 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree.redis.serializer;
+
+import org.junit.Test;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * 测试 {@link CarefreeCompressingRedisSerializer} 的压缩格式、0xFE 0x00 转义及未压缩数据的兼容
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public class CarefreeCompressingRedisSerializerTest {
+
+    private static final RedisSerializer<byte[]> IDENTITY = new RedisSerializer<byte[]>() {
+        @Override
+        public byte[] serialize(byte[] value) {
+            return value;
+        }
+
+        @Override
+        public byte[] deserialize(byte[] bytes) {
+            return bytes;
+        }
+    };
+
+    private final CarefreeCompressingRedisSerializer<byte[]> serializer = new CarefreeCompressingRedisSerializer<>(IDENTITY, 16);
+
+    @Test
+    public void compressed() {
+        byte[] bytes = serializer.serialize(new byte[32]);
+
+        // 标记、编码 'L'、原始长度，其后为 LZF 数据
+        assertArrayEquals(bytes(0xFE, 0x4C, 0x20, 0x00, 0x00, 0xE0, 0x14, 0x00, 0x01, 0x00, 0x00), bytes);
+        assertArrayEquals(new byte[32], serializer.deserialize(bytes));
+    }
+
+    @Test
+    public void belowThresholdIsRaw() {
+        byte[] value = "hello".getBytes(StandardCharsets.UTF_8);
+        assertArrayEquals(value, serializer.serialize(value));
+        assertArrayEquals(value, serializer.deserialize(value));
+        assertArrayEquals(new byte[0], serializer.serialize(new byte[0]));
+        assertEquals(16, new CarefreeCompressingRedisSerializer<>(IDENTITY, 1).getThreshold());
+    }
+
+    @Test
+    public void incompressibleIsRaw() {
+        byte[] value = distinct(40, 0);
+        assertArrayEquals(value, serializer.serialize(value));
+        assertArrayEquals(value, serializer.deserialize(value));
+    }
+
+    @Test
+    public void markerIsEscaped() {
+        byte[] value = bytes(0xFE, 0x4C, 0x01, 0x02);
+        byte[] bytes = serializer.serialize(value);
+        assertArrayEquals(bytes(0xFE, 0x00, 0xFE, 0x4C, 0x01, 0x02), bytes);
+        assertArrayEquals(value, serializer.deserialize(bytes));
+
+        // 达到阈值但压缩后没有变小
+        value = distinct(40, 0xFE);
+        bytes = serializer.serialize(value);
+        assertEquals(42, bytes.length);
+        assertArrayEquals(bytes(0xFE, 0x00), Arrays.copyOf(bytes, 2));
+        assertArrayEquals(value, serializer.deserialize(bytes));
+    }
+
+    @Test
+    public void roundTrip() {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 500; i++) {
+            json.append("{\"id\":").append(i).append(",\"name\":\"user-").append(i).append("\",\"active\":true},");
+        }
+        json.append("]");
+        RedisSerializer<String> strings = new CarefreeCompressingRedisSerializer<>(RedisSerializer.string());
+        byte[] bytes = strings.serialize(json.toString());
+
+        assertEquals((byte) 0xFE, bytes[0]);
+        assertEquals('L', bytes[1]);
+        assertTrue(bytes.length < json.length() / 2);
+        assertEquals(json.toString(), strings.deserialize(bytes));
+
+        // 启用压缩前写入的数据
+        assertEquals("plain", strings.deserialize("plain".getBytes(StandardCharsets.UTF_8)));
+
+        byte[] big = new byte[1 << 20];
+        assertArrayEquals(big, serializer.deserialize(serializer.serialize(big)));
+    }
+
+    @Test
+    public void corruptedData() {
+        // 声明的原始长度远超压缩数据可能解压出的长度，不按其分配内存
+        assertCorrupted(bytes(0xFE, 0x4C, 0xFF, 0xFF, 0xFF, 0xFF, 0x07, 0x00, 0x00));
+        assertCorrupted(bytes(0xFE, 0x4C, 0x0A, 0x1F, 0x01));
+        assertCorrupted(bytes(0xFE, 0x4C, 0x05, 0x40, 0x00));
+        assertCorrupted(bytes(0xFE, 0x5A, 0x00));
+    }
+
+    private void assertCorrupted(byte[] bytes) {
+        try {
+            serializer.deserialize(bytes);
+            fail("corrupted data should be rejected: " + Arrays.toString(bytes));
+        } catch (SerializationException expected) {
+            // expected
+        }
+    }
+
+    private static byte[] distinct(int length, int first) {
+        byte[] result = new byte[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = (byte) (first + i);
+        }
+        return result;
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] result = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = (byte) values[i];
+        }
+        return result;
+    }
+}
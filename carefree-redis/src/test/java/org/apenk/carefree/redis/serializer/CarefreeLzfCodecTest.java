@@ -0,0 +1,124 @@
+/*
+ * Copyright 2018-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apenk.carefree.redis.serializer;
+
+import org.junit.Test;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * 测试 {@link CarefreeLzfCodec} 的编码结果、长匹配和长字面段，以及损坏数据的识别
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public class CarefreeLzfCodecTest {
+
+    @Test
+    public void literalRunsLongerThan32() {
+        byte[] input = new byte[40];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = (byte) i;
+        }
+        byte[] output = new byte[64];
+        int end = CarefreeLzfCodec.compress(input, output, 0, output.length);
+
+        // 32 字节一段，其后为剩余的 8 字节
+        assertEquals(42, end);
+        assertEquals(31, output[0]);
+        assertArrayEquals(Arrays.copyOfRange(input, 0, 32), Arrays.copyOfRange(output, 1, 33));
+        assertEquals(7, output[33]);
+        assertArrayEquals(Arrays.copyOfRange(input, 32, 40), Arrays.copyOfRange(output, 34, 42));
+        assertArrayEquals(input, CarefreeLzfCodec.decompress(Arrays.copyOf(output, end), 0, input.length));
+    }
+
+    @Test
+    public void matchesLongerThan264() {
+        byte[] input = new byte[1000];
+        byte[] output = new byte[64];
+        int end = CarefreeLzfCodec.compress(input, output, 0, output.length);
+
+        // 1 个字面字节，其后为最长 264 字节、距离为 1 的回溯引用
+        assertArrayEquals(new byte[]{0x00, 0x00, (byte) 0xE0, (byte) 0xFF, 0x00}, Arrays.copyOf(output, 5));
+        assertArrayEquals(input, CarefreeLzfCodec.decompress(Arrays.copyOf(output, end), 0, input.length));
+
+        byte[] expected = new byte[265];
+        Arrays.fill(expected, (byte) 'a');
+        assertArrayEquals(expected, CarefreeLzfCodec.decompress(new byte[]{0x00, 'a', (byte) 0xE0, (byte) 0xFF, 0x00}, 0, 265));
+    }
+
+    @Test
+    public void roundTrip() {
+        Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            int length = random.nextInt(i < 1000 ? 300 : 20000);
+            byte[] input = new byte[length];
+            int mode = i % 3;
+            for (int j = 0; j < length; j++) {
+                if (mode == 0) {
+                    input[j] = (byte) random.nextInt(256);
+                } else if (mode == 1) {
+                    input[j] = (byte) random.nextInt(4);
+                } else {
+                    input[j] = j > 300 && random.nextInt(10) < 8 ? input[j - 1 - random.nextInt(300)] : (byte) random.nextInt(256);
+                }
+            }
+            byte[] output = new byte[length + length / 32 + 16];
+            int end = CarefreeLzfCodec.compress(input, output, 3, output.length);
+            assertTrue("length " + length, end >= 0);
+            assertArrayEquals("length " + length, input, CarefreeLzfCodec.decompress(Arrays.copyOf(output, end), 3, length));
+        }
+    }
+
+    @Test
+    public void exceedingLimit() {
+        byte[] input = new byte[40];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = (byte) i;
+        }
+        assertEquals(-1, CarefreeLzfCodec.compress(input, new byte[64], 0, 41));
+        assertEquals(-1, CarefreeLzfCodec.compress(input, new byte[64], 41, 41));
+    }
+
+    @Test
+    public void corruptedData() {
+        // 长度超出压缩数据可能解压出的最大长度
+        assertCorrupted(new byte[]{0x00, 'a'}, 1000);
+        assertCorrupted(new byte[]{0x00, 'a'}, -1);
+        // 解压后的长度与声明的不符
+        assertCorrupted(new byte[]{0x00, 'a'}, 2);
+        // 字面段被截断
+        assertCorrupted(new byte[]{0x05, 'a'}, 6);
+        // 回溯引用超出已解压的内容
+        assertCorrupted(new byte[]{0x00, 'a', 0x20, 0x05}, 4);
+        // 回溯引用被截断
+        assertCorrupted(new byte[]{0x00, 'a', (byte) 0xE0, 0x01}, 11);
+    }
+
+    private static void assertCorrupted(byte[] input, int length) {
+        try {
+            CarefreeLzfCodec.decompress(input, 0, length);
+            fail("corrupted data should be rejected: " + Arrays.toString(input));
+        } catch (SerializationException expected) {
+            // expected
+        }
+    }
+}